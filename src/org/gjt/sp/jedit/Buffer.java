@@ -38,6 +38,7 @@ import org.gjt.sp.jedit.buffer.BufferUndoListener;
 import org.gjt.sp.jedit.buffer.FoldHandler;
 import org.gjt.sp.jedit.buffer.JEditBuffer;
 import org.gjt.sp.jedit.buffer.WordWrap;
+import org.gjt.sp.jedit.bufferio.AutosaveJournal;
 import org.gjt.sp.jedit.bufferio.BufferAutosaveRequest;
 import org.gjt.sp.jedit.bufferio.BufferIORequest;
 import org.gjt.sp.jedit.bufferio.MarkersSaveRequest;
@@ -208,6 +209,8 @@ public class Buffer extends JEditBuffer
 		setBooleanProperty(BufferIORequest.ERROR_OCCURRED,false);
 
 		setLoading(true);
+		loadStartTime = System.nanoTime();
+		journal.stop(true);
 
 		// view text areas temporarily blank out while a buffer is
 		// being loaded, to indicate to the user that there is no
@@ -226,7 +229,8 @@ public class Buffer extends JEditBuffer
 				modTime = file.lastModified();
 
 			// Only on initial load
-			if(!reload && autosaveFile != null && autosaveFile.exists())
+			if(!reload && autosaveFile != null && (autosaveFile.exists()
+				|| AutosaveJournal.getJournalFile(autosaveFile).exists()))
 				loadAutosave = recoverAutosave(view);
 			else
 			{
@@ -273,12 +277,52 @@ public class Buffer extends JEditBuffer
 				IntegerArray endOffsets = (IntegerArray)
 					getProperty(BufferIORequest.END_OFFSETS);
 
-				loadText(seg,endOffsets);
+				if(showingLoadedText)
+				{
+					// the text read so far is shown already,
+					// unless the read was retried in another
+					// array, with another encoding for example
+					setLoading(true);
+					showingLoadedText = false;
+					setPerformingIO(false);
+					if(seg != null && endOffsets != null
+						&& seg.array == shownLoadedText)
+					{
+						appendLoadedText(seg,endOffsets.getArray(),
+							endOffsets.getSize() - 1);
+					}
+					else
+						loadText(seg,endOffsets);
+					shownLoadedText = null;
+					Log.log(Log.MESSAGE,Buffer.this,path
+						+ ": loaded in " + (System.nanoTime()
+						- loadStartTime) / 1000000L + " ms");
+				}
+				else
+					loadText(seg,endOffsets);
 
 				unsetProperty(BufferIORequest.LOAD_DATA);
 				unsetProperty(BufferIORequest.END_OFFSETS);
 				unsetProperty(BufferIORequest.NEW_PATH);
 
+				File replayedJournal = recoveredJournal;
+				recoveredJournal = null;
+				long journalLength = 0L;
+				if(replayedJournal != null)
+				{
+					try
+					{
+						journalLength = AutosaveJournal.replay(
+							Buffer.this,replayedJournal);
+					}
+					catch(IOException e)
+					{
+						Log.log(Log.ERROR,Buffer.this,e);
+						keepJournal(view,replayedJournal);
+						replayedJournal = null;
+					}
+				}
+
 				undoMgr.clear();
 				undoMgr.setLimit(jEdit.getIntegerProperty(
 					"buffer.undoCount",100));
@@ -287,8 +331,19 @@ public class Buffer extends JEditBuffer
 				// call finishLoading() because it sets the FoldHandler
 				// and reload markers.
 				if (!getFlag(TEMPORARY))
+				{
 					finishLoading();
 
+					if(replayedJournal != null)
+						journal.resume(replayedJournal,journalLength);
+					else if(!getBooleanProperty(
+						BufferIORequest.ERROR_OCCURRED))
+					{
+						journal.start(loadAutosave
+							? autosaveFile : file);
+					}
+				}
+
 				setLoading(false);
 
 				// if reloading a file, clear dirty flag
@@ -330,6 +385,69 @@ public class Buffer extends JEditBuffer
 		return true;
 	} //}}}
 
+	//{{{ showLoadedText() method
+	/**
+	 * Shows the text read so far by {@link #load(View,boolean)}, so that
+	 * the first screen can be seen before the whole file is read. The
+	 * buffer is then no longer loading, but it is neither editable nor
+	 * {@link #isLoaded() loaded} until the rest of the file is read; the text read meanwhile is appended by
+	 * later calls, unless it is in another array because the read was
+	 * retried, in which case it replaces the text shown. This must be
+	 * called in the event dispatch thread.
+	 * @param seg The text read so far, ending with a line separator
+	 * @param endOffsets The offset following each line separator
+	 * @param lineCount The number of these offsets
+	 * @since jEdit 5.7pre1
+	 */
+	public void showLoadedText(Segment seg, int[] endOffsets, int lineCount)
+	{
+		if(showingLoadedText)
+		{
+			if(seg.array == shownLoadedText)
+			{
+				appendLoadedText(seg,endOffsets,lineCount);
+				return;
+			}
+
+			// the read was retried, the text shown is replaced
+			if(isClosed())
+				return;
+			setLoading(true);
+		}
+		// the load may be finished already
+		else if(!isLoading() || getFlag(TEMPORARY) || isClosed())
+			return;
+
+		// the line manager keeps this array
+		IntegerArray lineEnds = new IntegerArray(lineCount + 1);
+		for(int i = 0; i < lineCount; i++)
+			lineEnds.add(endOffsets[i]);
+		lineEnds.add(seg.count + 1);
+		loadText(seg,lineEnds);
+
+		// the mode is only set once the file is read
+		if(getTokenMarker() == null)
+			setTokenMarker(textTokenMarker);
+
+		showingLoadedText = true;
+		shownLoadedText = seg.array;
+		setPerformingIO(true);
+		setLoading(false);
+		fireBufferLoaded();
+		jEdit.visit(new JEditVisitorAdapter()
+		{
+			@Override
+			public void visit(EditPane editPane)
+			{
+				if(editPane.getBuffer() == Buffer.this)
+					editPane.getTextArea().repaint();
+			}
+		});
+
+		Log.log(Log.MESSAGE,this,path + ": first screen shown after "
+			+ (System.nanoTime() - loadStartTime) / 1000000L + " ms");
+	} //}}}
+
 	//{{{ insertFile() method
 	/**
 	 * Loads a file from disk, and inserts it into this buffer.
@@ -398,13 +516,14 @@ public class Buffer extends JEditBuffer
 		// if autosave path settings changed, delete the old file
 		if(autosaveFile != null && !autosaveFileOriginal.toString().equals(autosaveFile.toString())) {
 			autosaveFileOriginal.delete();
+			journal.stop(true);
 		}
 
 		setFlag(AUTOSAVE_DIRTY,false);
 
 		ThreadUtilities.runInBackground(new BufferAutosaveRequest(
 			null,this,null,VFSManager.getFileVFS(),
-			autosaveFile.getPath()));
+			autosaveFile.getPath(),journal));
 	} //}}}
 
 	//{{{ saveAs() method
@@ -721,6 +840,23 @@ public class Buffer extends JEditBuffer
 		return FILE_NOT_CHANGED;
 	} //}}}
 
+	//{{{ isChangedOnDisk() method
+	/**
+	 * Returns true if {@link #checkFileStatus(View)} would find the file
+	 * changed or deleted, without changing anything. Unlike that method,
+	 * this one can be called from any thread, so that files on slow file
+	 * systems can be looked at in the background.
+	 * @since jEdit 5.7pre1
+	 */
+	public boolean isChangedOnDisk()
+	{
+		File file = this.file;
+		if(isPerformingIO() || file == null || getFlag(NEW_FILE) || isUntitled())
+			return false;
+		boolean newReadOnly = file.exists() && !file.canWrite();
+		return newReadOnly != isFileReadOnly() || file.lastModified() != modTime;
+	} //}}}
+
 	//}}}
 
 	//{{{ Getters/setter methods for various buffer meta-data
@@ -834,6 +970,7 @@ public class Buffer extends JEditBuffer
 		if (autosaveFile != null)
 		{
 			autosaveFile.delete();
+			journal.stop(true);
 			setFlag(AUTOSAVE_DIRTY,true);
 		}
 	} //}}}
@@ -903,10 +1040,12 @@ public class Buffer extends JEditBuffer
 	//{{{ isLoaded() method
 	/**
 	 * @return true if the buffer is loaded. This method is thread-safe.
+	 * While the first part of a large file is shown and the rest is still
+	 * being read, the buffer is not loading but not loaded either.
 	 */
 	public boolean isLoaded()
 	{
-		return !isLoading();
+		return !isLoading() && !showingLoadedText;
 	} //}}}
 
 	//{{{ isNewFile() method
@@ -989,7 +1128,12 @@ public class Buffer extends JEditBuffer
 			setFlag(AUTOSAVE_DIRTY,false);
 
 			if(autosaveFile != null)
+			{
 				autosaveFile.delete();
+				// the file holds the text again
+				if(!isLoading())
+					journal.start(file);
+			}
 		}
 
 		if(d != old_d && editable)
@@ -1790,6 +1934,7 @@ public class Buffer extends JEditBuffer
 		setFlag(AUTORELOAD_DIALOG,jEdit.getBooleanProperty("autoReloadDialog"));
 
 		undoListeners = new Vector<>();
+		addBufferListener(journal);
 	} //}}}
 
 	//{{{ commitTemporary() method
@@ -1820,7 +1965,10 @@ public class Buffer extends JEditBuffer
                 boolean autosaveUntitled = jEdit.getBooleanProperty("autosaveUntitled");
 
 		if(autosaveFile != null && (doNotSave || !(isUntitled() && autosaveUntitled)))
+		{
 			autosaveFile.delete();
+			journal.stop(true);
+		}
 
 		// close az untitled buffer, but need to autosavesave
 		// except we close it manually and do not want to save
@@ -2003,6 +2151,16 @@ public class Buffer extends JEditBuffer
 	private final Vector<Marker> markers;
 
 	private Socket waitSocket;
+	/** When the last load started, in nanoseconds. */
+	private long loadStartTime;
+	/** Whether the text of a load in progress is shown. */
+	private volatile boolean showingLoadedText;
+	/** The array holding the text shown, which the next reads append to. */
+	private char[] shownLoadedText;
+	/** The edits since the text was last written to a file. */
+	private final AutosaveJournal journal = new AutosaveJournal(this);
+	/** The journal to replay once the load is finished, or null. */
+	private File recoveredJournal;
 	private final List<BufferUndoListener> undoListeners;
 //
 //	/** the current ioTask of this buffer */
@@ -2036,7 +2194,10 @@ public class Buffer extends JEditBuffer
 			// if we don't do this, the autosave file won't be
 			// deleted after a save as
 			if(autosaveFile != null)
+			{
 				autosaveFile.delete();
+				journal.stop(true);
+			}
 
 			setAutosaveFile();
 		}
@@ -2064,7 +2225,20 @@ public class Buffer extends JEditBuffer
 	//{{{ recoverAutosave() method
 	private boolean recoverAutosave(final View view)
 	{
-		if(!autosaveFile.canRead())
+		// with a journal, its base is loaded and the edits replayed
+		File journalFile = AutosaveJournal.getJournalFile(autosaveFile);
+		File base = null;
+		if(journalFile.exists())
+		{
+			base = AutosaveJournal.getBase(journalFile);
+			if(base == null)
+			{
+				GUIUtilities.hideSplashScreen();
+				keepJournal(view,journalFile);
+			}
+		}
+
+		if(base == null && !autosaveFile.canRead())
 			return false;
 
 		// this method might get called at startup
@@ -2072,12 +2246,16 @@ public class Buffer extends JEditBuffer
 
 		boolean autosaveUntitled = jEdit.getBooleanProperty("autosaveUntitled");
 
-		final Object[] args = { autosaveFile.getPath() };
+		final Object[] args = { base != null ? journalFile.getPath()
+			: autosaveFile.getPath() };
+		String loadPath = base != null ? base.getPath()
+			: autosaveFile.getPath();
 
 		int result;
 		// if it was an untitled autosave, recover without question
 		if (isUntitled() && autosaveUntitled) {
-			VFSManager.getFileVFS().load(view,this,autosaveFile.getPath(), isUntitled());
+			recoveredJournal = base != null ? journalFile : null;
+			VFSManager.getFileVFS().load(view,this,loadPath, isUntitled());
 			return true;
 		} else {
 			result = GUIUtilities.confirm(view,"autosave-found",args,
@@ -2086,7 +2264,8 @@ public class Buffer extends JEditBuffer
 
 		if(result == JOptionPane.YES_OPTION)
 		{
-			VFSManager.getFileVFS().load(view,this,autosaveFile.getPath(), isUntitled());
+			recoveredJournal = base != null ? journalFile : null;
+			VFSManager.getFileVFS().load(view,this,loadPath, isUntitled());
 
 			// show this message when all I/O requests are
 			// complete
@@ -2098,6 +2277,30 @@ public class Buffer extends JEditBuffer
 			return false;
 	} //}}}
 
+	//{{{ keepJournal() method
+	/**
+	 * Asks whether to delete an autosave journal whose edits cannot be
+	 * replayed, and otherwise renames it, since the next journal would
+	 * replace it.
+	 */
+	private void keepJournal(View view, File journalFile)
+	{
+		File keptFile = new File(journalFile.getPath() + '1');
+		for(int i = 2; keptFile.exists(); i++)
+			keptFile = new File(journalFile.getPath() + i);
+
+		Object[] args = { journalFile.getPath(), keptFile.getPath() };
+		int result = GUIUtilities.confirm(view,"autosave-journal-unusable",
+			args,JOptionPane.YES_NO_OPTION,JOptionPane.WARNING_MESSAGE);
+		if(result == JOptionPane.YES_OPTION)
+			journalFile.delete();
+		else if(!journalFile.renameTo(keptFile))
+		{
+			Log.log(Log.ERROR,this,"Cannot rename " + journalFile
+				+ " to " + keptFile);
+		}
+	} //}}}
+
 	//{{{ checkFileForLoad() method
 	private boolean checkFileForLoad(View view, VFS vfs, String path)
 	{
@@ -2322,6 +2525,7 @@ public class Buffer extends JEditBuffer
 
 					if(autosaveFile != null)
 						autosaveFile.delete();
+					journal.start(file);
 
 					setFlag(AUTOSAVE_DIRTY,false);
 					setFileReadOnly(false);
@@ -27,8 +27,13 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -1147,7 +1152,7 @@ public class EditPane extends JPanel implements BufferSetListener
 		else if(msg.getWhat() == BufferUpdate.MARKERS_CHANGED)
 		{
 			if(_buffer == buffer)
-				textArea.getGutter().repaint();
+				markerHighlight.markersChanged(buffer);
 		}
 		else if(msg.getWhat() == BufferUpdate.PROPERTIES_CHANGED)
 		{
@@ -1227,6 +1232,8 @@ public class EditPane extends JPanel implements BufferSetListener
 	{
 		private boolean markerHighlight;
 		private Color markerHighlightColor;
+		private Buffer markersBuffer;
+		private List<Marker> markers = Collections.emptyList();
 
 		//{{{ getMarkerHighlightColor() method
 		public Color getMarkerHighlightColor()
@@ -1252,6 +1259,39 @@ public class EditPane extends JPanel implements BufferSetListener
 			this.markerHighlight = markerHighlight;
 		} //}}}
 
+		//{{{ markersChanged() method
+		/**
+		 * Repaints the gutter lines of the markers that were added or
+		 * removed since the last call, instead of the whole gutter.
+		 */
+		void markersChanged(Buffer buffer)
+		{
+			List<Marker> oldMarkers = markers;
+			markers = new ArrayList<>(buffer.getMarkers());
+
+			Gutter gutter = textArea.getGutter();
+			if(markersBuffer != buffer)
+			{
+				markersBuffer = buffer;
+				gutter.repaint();
+				return;
+			}
+
+			Set<Marker> oldSet = Collections.newSetFromMap(new IdentityHashMap<>());
+			oldSet.addAll(oldMarkers);
+			for(Marker marker : markers)
+			{
+				if(!oldSet.remove(marker))
+					gutter.invalidateLine(buffer.getLineOfOffset(marker.getPosition()));
+			}
+			// whatever is left was removed from the buffer
+			for(Marker marker : oldSet)
+			{
+				int pos = Math.min(marker.getPosition(), buffer.getLength());
+				gutter.invalidateLine(buffer.getLineOfOffset(pos));
+			}
+		} //}}}
+
 		//{{{ paintValidLine() method
 		@Override
 		public void paintValidLine(Graphics2D gfx, int screenLine,
@@ -992,7 +992,20 @@ public class MiscUtilities
 	 */
 	public static boolean isBinary(InputStream in) throws IOException
 	{
-		AutoDetection.Result detection = new AutoDetection.Result(in);
+		return isBinary(new AutoDetection.Result(in));
+	}
+
+	/**
+	 * Check if a stream is binary, from the result of its encoding auto
+	 * detection, as {@link #isBinary(InputStream)} does.
+	 *
+	 * @param detection the auto detection of the stream
+	 * @return <code>true</code> if the stream was detected as binary
+	 * @throws IOException IOException If an I/O error occurs
+	 * @since jEdit 5.7pre1
+	 */
+	public static boolean isBinary(AutoDetection.Result detection) throws IOException
+	{
 		// If an encoding is detected, this is a text stream
 		if (detection.getDetectedEncoding() != null)
 		{
@@ -0,0 +1,133 @@
+/*
+ * ScrollRequestCoalescer.java - Latest-wins scroll requests from the browser
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit;
+
+//{{{ Imports
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+//}}}
+
+/**
+ * Collapses bursts of scroll requests coming from the mindmap browser
+ * into at most one text area update per frame.<p>
+ *
+ * Only one request is ever pending; a newer request replaces an older one
+ * that has not been applied yet. Requests may be posted from any thread,
+ * they are always applied on the event dispatch thread.
+ */
+class ScrollRequestCoalescer
+{
+	/** Minimum delay between two applied requests, roughly one frame. */
+	static final int FRAME_DELAY = 16;
+
+	//{{{ ScrollRequestCoalescer constructor
+	ScrollRequestCoalescer()
+	{
+		timer = new Timer(FRAME_DELAY, e -> flush());
+		timer.setRepeats(false);
+		timer.setCoalesce(true);
+	} //}}}
+
+	//{{{ post() method
+	/**
+	 * Posts a scroll request, replacing any request that is still pending.
+	 * @param line The line to scroll to
+	 * @param handler Applies the request on the event dispatch thread
+	 */
+	void post(int line, IntConsumer handler)
+	{
+		received.incrementAndGet();
+		if (pending.getAndSet(new Request(line, handler)) == null)
+			SwingUtilities.invokeLater(this::schedule);
+	} //}}}
+
+	//{{{ getReceivedCount() method
+	/**
+	 * Returns the number of requests posted so far.
+	 */
+	long getReceivedCount()
+	{
+		return received.get();
+	} //}}}
+
+	//{{{ getAppliedCount() method
+	/**
+	 * Returns the number of requests that actually reached the text area.
+	 */
+	long getAppliedCount()
+	{
+		return applied.get();
+	} //}}}
+
+	//{{{ Private members
+	private final AtomicReference<Request> pending = new AtomicReference<>();
+	private final AtomicLong received = new AtomicLong();
+	private final AtomicLong applied = new AtomicLong();
+	private final Timer timer;
+	private long lastApplied;
+
+	//{{{ schedule() method
+	private void schedule()
+	{
+		if (timer.isRunning())
+			return;
+		long elapsed = System.currentTimeMillis() - lastApplied;
+		if (elapsed >= FRAME_DELAY)
+		{
+			flush();
+		}
+		else
+		{
+			timer.setInitialDelay((int) (FRAME_DELAY - elapsed));
+			timer.start();
+		}
+	} //}}}
+
+	//{{{ flush() method
+	private void flush()
+	{
+		Request request = pending.getAndSet(null);
+		if (request == null)
+			return;
+		lastApplied = System.currentTimeMillis();
+		applied.incrementAndGet();
+		request.handler.accept(request.line);
+	} //}}}
+
+	//{{{ Request class
+	private static class Request
+	{
+		final int line;
+		final IntConsumer handler;
+
+		Request(int line, IntConsumer handler)
+		{
+			this.line = line;
+			this.handler = handler;
+		}
+	} //}}}
+
+	//}}}
+}
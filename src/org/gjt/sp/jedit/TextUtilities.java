@@ -24,6 +24,7 @@ package org.gjt.sp.jedit;
 //{{{ Imports
 import java.util.*;
 import javax.swing.text.Segment;
+import org.gjt.sp.jedit.buffer.BracketIndex;
 import org.gjt.sp.jedit.buffer.JEditBuffer;
 import org.gjt.sp.jedit.syntax.*;
 import org.gjt.sp.util.StandardUtilities;
@@ -137,6 +138,11 @@ public class TextUtilities
 				+ buffer.getLineLength(line));
 		}
 
+		int indexed = BracketIndex.findMatchingBracket(buffer,
+			buffer.getLineStartOffset(line) + offset);
+		if(indexed != BracketIndex.NOT_INDEXED)
+			return indexed;
+
 		Segment lineText = new Segment();
 		buffer.getLineText(line,lineText);
 
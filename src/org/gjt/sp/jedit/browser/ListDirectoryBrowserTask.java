@@ -24,6 +24,7 @@
 package org.gjt.sp.jedit.browser;
 
 //{{{ Imports
+import org.gjt.sp.jedit.io.DirectoryListingCache;
 import org.gjt.sp.jedit.io.VFS;
 import org.gjt.sp.jedit.io.VFSFile;
 import org.gjt.sp.jedit.io.VFSManager;
@@ -71,7 +72,8 @@ class ListDirectoryBrowserTask extends AbstractBrowserTask
 			setCancellable(true);
 
 			canonPath = vfs._canonPath(session, path,browser);
-			directory = vfs._listFiles(session,canonPath,browser);
+			directory = DirectoryListingCache.getInstance().listFiles(
+				vfs,session,canonPath,browser);
 		}
 		catch(IOException io)
 		{
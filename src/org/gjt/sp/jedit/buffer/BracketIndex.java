@@ -0,0 +1,388 @@
+/*
+ * BracketIndex.java - Pairs of matching brackets in a buffer
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.buffer;
+
+//{{{ Imports
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.text.Segment;
+
+import org.gjt.sp.jedit.TextUtilities;
+import org.gjt.sp.jedit.syntax.DefaultTokenHandler;
+import org.gjt.sp.jedit.syntax.Token;
+import org.gjt.sp.jedit.syntax.TokenMarker;
+import org.gjt.sp.util.IntegerArray;
+import org.gjt.sp.util.Log;
+import org.gjt.sp.util.Task;
+import org.gjt.sp.util.ThreadUtilities;
+//}}}
+
+/**
+ * An index of the bracket pairs of a buffer, so that the bracket matching
+ * the caret can be found with a binary search instead of scanning and
+ * tokenizing the lines between the two brackets.<p>
+ *
+ * Like {@link TextUtilities#findMatchingBracket(JEditBuffer,int,int)}, a
+ * bracket only pairs with a complementary bracket in a token of the same
+ * type, so brackets in comments or string literals do not disturb the others.
+ * The index is built by a background task that tokenizes the buffer with its
+ * own line contexts, a few lines at a time under the read lock.<p>
+ *
+ * Edits do not throw the index away: a pair lying entirely before the first
+ * edited line stays valid, since it only depends on the text between its two
+ * brackets. Lookups past that point return {@link #NOT_INDEXED} until the
+ * index has been rebuilt, and callers then scan as before.
+ */
+public class BracketIndex
+{
+	/** Returned by {@link #findMatchingBracket(JEditBuffer,int)} when the
+	 * index cannot answer and the buffer must be scanned. */
+	public static final int NOT_INDEXED = -2;
+
+	/** Buffers with fewer lines are cheap enough to scan. */
+	public static final int MIN_LINE_COUNT = 2000;
+
+	//{{{ findMatchingBracket() method
+	/**
+	 * Returns the offset of the bracket matching the one at the given
+	 * offset, -1 if it is unmatched or not a bracket, or
+	 * {@link #NOT_INDEXED} if the index cannot tell. The index is only
+	 * consulted from the event dispatch thread.
+	 * @param buffer The buffer
+	 * @param offset The offset of the bracket in the buffer
+	 */
+	public static int findMatchingBracket(JEditBuffer buffer, int offset)
+	{
+		if (!SwingUtilities.isEventDispatchThread() || buffer.isLoading()
+			|| buffer.getLineCount() < MIN_LINE_COUNT)
+			return NOT_INDEXED;
+
+		BracketIndex index = buffer.getBracketIndex();
+		if (index == null)
+		{
+			index = new BracketIndex(buffer);
+			buffer.setBracketIndex(index);
+		}
+		return index.lookup(buffer, offset);
+	} //}}}
+
+	//{{{ Private members
+
+	/** Delay after the last edit before the index is rebuilt. */
+	private static final int REBUILD_DELAY = 500;
+
+	/** Lines tokenized per read lock acquisition. */
+	private static final int LINES_PER_LOCK = 1000;
+
+	private final Timer rebuildTimer;
+	private final BufferListener listener;
+
+	/** Incremented on every edit; a build started before is discarded. */
+	private volatile int version;
+	private volatile Snapshot snapshot;
+	/** Indexed pairs that end before this offset are still accurate. */
+	private int validBefore;
+	private BuildTask pendingBuild;
+
+	//{{{ BracketIndex constructor
+	private BracketIndex(JEditBuffer buffer)
+	{
+		// the index is owned by the buffer, so referencing it here
+		// does not keep a closed buffer alive
+		rebuildTimer = new Timer(REBUILD_DELAY, e -> rebuild(buffer));
+		rebuildTimer.setRepeats(false);
+
+		listener = new BufferAdapter()
+		{
+			@Override
+			public void contentInserted(JEditBuffer buffer, int startLine,
+				int offset, int numLines, int length)
+			{
+				edited(buffer, startLine);
+			}
+
+			@Override
+			public void contentRemoved(JEditBuffer buffer, int startLine,
+				int offset, int numLines, int length)
+			{
+				edited(buffer, startLine);
+			}
+
+			@Override
+			public void bufferLoaded(JEditBuffer buffer)
+			{
+				edited(buffer, 0);
+			}
+		};
+		buffer.addBufferListener(listener);
+		rebuild(buffer);
+	} //}}}
+
+	//{{{ lookup() method
+	private int lookup(JEditBuffer buffer, int offset)
+	{
+		Snapshot snapshot = this.snapshot;
+		if (snapshot == null)
+			return NOT_INDEXED;
+
+		if (snapshot.tokenMarker != buffer.getTokenMarker()
+			|| snapshot.contextInsensitive != buffer.isContextInsensitive())
+		{
+			// mode changed since the index was built
+			validBefore = 0;
+			rebuildTimer.restart();
+			return NOT_INDEXED;
+		}
+
+		if (offset >= validBefore)
+			return NOT_INDEXED;
+
+		int i = Arrays.binarySearch(snapshot.offsets, 0, snapshot.count, offset);
+		if (i < 0)
+			return -1;
+
+		int partner = snapshot.partners[i];
+		if (partner < 0 || partner >= validBefore)
+			return NOT_INDEXED;
+
+		int line = buffer.getLineOfOffset(offset);
+		int partnerLine = buffer.getLineOfOffset(partner);
+		if (Math.abs(partnerLine - line) > TextUtilities.BRACKET_MATCH_LIMIT)
+			return -1;
+		return partner;
+	} //}}}
+
+	//{{{ edited() method
+	private void edited(JEditBuffer buffer, int startLine)
+	{
+		version++;
+		validBefore = Math.min(validBefore,
+			buffer.getLineStartOffset(startLine));
+		rebuildTimer.restart();
+	} //}}}
+
+	//{{{ rebuild() method
+	private void rebuild(JEditBuffer buffer)
+	{
+		if (buffer.isClosed())
+		{
+			buffer.removeBufferListener(listener);
+			return;
+		}
+		// bufferLoaded() schedules another build once loading is over
+		if (buffer.isLoading())
+			return;
+		if (pendingBuild != null)
+		{
+			rebuildTimer.restart();
+			return;
+		}
+		pendingBuild = new BuildTask(buffer, version);
+		ThreadUtilities.runInBackground(pendingBuild);
+	} //}}}
+
+	//{{{ buildFinished() method
+	private void buildFinished(JEditBuffer buffer, Snapshot result, int builtVersion)
+	{
+		pendingBuild = null;
+		if (builtVersion != version)
+		{
+			rebuildTimer.restart();
+			return;
+		}
+		if (result == null)
+			return;
+		snapshot = result;
+		validBefore = buffer.getLength() + 1;
+	} //}}}
+
+	//{{{ Snapshot class
+	private static class Snapshot
+	{
+		final TokenMarker tokenMarker;
+		final boolean contextInsensitive;
+		/** Offsets of all brackets, ascending. */
+		final int[] offsets;
+		/** Offset of the matching bracket, or -1. */
+		final int[] partners;
+		final int count;
+
+		Snapshot(TokenMarker tokenMarker, boolean contextInsensitive,
+			int[] offsets, int[] partners, int count)
+		{
+			this.tokenMarker = tokenMarker;
+			this.contextInsensitive = contextInsensitive;
+			this.offsets = offsets;
+			this.partners = partners;
+			this.count = count;
+		}
+	} //}}}
+
+	//{{{ BuildTask class
+	private class BuildTask extends Task
+	{
+		private final JEditBuffer buffer;
+		private final int builtVersion;
+
+		BuildTask(JEditBuffer buffer, int builtVersion)
+		{
+			this.buffer = buffer;
+			this.builtVersion = builtVersion;
+			setLabel("Indexing brackets of " + buffer);
+		}
+
+		@Override
+		public void _run()
+		{
+			Snapshot result = null;
+			try
+			{
+				result = build();
+			}
+			finally
+			{
+				Snapshot done = result;
+				ThreadUtilities.runInDispatchThread(() ->
+					buildFinished(buffer, done, builtVersion));
+			}
+		}
+
+		/**
+		 * @return the new snapshot, or null if the buffer changed while
+		 * it was being tokenized
+		 */
+		private Snapshot build()
+		{
+			TokenMarker tokenMarker;
+			boolean contextInsensitive;
+			buffer.readLock();
+			try
+			{
+				tokenMarker = buffer.getTokenMarker();
+				contextInsensitive = buffer.isContextInsensitive();
+			}
+			finally
+			{
+				buffer.readUnlock();
+			}
+			if (tokenMarker == null)
+				return null;
+
+			IntegerArray offsets = new IntegerArray(1024);
+			IntegerArray partners = new IntegerArray(1024);
+			// opening brackets waiting for their match, per bracket
+			// kind and token type
+			Map<Integer, IntegerArray> open = new HashMap<>();
+			boolean[] direction = new boolean[1];
+			Segment seg = new Segment();
+			DefaultTokenHandler tokenHandler = new DefaultTokenHandler();
+			TokenMarker.LineContext context = null;
+
+			int line = 0;
+			for (;;)
+			{
+				if (Thread.currentThread().isInterrupted())
+					return null;
+
+				buffer.readLock();
+				try
+				{
+					if (version != builtVersion
+						|| buffer.getTokenMarker() != tokenMarker)
+						return null;
+
+					int lineCount = buffer.getLineCount();
+					int end = Math.min(lineCount, line + LINES_PER_LOCK);
+					for (; line < end; line++)
+					{
+						buffer.getLineText(line, seg);
+						tokenHandler.init();
+						context = buffer.markTokens(seg,
+							contextInsensitive ? null : context,
+							tokenHandler);
+						int lineStart = buffer.getLineStartOffset(line);
+						Token token = tokenHandler.getTokens();
+						for (int i = 0; i < seg.count; i++)
+						{
+							char ch = seg.array[seg.offset + i];
+							char complement = TextUtilities
+								.getComplementaryBracket(ch, direction);
+							if (complement == '\0')
+								continue;
+
+							while (token.id != Token.END
+								&& token.offset + token.length <= i)
+								token = token.next;
+
+							char opening = direction[0] ? ch : complement;
+							Integer key = (opening << 8) | (token.id & 0xff);
+							int offset = lineStart + i;
+							offsets.add(offset);
+							partners.add(-1);
+							IntegerArray stack = open.get(key);
+							if (direction[0])
+							{
+								if (stack == null)
+								{
+									stack = new IntegerArray(16);
+									open.put(key, stack);
+								}
+								stack.add(offsets.getSize() - 1);
+							}
+							else if (stack != null && !stack.isEmpty())
+							{
+								int top = stack.getSize() - 1;
+								int openIndex = stack.get(top);
+								stack.setSize(top);
+								partners.getArray()[openIndex] = offset;
+								partners.getArray()[partners.getSize() - 1] =
+									offsets.get(openIndex);
+							}
+						}
+					}
+					if (line >= lineCount)
+						break;
+				}
+				finally
+				{
+					buffer.readUnlock();
+				}
+			}
+
+			Log.log(Log.DEBUG, BracketIndex.class, "Indexed "
+				+ offsets.getSize() + " brackets in " + buffer);
+			return new Snapshot(tokenMarker, contextInsensitive,
+				offsets.getArray(), partners.getArray(), offsets.getSize());
+		}
+
+		@Override
+		public String toString()
+		{
+			return getLabel();
+		}
+	} //}}}
+
+	//}}}
+}
@@ -22,6 +22,9 @@
 package org.gjt.sp.jedit.buffer;
 
 import javax.annotation.Nonnull;
+import javax.swing.text.Segment;
+
+import org.gjt.sp.util.SegmentedCharSequence;
 
 /**
  * A read-only text segment from a buffer. Allows concatenation using a
@@ -31,7 +34,7 @@ import javax.annotation.Nonnull;
  * @version $Id$
  * @since jEdit 4.3pre15
  */
-class BufferSegment implements CharSequence
+class BufferSegment implements SegmentedCharSequence
 {
 
 	public BufferSegment(char[] data,
@@ -50,6 +53,7 @@ class BufferSegment implements CharSequence
 		this.offset = offset;
 		this.len = len;
 		this.next = next;
+		length = len + ((next != null) ? next.length : 0);
 	}
 
 	@Override
@@ -66,7 +70,20 @@ class BufferSegment implements CharSequence
 	@Override
 	public int length()
 	{
-		return len + ((next != null) ? next.length() : 0);
+		return length;
+	}
+
+	@Override
+	public Segment[] getSegments()
+	{
+		int count = 0;
+		for (BufferSegment s = this; s != null; s = s.next)
+			count++;
+		Segment[] segments = new Segment[count];
+		int i = 0;
+		for (BufferSegment s = this; s != null; s = s.next)
+			segments[i++] = new Segment(s.data,s.offset,s.len);
+		return segments;
 	}
 
 	@Override
@@ -116,5 +133,7 @@ class BufferSegment implements CharSequence
 	private final int offset;
 	private final int len;
 	private final BufferSegment next;
+	/** The length of this segment and the following ones. */
+	private final int length;
 }
 
@@ -169,6 +169,26 @@ class ContentManager
 		this.length = length;
 	} //}}}
 
+	//{{{ _appendContent() method
+	/**
+	 * Takes in the text that was written after the content, in the array
+	 * given to {@link #_setContent(char[],int)}, without copying it.
+	 * @param text The array given to <code>_setContent()</code>
+	 * @param length The new length of the content
+	 * @return false if the content is no longer kept in this array with the
+	 * gap at its end, in which case nothing is done
+	 * @since jEdit 5.7pre1
+	 */
+	public boolean _appendContent(char[] text, int length)
+	{
+		if(text != this.text || gapStart != this.length
+			|| length < this.length || length > text.length)
+			return false;
+		this.gapStart = length;
+		this.length = length;
+		return true;
+	} //}}}
+
 	//{{{ remove() method
 	public void remove(int start, int len)
 	{
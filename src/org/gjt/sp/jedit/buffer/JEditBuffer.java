@@ -834,6 +834,46 @@ public class JEditBuffer
 		}
 	} //}}}
 
+	//{{{ replace() method
+	/**
+	 * Replaces several ranges of the buffer with the same text, in a
+	 * single compound edit. This is what typing with many carets or
+	 * selections boils down to.<p>
+	 *
+	 * The ranges are processed from the last to the first, so replacing
+	 * one never moves the offsets of those still to be replaced, and
+	 * listeners tracking positions only see offsets they already know.
+	 * @param starts The start offsets of the ranges, ascending
+	 * @param ends The end offsets of the ranges. Ranges must not overlap
+	 * @param text The replacement text, may be empty
+	 * @since jEdit 5.7pre1
+	 */
+	public void replace(int[] starts, int[] ends, CharSequence text)
+	{
+		if(starts.length != ends.length)
+			throw new IllegalArgumentException("starts.length != ends.length");
+		for(int i = 0; i < starts.length; i++)
+		{
+			if(ends[i] < starts[i] || (i != 0 && starts[i] < ends[i - 1]))
+				throw new IllegalArgumentException("Unsorted or overlapping range "
+					+ starts[i] + ':' + ends[i]);
+		}
+
+		try
+		{
+			beginCompoundEdit();
+			for(int i = starts.length - 1; i >= 0; i--)
+			{
+				remove(starts[i],ends[i] - starts[i]);
+				insert(starts[i],text);
+			}
+		}
+		finally
+		{
+			endCompoundEdit();
+		}
+	} //}}}
+
 	//}}}
 
 	//{{{ Indentation
@@ -1428,6 +1468,18 @@ loop:		for(int i = 0; i < seg.count; i++)
 		return tokenMarker;
 	} //}}}
 
+	//{{{ getBracketIndex() method
+	BracketIndex getBracketIndex()
+	{
+		return bracketIndex;
+	} //}}}
+
+	//{{{ setBracketIndex() method
+	void setBracketIndex(BracketIndex bracketIndex)
+	{
+		this.bracketIndex = bracketIndex;
+	} //}}}
+
 	//{{{ setTokenMarker() method
 	public void setTokenMarker(TokenMarker tokenMarker)
 	{
@@ -2777,6 +2829,59 @@ loop:		for(int i = 0; i < seg.count; i++)
 		}
 	} //}}}
 
+	//{{{ appendLoadedText() method
+	/**
+	 * Appends the text read since the last call to
+	 * {@link #loadText(Segment,IntegerArray)} or to this method, while a
+	 * file is still being read into the same array. The text already in
+	 * the buffer must end with a line separator.
+	 * @param seg The text read so far; its array must be the one given
+	 * to <code>loadText()</code> for the text not to be copied
+	 * @param endOffsets The offset following each line separator of the
+	 * text read so far
+	 * @param lineCount The number of these offsets
+	 * @since jEdit 5.7pre1
+	 */
+	protected void appendLoadedText(Segment seg, int[] endOffsets,
+		int lineCount)
+	{
+		try
+		{
+			writeLock();
+
+			int offset = getLength();
+			int length = seg.count - offset;
+			if(length <= 0)
+				return;
+
+			int startLine = getLineCount() - 1;
+			IntegerArray lineEnds = new IntegerArray(
+				Math.max(1,lineCount - startLine));
+			for(int i = startLine; i < lineCount; i++)
+				lineEnds.add(endOffsets[i] - offset);
+			int numLines = lineEnds.getSize();
+
+			if(!loading)
+				firePreContentInserted(startLine,offset,numLines,length);
+
+			if(!contentMgr._appendContent(seg.array,seg.count))
+			{
+				contentMgr.insert(offset,new Segment(seg.array,
+					offset,length));
+			}
+			lineMgr.contentInserted(startLine,offset,numLines,length,
+				lineEnds);
+			positionMgr.contentInserted(offset,length);
+
+			if(!loading)
+				fireContentInserted(startLine,offset,numLines,length);
+		}
+		finally
+		{
+			writeUnlock();
+		}
+	} //}}}
+
 	//{{{ invalidateFoldLevels() method
 	protected void invalidateFoldLevels()
 	{
@@ -2872,6 +2977,7 @@ loop:		for(int i = 0; i < seg.count; i++)
 	// synchronization done in TextArea.propertiesChanged()
 	public boolean elasticTabstopsOn;
 	private ColumnBlock columnBlock;
+	private BracketIndex bracketIndex;
 
 	//{{{ getListener() method
 	private BufferListener getListener(int index)
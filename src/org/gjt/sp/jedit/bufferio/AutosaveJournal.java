@@ -0,0 +1,416 @@
+/*
+ * AutosaveJournal.java - The edits of a buffer since its last full save
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.bufferio;
+
+//{{{ Imports
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.gjt.sp.jedit.Buffer;
+import org.gjt.sp.jedit.jEdit;
+import org.gjt.sp.jedit.buffer.BufferAdapter;
+import org.gjt.sp.jedit.buffer.JEditBuffer;
+import org.gjt.sp.util.Log;
+//}}}
+
+/**
+ * The edits made to a large buffer since its text was last written to a
+ * file, so that an autosave only has to append them to a journal instead of
+ * writing the whole buffer.<p>
+ *
+ * The journal file starts with the path, length and modification time of
+ * its base, which is either the file of the buffer or a full autosave of
+ * it, followed by the edits made since. The edits are kept in memory until
+ * {@link BufferAutosaveRequest} appends them. Once the journal gets larger
+ * than the buffer, the next autosave writes the whole buffer again and the
+ * journal starts over from that autosave file.<p>
+ *
+ * To recover, the base is loaded and {@link #replay(JEditBuffer,File)}
+ * applies the edits to it.
+ *
+ * @since jEdit 5.7pre1
+ */
+public class AutosaveJournal extends BufferAdapter
+{
+	//{{{ getJournalFile() method
+	/**
+	 * Returns the journal file going with an autosave file.
+	 */
+	public static File getJournalFile(File autosaveFile)
+	{
+		return new File(autosaveFile.getPath() + "journal#");
+	} //}}}
+
+	//{{{ getBase() method
+	/**
+	 * Returns the file a journal applies to, or null if the journal cannot
+	 * be read or its base has changed since.
+	 */
+	public static File getBase(File journalFile)
+	{
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(
+			new FileInputStream(journalFile))))
+		{
+			if(!MAGIC.equals(in.readUTF()))
+				return null;
+			File base = new File(in.readUTF());
+			long length = in.readLong();
+			long modified = in.readLong();
+			if(base.length() != length || base.lastModified() != modified)
+			{
+				Log.log(Log.WARNING,AutosaveJournal.class,base
+					+ " changed since the journal "
+					+ journalFile + " was started");
+				return null;
+			}
+			return base;
+		}
+		catch(IOException e)
+		{
+			Log.log(Log.WARNING,AutosaveJournal.class,e);
+			return null;
+		}
+	} //}}}
+
+	//{{{ replay() method
+	/**
+	 * Applies the edits of a journal to the text of its base. An edit
+	 * cut short by a crash while it was appended is left out.
+	 * @return The length of the journal up to the end of its last
+	 * complete edit, see {@link #resume(File,long)}
+	 * @throws IOException if the journal does not match the text
+	 */
+	public static long replay(JEditBuffer buffer, File journalFile)
+		throws IOException
+	{
+		try(FileInputStream file = new FileInputStream(journalFile))
+		{
+			// the header is read unbuffered, to know where it ends
+			DataInputStream header = new DataInputStream(file);
+			header.readUTF();
+			header.readUTF();
+			header.readLong();
+			header.readLong();
+			long complete = file.getChannel().position();
+
+			DataInputStream in = new DataInputStream(
+				new BufferedInputStream(file));
+			int edits = 0;
+			for(;;)
+			{
+				int type = in.read();
+				if(type == -1)
+					break;
+				try
+				{
+					int offset = in.readInt();
+					int length = in.readInt();
+					if(type == INSERT)
+					{
+						char[] text = new char[length];
+						for(int i = 0; i < length; i++)
+							text[i] = in.readChar();
+						checkRange(buffer,offset,0);
+						buffer.insert(offset,new String(text));
+						complete += 9 + 2L * length;
+					}
+					else if(type == REMOVE)
+					{
+						checkRange(buffer,offset,length);
+						buffer.remove(offset,length);
+						complete += 9;
+					}
+					else
+						throw new IOException("Unknown edit " + type);
+				}
+				catch(EOFException e)
+				{
+					Log.log(Log.WARNING,AutosaveJournal.class,
+						journalFile + ": last edit incomplete");
+					break;
+				}
+				edits++;
+			}
+			Log.log(Log.DEBUG,AutosaveJournal.class,"Replayed " + edits
+				+ " edits from " + journalFile);
+			return complete;
+		}
+	} //}}}
+
+	//{{{ AutosaveJournal constructor
+	public AutosaveJournal(Buffer buffer)
+	{
+		this.buffer = buffer;
+		pending = new ByteArrayOutputStream();
+		pendingOut = new DataOutputStream(pending);
+	} //}}}
+
+	//{{{ start() method
+	/**
+	 * Starts a new journal, deleting the previous journal file. Nothing is
+	 * recorded if the buffer is small, if autosave is off, or if there is
+	 * no autosave file.
+	 * @param base The file holding the text the buffer has now, or null
+	 */
+	public synchronized void start(File base)
+	{
+		stop(true);
+		File autosaveFile = buffer.getAutosaveFile();
+		if(autosaveFile != null)
+			getJournalFile(autosaveFile).delete();
+		if(base == null || autosaveFile == null || !base.isFile()
+			|| jEdit.getIntegerProperty("autosave",0) == 0
+			|| buffer.getLength() < jEdit.getIntegerProperty(
+				"autosave.journalMinLength",Integer.MAX_VALUE))
+			return;
+
+		journalFile = getJournalFile(autosaveFile);
+		basePath = base.getPath();
+		baseLength = base.length();
+		baseModified = base.lastModified();
+		recording = true;
+	} //}}}
+
+	//{{{ resume() method
+	/**
+	 * Goes on appending to a journal that was replayed, the buffer
+	 * holding its base and edits.
+	 * @param journalFile The journal
+	 * @param length The length returned by
+	 * {@link #replay(JEditBuffer,File)}; an incomplete edit after it is
+	 * cut off
+	 */
+	public synchronized void resume(File journalFile, long length)
+	{
+		stop(false);
+		if(jEdit.getIntegerProperty("autosave",0) == 0)
+			return;
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(
+			new FileInputStream(journalFile))))
+		{
+			in.readUTF();
+			basePath = in.readUTF();
+			baseLength = in.readLong();
+			baseModified = in.readLong();
+		}
+		catch(IOException e)
+		{
+			Log.log(Log.ERROR,this,e);
+			basePath = null;
+			return;
+		}
+		try(FileChannel channel = FileChannel.open(journalFile.toPath(),
+			StandardOpenOption.WRITE))
+		{
+			if(channel.size() > length)
+				channel.truncate(length);
+		}
+		catch(IOException e)
+		{
+			Log.log(Log.ERROR,this,e);
+			basePath = null;
+			return;
+		}
+		this.journalFile = journalFile;
+		headerWritten = true;
+		recording = true;
+	} //}}}
+
+	//{{{ stop() method
+	/**
+	 * Stops recording the edits.
+	 * @param delete true to delete the journal file
+	 */
+	public synchronized void stop(boolean delete)
+	{
+		if(delete && journalFile != null)
+			journalFile.delete();
+		journalFile = null;
+		basePath = null;
+		headerWritten = false;
+		recording = false;
+		pending.reset();
+	} //}}}
+
+	//{{{ isRecording() method
+	/**
+	 * Returns true if the edits of the buffer are recorded.
+	 */
+	public synchronized boolean isRecording()
+	{
+		return recording;
+	} //}}}
+
+	//{{{ needsFullAutosave() method
+	/**
+	 * Returns true if the next autosave should write the whole buffer,
+	 * because the edits are not recorded, the journal got too large, or
+	 * its base changed since, so that the edits could not be replayed.
+	 */
+	public synchronized boolean needsFullAutosave()
+	{
+		if(!recording)
+			return true;
+		File base = new File(basePath);
+		if(base.length() != baseLength || base.lastModified() != baseModified)
+		{
+			Log.log(Log.DEBUG,this,base + " changed since the journal "
+				+ journalFile + " was started");
+			return true;
+		}
+		return journalFile.length() + pending.size()
+			> Math.max(MIN_JOURNAL_SIZE,buffer.getLength());
+	} //}}}
+
+	//{{{ append() method
+	/**
+	 * Appends the edits recorded since the last call to the journal file.
+	 */
+	public synchronized void append() throws IOException
+	{
+		if(!recording)
+			return;
+		try(OutputStream out = new FileOutputStream(journalFile,
+			headerWritten))
+		{
+			if(!headerWritten)
+			{
+				DataOutputStream header = new DataOutputStream(out);
+				header.writeUTF(MAGIC);
+				header.writeUTF(basePath);
+				header.writeLong(baseLength);
+				header.writeLong(baseModified);
+				header.flush();
+				headerWritten = true;
+			}
+			pending.writeTo(out);
+		}
+		catch(IOException e)
+		{
+			// the journal is no longer complete, but it is kept
+			// until the next full autosave replaces it, since it
+			// holds the edits appended so far
+			stop(false);
+			throw e;
+		}
+		pending.reset();
+	} //}}}
+
+	//{{{ BufferAdapter implementation
+	@Override
+	public void contentInserted(JEditBuffer buffer, int startLine,
+		int offset, int numLines, int length)
+	{
+		if(!recording || buffer.isLoading())
+			return;
+		String text = buffer.getText(offset,length);
+		synchronized(this)
+		{
+			try
+			{
+				pendingOut.writeByte(INSERT);
+				pendingOut.writeInt(offset);
+				pendingOut.writeInt(length);
+				pendingOut.writeChars(text);
+			}
+			catch(IOException e)
+			{
+				// a ByteArrayOutputStream does not throw
+				throw new AssertionError(e);
+			}
+			checkPending();
+		}
+	}
+
+	@Override
+	public void contentRemoved(JEditBuffer buffer, int startLine,
+		int offset, int numLines, int length)
+	{
+		if(!recording || buffer.isLoading())
+			return;
+		synchronized(this)
+		{
+			try
+			{
+				pendingOut.writeByte(REMOVE);
+				pendingOut.writeInt(offset);
+				pendingOut.writeInt(length);
+			}
+			catch(IOException e)
+			{
+				throw new AssertionError(e);
+			}
+			checkPending();
+		}
+	} //}}}
+
+	//{{{ Private members
+	private static final String MAGIC = "jEdit autosave journal 1";
+	private static final int INSERT = 'I';
+	private static final int REMOVE = 'R';
+	/** Journals smaller than this are never replaced by a full autosave. */
+	private static final long MIN_JOURNAL_SIZE = 1 << 20;
+	/** The most bytes of edits kept in memory between two autosaves. */
+	private static final int MAX_PENDING = 64 << 20;
+
+	private final Buffer buffer;
+	private final ByteArrayOutputStream pending;
+	private final DataOutputStream pendingOut;
+
+	private volatile boolean recording;
+	private File journalFile;
+	private boolean headerWritten;
+	private String basePath;
+	private long baseLength;
+	private long baseModified;
+
+	//{{{ checkPending() method
+	/**
+	 * Stops recording if the edits not written yet take too much memory;
+	 * the next autosave then writes the whole buffer. The journal file is
+	 * kept until then.
+	 */
+	private void checkPending()
+	{
+		if(pending.size() > MAX_PENDING)
+			stop(false);
+	} //}}}
+
+	//{{{ checkRange() method
+	private static void checkRange(JEditBuffer buffer, int offset,
+		int length) throws IOException
+	{
+		if(offset < 0 || length < 0 || offset + length > buffer.getLength())
+			throw new IOException("Journal does not match the text");
+	} //}}}
+
+	//}}}
+}
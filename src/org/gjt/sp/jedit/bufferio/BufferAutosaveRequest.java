@@ -49,8 +49,26 @@ public class BufferAutosaveRequest extends BufferIORequest
 	 */
 	public BufferAutosaveRequest(View view, Buffer buffer,
 		Object session, VFS vfs, String path)
+	{
+		this(view,buffer,session,vfs,path,null);
+	}
+
+	/**
+	 * Creates a new buffer I/O request, which only appends the edits to
+	 * the journal when it can.
+	 * @param view The view
+	 * @param buffer The buffer
+	 * @param session The VFS session
+	 * @param vfs The VFS
+	 * @param path The path
+	 * @param journal The journal of the buffer, or null
+	 * @since jEdit 5.7pre1
+	 */
+	public BufferAutosaveRequest(View view, Buffer buffer,
+		Object session, VFS vfs, String path, AutosaveJournal journal)
 	{
 		super(view,buffer,session,vfs,path);
+		this.journal = journal;
 	} //}}}
 
 	//{{{ run() method
@@ -71,13 +89,31 @@ public class BufferAutosaveRequest extends BufferIORequest
 			{
 				buffer.readLock();
 				if(buffer.isDirty())
-					out = vfs._createOutputStream(session,path,view);
+				{
+					if(journal != null && !journal.needsFullAutosave())
+					{
+						Log.log(Log.DEBUG,this,
+							"Appending edits of file \"" +
+							buffer.getPath() + "\" to journal");
+						journal.append();
+					}
+					else
+						out = vfs._createOutputStream(session,path,view);
+				}
 				if(out != null) {
 					Log.log(Log.DEBUG,MiscUtilities.class,
 						"Saving autosave of file \"" +
 						buffer.getPath() + "\" to \"" +
 						path + '"');
 					write(buffer,out);
+					if(journal != null)
+					{
+						// no edit can be made while the read
+						// lock is held, so the journal starts
+						// from the text just written
+						out.close();
+						journal.start(new File(path));
+					}
 			}
 			}
 			catch (FileNotFoundException e)
@@ -108,6 +144,8 @@ public class BufferAutosaveRequest extends BufferIORequest
 		}
 	} //}}}
 
+	private final AutosaveJournal journal;
+
 	private void cleanUpIncomplete(Closeable out)
 	{
 		// Incomplete autosave file should not exist.
@@ -31,6 +31,8 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 import javax.swing.text.Segment;
 
@@ -46,6 +48,7 @@ import org.gjt.sp.jedit.io.EncodingServer;
 import org.gjt.sp.util.IntegerArray;
 import org.gjt.sp.util.SegmentBuffer;
 import org.gjt.sp.util.Log;
+import org.gjt.sp.util.ThreadUtilities;
 //}}}
 
 /**
@@ -144,9 +147,26 @@ public abstract class BufferIORequest extends IoTask
 		return MiscUtilities.autodetect(in, buffer);
 	} //}}}
 
-	//{{{ read() method
+	//{{{ read() methods
 	protected SegmentBuffer read(Reader in, long length,
 		boolean insert) throws IOException, InterruptedException
+	{
+		return read(in,length,1.0f,insert);
+	}
+
+	/**
+	 * Reads the text, decoding it straight into the array that is kept by
+	 * the buffer, and converting its line separators to <code>\n</code>
+	 * in place.
+	 * @param in The reader
+	 * @param length The number of bytes to read, or 0 if not known
+	 * @param charsPerByte The number of chars a byte is expected to
+	 * give, see {@link #getCharsPerByte(String,boolean)}
+	 * @param insert true if the text is inserted in the buffer
+	 * @since jEdit 5.7pre1
+	 */
+	protected SegmentBuffer read(Reader in, long length, float charsPerByte,
+		boolean insert) throws IOException, InterruptedException
 	{
 		/* we guess an initial size for the array */
 		IntegerArray endOffsets = new IntegerArray(
@@ -161,20 +181,19 @@ public abstract class BufferIORequest extends IoTask
 			setValue(0);
 		}
 
+		// no byte gives more than one char unless the stream is
+		// compressed, so the length bounds the size of the array
+		long limit = length != 0 && charsPerByte <= 1.0f
+			? length + 1 : Long.MAX_VALUE;
+
 		// if the file size is not known, start with a resonable
 		// default buffer size
-		if(length == 0)
-			length = IOBUFSIZE;
-
-		SegmentBuffer seg = new SegmentBuffer((int)length + 1);
-
-		char[] buf = new char[IOBUFSIZE];
+		int capacity = length == 0 ? IOBUFSIZE : (int)Math.min(limit,
+			Math.min(MAX_ARRAY_SIZE,(long)(length * charsPerByte) + 1));
+		char[] text = new char[Math.max(capacity,16)];
 
-		/* Number of characters in 'buf' array.
-		 InputStream.read() doesn't always fill the
-		 array (eg, the file size is not a multiple of
-		 IOBUFSIZE, or it is a GZipped file, etc) */
- 		int len;
+		// Number of characters of text read and converted
+		int count = 0;
 
 		// True if a \n was read after a \r. Usually
 		// means this is a DOS/Windows file
@@ -192,20 +211,30 @@ public abstract class BufferIORequest extends IoTask
 		// progress bar
 		int lineCount = 0;
 
-		while((len = in.read(buf,0,buf.length)) != -1)
+		for(;;)
 		{
+			if(count == text.length)
+				text = grow(text,limit);
+
+			/* Number of characters read. Reader.read() doesn't
+			 always fill the array (eg, the file size is not a
+			 multiple of IOBUFSIZE, or it is a GZipped file, etc) */
+			int len = in.read(text,count,
+				Math.min(IOBUFSIZE,text.length - count));
+			if(len == -1)
+				break;
+
 			if(Thread.interrupted())
 				throw new InterruptedException();
 
-			// Offset of previous line, relative to
-			// the start of the I/O buffer (NOT
-			// relative to the start of the document)
-			int lastLine = 0;
-
-			for(int i = 0; i < len; i++)
+			// the chars are read after the text, which only
+			// gets shorter when converting them
+			int end = count + len;
+			for(int i = count; i < end; i++)
 			{
+				char ch = text[i];
 				// Look for line endings.
-				switch(buf[i])
+				switch(ch)
 				{
 				case '\r':
 					// If we read a \r and
@@ -226,16 +255,10 @@ public abstract class BufferIORequest extends IoTask
 					}
 
 					// Insert a line
-					seg.append(buf,lastLine,i -
-						lastLine);
-					seg.append('\n');
-					endOffsets.add(seg.count);
+					text[count++] = '\n';
+					endOffsets.add(count);
 					if(trackProgress && lineCount++ % PROGRESS_INTERVAL == 0)
-						setValue(seg.count);
-
-					// This is i+1 to take the
-					// trailing \n into account
-					lastLine = i + 1;
+						setValue(count);
 					break;
 				case '\n':
 					/* If lastWasCR is true, we just read a \r followed
@@ -246,9 +269,6 @@ public abstract class BufferIORequest extends IoTask
 						CROnly = false;
 						CRLF = true;
 						lastWasCR = false;
-						/* Bump lastLine so that the next line doesn't erronously
-						  pick up the \r */
-						lastLine = i + 1;
 					}
 					/* Otherwise, we found a \n that follows some other
 					 *  character, hence we have a Unix file */
@@ -256,13 +276,10 @@ public abstract class BufferIORequest extends IoTask
 					{
 						CROnly = false;
 						CRLF = false;
-						seg.append(buf,lastLine,
-							i - lastLine);
-						seg.append('\n');
-						endOffsets.add(seg.count);
+						text[count++] = '\n';
+						endOffsets.add(count);
 						if(trackProgress && lineCount++ % PROGRESS_INTERVAL == 0)
-							setValue(seg.count);
-						lastLine = i + 1;
+							setValue(count);
 					}
 					break;
 				default:
@@ -275,17 +292,101 @@ public abstract class BufferIORequest extends IoTask
 						CRLF = false;
 						lastWasCR = false;
 					}
+					text[count++] = ch;
 					break;
 				}
 			}
 
 			if(trackProgress)
-				setValue(seg.count);
+				setValue(count);
+		}
+
+		// an array much larger than the text, when the encoding has
+		// several bytes for most chars, would be kept by the buffer
+		if(!insert && text.length - count > (count >> 1) + IOBUFSIZE)
+			text = Arrays.copyOf(text,count + 1);
+
+		SegmentBuffer seg = new SegmentBuffer(text,count);
+		setLoadData(seg,endOffsets,CRLF,CROnly,insert);
 
-			// Add remaining stuff from buffer
-			seg.append(buf,lastLine,len - lastLine);
+		// used in insert()
+		return seg;
+	} //}}}
+
+	//{{{ getCharsPerByte() method
+	/**
+	 * Returns the number of chars a byte of text in the given encoding is
+	 * expected to give, to size the array the text is read into.
+	 * @param encoding The encoding
+	 * @param gzipped true if the bytes are compressed
+	 * @since jEdit 5.7pre1
+	 */
+	protected static float getCharsPerByte(String encoding, boolean gzipped)
+	{
+		float charsPerByte = 1.0f;
+		try
+		{
+			charsPerByte = Math.min(1.0f,Charset.forName(encoding)
+				.newDecoder().averageCharsPerByte());
+		}
+		catch(IllegalArgumentException | UnsupportedOperationException e)
+		{
+			// not a charset, maybe an encoding from a plugin
 		}
+		return gzipped ? charsPerByte * GZIP_RATIO : charsPerByte;
+	} //}}}
+
+	//{{{ readChunked() method
+	/**
+	 * Like {@link #read(Reader,long,boolean)}, but for a local file that
+	 * is read, decoded and split into lines by several threads.
+	 * @param file The path of the local file
+	 * @param charset The charset, see {@link ChunkedFileReader#getCharset(String)}
+	 * @param length The size of the file
+	 * @since jEdit 5.7pre1
+	 */
+	void readChunked(String file, Charset charset, long length)
+		throws IOException, InterruptedException
+	{
+		boolean trackProgress = !buffer.isTemporary();
+		if(trackProgress)
+		{
+			setMaximum(length);
+			setValue(0);
+		}
+
+		ChunkedFileReader reader = new ChunkedFileReader(file,charset);
+		reader.read(trackProgress ? this::setValue : null,
+			trackProgress ? this::showText : null);
+		setLoadData(reader.getText(),reader.getEndOffsets(),
+			reader.isCRLF(),reader.isCROnly(),false);
+	} //}}}
 
+	//{{{ showText() method
+	/**
+	 * Lets the buffer show the text read so far, a few times a second.
+	 */
+	private void showText(char[] text, int length, int[] endOffsets,
+		int lineCount)
+	{
+		long now = System.nanoTime();
+		if(lastTextShown != 0L && now - lastTextShown < SHOW_TEXT_INTERVAL)
+			return;
+		lastTextShown = now;
+
+		Segment seg = new Segment(text,0,length);
+		ThreadUtilities.runInDispatchThread(() ->
+			buffer.showLoadedText(seg,endOffsets,lineCount));
+	} //}}}
+
+	//{{{ setLoadData() method
+	/**
+	 * Handles the trailing newline of the text read, and unless it is
+	 * inserted, keeps it for the buffer to load it.
+	 */
+	private void setLoadData(SegmentBuffer seg, IntegerArray endOffsets,
+		boolean CRLF, boolean CROnly, boolean insert)
+	{
 		setCancellable(false);
 
 		String lineSeparator;
@@ -340,9 +441,6 @@ public abstract class BufferIORequest extends IoTask
 			if(lineSeparator != null)
 				buffer.setProperty(JEditBuffer.LINESEP,lineSeparator);
 		}
-
-		// used in insert()
-		return seg;
 	} //}}}
 
 	//{{{ write() method
@@ -352,18 +450,46 @@ public abstract class BufferIORequest extends IoTask
 		String encodingName
 			= buffer.getStringProperty(JEditBuffer.ENCODING);
 		Encoding encoding = EncodingServer.getEncoding(encodingName);
-		Writer writer = encoding.getTextWriter(
-			new BufferedOutputStream(out, getByteIOBufferSize()));
 
 		Segment lineSegment = new Segment();
 		String newline = buffer.getStringProperty(JEditBuffer.LINESEP);
 		if(newline == null)
 			newline = System.getProperty("line.separator");
+		boolean trailingEOL = jEdit.getBooleanProperty("stripTrailingEOL")
+			&& buffer.getBooleanProperty(Buffer.TRAILING_EOL);
 
 		final int bufferLineCount = buffer.getLineCount();
 		setMaximum(bufferLineCount / PROGRESS_INTERVAL);
 		setValue(0);
 
+		// a single processor encodes as fast line by line
+		Charset charset = buffer.getLength() >= ChunkedTextWriter.MIN_LENGTH
+			&& Runtime.getRuntime().availableProcessors() > 1
+			? ChunkedTextWriter.getCharset(encodingName) : null;
+		if(charset != null)
+		{
+			ChunkedTextWriter chunked = new ChunkedTextWriter(buffer,
+				charset,newline,trailingEOL);
+			try
+			{
+				chunked.write(out,line -> setValue(line / PROGRESS_INTERVAL));
+			}
+			catch(CharacterCodingException e)
+			{
+				buffer.getLineText(chunked.getErrorLine(),lineSegment);
+				String message = getWriteEncodingErrorMessage(
+					encodingName, encoding,
+					lineSegment, chunked.getErrorLine());
+				IOException wrapping = new CharConversionException(message);
+				wrapping.initCause(e);
+				throw wrapping;
+			}
+			return;
+		}
+
+		Writer writer = encoding.getTextWriter(
+			new BufferedOutputStream(out, getByteIOBufferSize()));
+
 		int i = 0;
 		while(i < bufferLineCount)
 		{
@@ -376,9 +502,7 @@ public abstract class BufferIORequest extends IoTask
 				writer.write(lineSegment.array,
 					lineSegment.offset,
 					lineSegment.count);
-				if(i < bufferLineCount - 1
-					|| (jEdit.getBooleanProperty("stripTrailingEOL")
-						&& buffer.getBooleanProperty(Buffer.TRAILING_EOL)))
+				if(i < bufferLineCount - 1 || trailingEOL)
 				{
 					writer.write(newline);
 				}
@@ -417,6 +541,33 @@ public abstract class BufferIORequest extends IoTask
 	} //}}}
 
 	//{{{ Private members
+	/** Nanoseconds between two updates of the text shown while loading. */
+	private static final long SHOW_TEXT_INTERVAL = 250_000_000L;
+
+	private long lastTextShown;
+
+	/** The largest array most virtual machines can allocate. */
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	/** How many times larger text usually is than its gzipped bytes. */
+	private static final float GZIP_RATIO = 4.0f;
+
+	//{{{ grow() method
+	/**
+	 * Returns a larger copy of the array the text is read into.
+	 * @param limit The size the array never needs to exceed, or
+	 * Long.MAX_VALUE
+	 */
+	private static char[] grow(char[] text, long limit) throws IOException
+	{
+		if(text.length >= MAX_ARRAY_SIZE)
+			throw new IOException("file too large");
+		long capacity = text.length + Math.max(text.length >> 1,IOBUFSIZE);
+		// the file may have grown meanwhile
+		if(limit > text.length)
+			capacity = Math.min(capacity,limit);
+		return Arrays.copyOf(text,(int)Math.min(capacity,MAX_ARRAY_SIZE));
+	} //}}}
 
 	//{{{ createEncodingErrorMessage() method
 	private static String getWriteEncodingErrorMessage(
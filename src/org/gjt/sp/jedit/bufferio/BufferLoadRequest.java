@@ -25,6 +25,10 @@ package org.gjt.sp.jedit.bufferio;
 //{{{ Imports
 import java.io.*;
 import java.nio.charset.*;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.zip.GZIPInputStream;
 import org.gjt.sp.jedit.io.*;
@@ -220,6 +224,23 @@ public class BufferLoadRequest extends BufferIORequest
 			boolean autodetect = buffer.getBooleanProperty(Buffer.ENCODING_AUTODETECT);
 			boolean gzipped = isGzipped(markedStream, autodetect);
 
+			// the encoding detected the last time is tried first
+			long[] classified = autodetect ? getClassificationKey() : null;
+			if(classified != null)
+			{
+				FileClassificationCache.Classification classification =
+					FileClassificationCache.getInstance().get(path,
+						classified[0], classified[1]);
+				if(classification != null && classification.getEncoding() != null)
+				{
+					Log.log(Log.DEBUG, this, path + ": "
+						+ classification.getEncoding()
+						+ " known from the file classification cache");
+					encodingProviders.add(0, new StaticCharsetEncodingDetector(
+						classification.getEncoding()));
+				}
+			}
+
 			if(gzipped)
 			{
 				Log.log(Log.DEBUG, this, path + ": Stream is gzipped.");
@@ -242,7 +263,12 @@ public class BufferLoadRequest extends BufferIORequest
 				markedStream = rewindContentsStream(markedStream, gzipped);
 				try
 				{
-					read(EncodingServer.getTextReader(markedStream, encoding), length, false);
+					Charset charset = getChunkedCharset(encoding, gzipped, length);
+					if(charset != null)
+						readChunked(path, charset, length);
+					else
+						read(EncodingServer.getTextReader(markedStream, encoding), length,
+							getCharsPerByte(encoding, gzipped), false);
 					if(autodetect)
 					{
 						// Store the successful properties.
@@ -251,6 +277,16 @@ public class BufferLoadRequest extends BufferIORequest
 							buffer.setBooleanProperty(Buffer.GZIPPED,true);
 						}
 						buffer.setProperty(JEditBuffer.ENCODING, encoding);
+						// only a detected encoding says the
+						// file is not binary
+						if(classified != null && !(encodingProvider
+							instanceof StaticCharsetEncodingDetector))
+						{
+							FileClassificationCache.getInstance().put(path,
+								classified[0], classified[1],
+								FileClassificationCache.Classification.of(
+									false, encoding));
+						}
 					}
 					return;
 				}
@@ -277,8 +313,10 @@ public class BufferLoadRequest extends BufferIORequest
 			}
 			VFSManager.error(view,path,"ioerror.encoding-error",pp,Log.NOTICE);
 			markedStream = rewindContentsStream(markedStream, gzipped);
-			Encoding encoding = EncodingServer.getEncoding(buffer.getStringProperty(JEditBuffer.ENCODING));
-			read(encoding.getPermissiveTextReader(markedStream), length, false);
+			String encodingName = buffer.getStringProperty(JEditBuffer.ENCODING);
+			Encoding encoding = EncodingServer.getEncoding(encodingName);
+			read(encoding.getPermissiveTextReader(markedStream), length,
+				getCharsPerByte(encodingName, gzipped), false);
 			if(autodetect && gzipped)
 			{
 				buffer.setBooleanProperty(Buffer.GZIPPED,true);
@@ -290,6 +328,41 @@ public class BufferLoadRequest extends BufferIORequest
 		}
 	} //}}}
 
+	//{{{ getChunkedCharset() method
+	/**
+	 * Returns the charset to read the file in chunks with several threads,
+	 * or null if it must be read as a stream. Only large local files that
+	 * are not compressed are read in chunks.
+	 */
+	private Charset getChunkedCharset(String encoding, boolean gzipped, long length)
+	{
+		if(gzipped || !(vfs instanceof FileVFS)
+			|| length < ChunkedFileReader.MIN_LENGTH)
+			return null;
+		return ChunkedFileReader.getCharset(encoding);
+	} //}}}
+
+	//{{{ getClassificationKey() method
+	/**
+	 * Returns the size and modification time of a local file, for the
+	 * {@link FileClassificationCache}, or null if the file is not local.
+	 */
+	private long[] getClassificationKey()
+	{
+		if(!(vfs instanceof FileVFS))
+			return null;
+		try
+		{
+			BasicFileAttributes attrs = Files.readAttributes(Paths.get(path),
+				BasicFileAttributes.class);
+			return new long[] { attrs.size(), attrs.lastModifiedTime().toMillis() };
+		}
+		catch(IOException | InvalidPathException e)
+		{
+			return null;
+		}
+	} //}}}
+
 	//{{{ isGzipped() method
 	/**
 	 * Decide by settings or detection if the stream is gzipped
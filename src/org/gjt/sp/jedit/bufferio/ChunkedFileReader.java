@@ -0,0 +1,435 @@
+/*
+ * ChunkedFileReader.java - Reads a local file with several threads
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.bufferio;
+
+//{{{ Imports
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+import org.gjt.sp.util.IntegerArray;
+import org.gjt.sp.util.SegmentBuffer;
+//}}}
+
+/**
+ * Reads a large local file with several threads. The file is split into
+ * chunks of bytes at places where no character and no <code>\r\n</code>
+ * pair is cut, and each chunk is read, decoded and split into lines on its
+ * own. The chunks are then put together in order, into the same text,
+ * line end offsets and line separator flags as
+ * {@link BufferIORequest#read(java.io.Reader,long,boolean)} gives.<p>
+ *
+ * Only UTF-8 and the single byte encodings that are ASCII compatible can
+ * be split this way.
+ *
+ * @since jEdit 5.7pre1
+ */
+class ChunkedFileReader
+{
+	/** Files smaller than this are read as a stream. */
+	static final long MIN_LENGTH = 8L << 20;
+
+	//{{{ getCharset() method
+	/**
+	 * Returns the charset to read a file with, or null if files in this
+	 * encoding cannot be split into chunks.
+	 */
+	static Charset getCharset(String encoding)
+	{
+		Charset charset;
+		try
+		{
+			charset = Charset.forName(encoding);
+		}
+		catch(IllegalArgumentException e)
+		{
+			// not a charset, maybe an encoding from a plugin
+			return null;
+		}
+		if(charset.equals(StandardCharsets.UTF_8))
+			return charset;
+		if(!charset.canEncode()
+			|| charset.newEncoder().maxBytesPerChar() != 1.0f
+			|| charset.newDecoder().maxCharsPerByte() != 1.0f)
+			return null;
+		// the chunks are never cut after a \r byte
+		if(!"\r\n".equals(new String(new byte[] { '\r', '\n' }, charset)))
+			return null;
+		return charset;
+	} //}}}
+
+	//{{{ ChunkedFileReader constructor
+	ChunkedFileReader(String path, Charset charset)
+	{
+		this.path = path;
+		this.charset = charset;
+	} //}}}
+
+	//{{{ read() method
+	/**
+	 * Reads the file.
+	 * @param progress Given the number of bytes read so far, or null
+	 * @param listener Given the text put together so far after each chunk
+	 * but the last, or null
+	 * @throws java.nio.charset.CharacterCodingException if the file is
+	 * not valid in the charset
+	 */
+	void read(LongConsumer progress, TextListener listener)
+		throws IOException, InterruptedException
+	{
+		try(FileChannel channel = FileChannel.open(Paths.get(path),
+			StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			if(size >= Integer.MAX_VALUE)
+				throw new IOException(path + ": file too large");
+			long[] bounds = getChunkBounds(channel, size);
+
+			int threads = Math.min(bounds.length - 1,
+				Runtime.getRuntime().availableProcessors());
+			AtomicInteger threadIDs = new AtomicInteger();
+			ExecutorService workers = Executors.newFixedThreadPool(threads, r ->
+			{
+				Thread t = new Thread(r, "Chunked File Reader #"
+					+ threadIDs.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			});
+			try
+			{
+				readChunks(channel, bounds, workers, threads * 2, progress,
+					listener);
+			}
+			finally
+			{
+				workers.shutdownNow();
+			}
+		}
+	} //}}}
+
+	//{{{ getText() method
+	/**
+	 * Returns the text, with its line separators converted to
+	 * <code>\n</code>.
+	 */
+	SegmentBuffer getText()
+	{
+		return text;
+	} //}}}
+
+	//{{{ getEndOffsets() method
+	/**
+	 * Returns the offset following each <code>\n</code> of the text.
+	 */
+	IntegerArray getEndOffsets()
+	{
+		return endOffsets;
+	} //}}}
+
+	//{{{ isCRLF() method
+	boolean isCRLF()
+	{
+		return CRLF;
+	} //}}}
+
+	//{{{ isCROnly() method
+	boolean isCROnly()
+	{
+		return CROnly;
+	} //}}}
+
+	//{{{ TextListener interface
+	/**
+	 * Given the text read so far, while the file is being read.
+	 */
+	interface TextListener
+	{
+		/**
+		 * Called on the reading thread with the complete lines read so
+		 * far. The arrays are still being written to after the given
+		 * lengths, but the part before is not changed anymore.
+		 * @param text The text, in the array that {@link #getText()}
+		 * will return
+		 * @param length The offset following the last line separator
+		 * @param endOffsets The offset following each line separator
+		 * @param lineCount The number of these offsets
+		 */
+		void textRead(char[] text, int length, int[] endOffsets,
+			int lineCount);
+	} //}}}
+
+	//{{{ Private members
+	private static final int CHUNK_SIZE = 4 << 20;
+
+	private final String path;
+	private final Charset charset;
+
+	private SegmentBuffer text;
+	private IntegerArray endOffsets;
+	private boolean CRLF;
+	private boolean CROnly;
+
+	//{{{ getChunkBounds() method
+	/**
+	 * Returns the offsets the chunks start at, followed by the size of the
+	 * file. A chunk never starts after a \r byte, or, in UTF-8, on a
+	 * continuation byte.
+	 */
+	private long[] getChunkBounds(FileChannel channel, long size)
+		throws IOException
+	{
+		boolean utf8 = charset.equals(StandardCharsets.UTF_8);
+		int count = (int)Math.max(1L, size / CHUNK_SIZE);
+		long[] bounds = new long[count + 1];
+		int chunks = 0;
+		ByteBuffer window = ByteBuffer.allocate(4096);
+		for(int i = 1; i < count; i++)
+		{
+			long pos = Math.max((long)i * CHUNK_SIZE, bounds[chunks] + 1);
+			pos = findBoundary(channel, pos, size, utf8, window);
+			if(pos >= size)
+				break;
+			bounds[++chunks] = pos;
+		}
+		bounds[++chunks] = size;
+
+		long[] result = new long[chunks + 1];
+		System.arraycopy(bounds, 0, result, 0, chunks + 1);
+		return result;
+	} //}}}
+
+	//{{{ findBoundary() method
+	/**
+	 * Returns the first offset from <code>pos</code> a chunk can start
+	 * at, or the size of the file if there is none.
+	 */
+	private static long findBoundary(FileChannel channel, long pos,
+		long size, boolean utf8, ByteBuffer window) throws IOException
+	{
+		while(pos < size)
+		{
+			// the window starts with the byte before pos
+			window.clear();
+			long windowStart = pos - 1;
+			while(window.hasRemaining())
+			{
+				if(channel.read(window, windowStart + window.position()) == -1)
+					break;
+			}
+			window.flip();
+			for(int i = 1; i < window.limit(); i++, pos++)
+			{
+				byte b = window.get(i);
+				if(window.get(i - 1) != '\r'
+					&& (!utf8 || (b & 0xc0) != 0x80))
+				{
+					return pos;
+				}
+			}
+			if(window.limit() < window.capacity())
+				break;
+		}
+		return size;
+	} //}}}
+
+	//{{{ readChunks() method
+	/**
+	 * Reads the chunks with the workers, keeping only a few of them ahead
+	 * of the one being put together with the previous ones.
+	 */
+	private void readChunks(FileChannel channel, long[] bounds,
+		ExecutorService workers, int lookAhead, LongConsumer progress,
+		TextListener listener) throws IOException, InterruptedException
+	{
+		int chunks = bounds.length - 1;
+		long size = bounds[chunks];
+		// in both kinds of charsets, no byte gives more than one char
+		text = new SegmentBuffer((int)size + 1);
+		endOffsets = new IntegerArray(Math.max(1, (int)(size / 50)));
+
+		Deque<Future<Chunk>> pending = new ArrayDeque<>();
+		int submitted = 0;
+		for(int i = 0; i < chunks; i++)
+		{
+			while(submitted < chunks && submitted - i < lookAhead)
+			{
+				long start = bounds[submitted];
+				long end = bounds[submitted + 1];
+				pending.add(workers.submit(() ->
+					readChunk(channel, start, end)));
+				submitted++;
+			}
+
+			Chunk chunk;
+			try
+			{
+				chunk = pending.remove().get();
+			}
+			catch(ExecutionException e)
+			{
+				Throwable cause = e.getCause();
+				if(cause instanceof IOException)
+					throw (IOException)cause;
+				if(cause instanceof RuntimeException)
+					throw (RuntimeException)cause;
+				if(cause instanceof Error)
+					throw (Error)cause;
+				throw new IOException(cause);
+			}
+
+			int base = text.count;
+			text.append(chunk.text, 0, chunk.length);
+			int[] ends = chunk.endOffsets.getArray();
+			for(int j = 0; j < chunk.endOffsets.getSize(); j++)
+				endOffsets.add(base + ends[j]);
+			// the flags are set by the last line separator
+			if(chunk.hasSeparator)
+			{
+				CRLF = chunk.CRLF;
+				CROnly = chunk.CROnly;
+			}
+
+			if(progress != null)
+				progress.accept(bounds[i + 1]);
+			// the array of the text is never replaced, nor are the
+			// end offsets already added changed
+			int lines = endOffsets.getSize();
+			if(listener != null && i < chunks - 1 && lines != 0)
+			{
+				listener.textRead(text.array, endOffsets.get(lines - 1),
+					endOffsets.getArray(), lines);
+			}
+		}
+	} //}}}
+
+	//{{{ readChunk() method
+	private Chunk readChunk(FileChannel channel, long start, long end)
+		throws IOException
+	{
+		ByteBuffer bytes = ByteBuffer.allocate((int)(end - start));
+		while(bytes.hasRemaining())
+		{
+			// the file may have been truncated meanwhile
+			if(channel.read(bytes, start + bytes.position()) == -1)
+				break;
+		}
+		bytes.flip();
+		CharBuffer chars = charset.newDecoder().decode(bytes);
+		Chunk chunk = new Chunk(chars.array(), chars.limit());
+		chunk.splitLines();
+		return chunk;
+	} //}}}
+
+	//}}}
+
+	//{{{ Chunk class
+	/**
+	 * The text of a chunk, and its lines.
+	 */
+	private static class Chunk
+	{
+		final char[] text;
+		int length;
+		final IntegerArray endOffsets;
+		boolean CRLF;
+		boolean CROnly;
+		/** Whether the flags above were set by this chunk. */
+		boolean hasSeparator;
+
+		Chunk(char[] text, int length)
+		{
+			this.text = text;
+			this.length = length;
+			endOffsets = new IntegerArray(Math.max(1, length / 50));
+		}
+
+		//{{{ splitLines() method
+		/**
+		 * Converts the line separators to <code>\n</code> in place, the
+		 * same way BufferIORequest.read() does.
+		 */
+		void splitLines()
+		{
+			boolean lastWasCR = false;
+			int out = 0;
+			for(int i = 0; i < length; i++)
+			{
+				char ch = text[i];
+				switch(ch)
+				{
+				case '\r':
+					if(lastWasCR)
+					{
+						CROnly = true;
+						CRLF = false;
+						hasSeparator = true;
+					}
+					else
+						lastWasCR = true;
+					text[out++] = '\n';
+					endOffsets.add(out);
+					break;
+				case '\n':
+					hasSeparator = true;
+					if(lastWasCR)
+					{
+						// the \n of a \r\n pair is dropped
+						CROnly = false;
+						CRLF = true;
+						lastWasCR = false;
+					}
+					else
+					{
+						CROnly = false;
+						CRLF = false;
+						text[out++] = '\n';
+						endOffsets.add(out);
+					}
+					break;
+				default:
+					if(lastWasCR)
+					{
+						CROnly = true;
+						CRLF = false;
+						lastWasCR = false;
+						hasSeparator = true;
+					}
+					text[out++] = ch;
+					break;
+				}
+			}
+			length = out;
+		} //}}}
+	} //}}}
+}
@@ -0,0 +1,400 @@
+/*
+ * ChunkedTextWriter.java - Encodes the text of a buffer with several threads
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.bufferio;
+
+//{{{ Imports
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import javax.swing.text.Segment;
+
+import org.gjt.sp.jedit.buffer.JEditBuffer;
+import org.gjt.sp.jedit.io.CharsetEncoding;
+import org.gjt.sp.jedit.io.EncodingServer;
+import org.gjt.sp.util.SegmentedCharSequence;
+//}}}
+
+/**
+ * Encodes the text of a large buffer with several threads. The text is split
+ * into chunks of whole lines, and each chunk gets its line separators and
+ * is encoded on its own. The bytes are then written in order, with
+ * gathering writes when the stream is a file.<p>
+ *
+ * The caller must hold the read lock of the buffer while the text is
+ * written; the threads read the arrays of the buffer without taking it,
+ * since they would otherwise wait behind a thread waiting for the write
+ * lock.<p>
+ *
+ * Only the encodings {@link ChunkedFileReader} can read in chunks can be
+ * written this way, as their encoders keep no state between chunks.
+ *
+ * @since jEdit 5.7pre1
+ */
+class ChunkedTextWriter
+{
+	/** Buffers shorter than this are written line by line. */
+	static final int MIN_LENGTH = 4 << 20;
+
+	//{{{ getCharset() method
+	/**
+	 * Returns the charset to write a buffer with, or null if buffers in
+	 * this encoding cannot be split into chunks.
+	 */
+	static Charset getCharset(String encoding)
+	{
+		if(!(EncodingServer.getEncoding(encoding) instanceof CharsetEncoding))
+			return null;
+		return ChunkedFileReader.getCharset(encoding);
+	} //}}}
+
+	//{{{ ChunkedTextWriter constructor
+	/**
+	 * @param buffer The buffer
+	 * @param charset The charset, see {@link #getCharset(String)}
+	 * @param newline The line separator
+	 * @param trailingEOL Whether a line separator follows the last line
+	 */
+	ChunkedTextWriter(JEditBuffer buffer, Charset charset, String newline,
+		boolean trailingEOL)
+	{
+		this.buffer = buffer;
+		this.charset = charset;
+		this.newline = newline.toCharArray();
+		this.trailingEOL = trailingEOL;
+	} //}}}
+
+	//{{{ write() method
+	/**
+	 * Writes the text.
+	 * @param out The stream, which is not closed
+	 * @param progress Given the number of lines written so far, or null
+	 * @throws CharacterCodingException if a line cannot be encoded; see
+	 * {@link #getErrorLine()}
+	 */
+	void write(OutputStream out, IntConsumer progress)
+		throws IOException, InterruptedException
+	{
+		int[] lines = getChunkLines();
+		// the read lock held by the caller keeps the arrays unchanged
+		CharSequence text = buffer.getSegment(0,buffer.getLength());
+
+		int threads = Math.min(lines.length - 1,
+			Runtime.getRuntime().availableProcessors());
+		AtomicInteger threadIDs = new AtomicInteger();
+		ExecutorService workers = Executors.newFixedThreadPool(threads, r ->
+		{
+			Thread t = new Thread(r, "Chunked Text Writer #"
+				+ threadIDs.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+		try
+		{
+			writeChunks(text, lines, workers, threads * 2, out, progress);
+		}
+		finally
+		{
+			workers.shutdownNow();
+		}
+	} //}}}
+
+	//{{{ getErrorLine() method
+	/**
+	 * Returns the first line that could not be encoded, once
+	 * {@link #write(OutputStream,IntConsumer)} threw a
+	 * CharacterCodingException.
+	 */
+	int getErrorLine()
+	{
+		return errorLine;
+	} //}}}
+
+	//{{{ Private members
+	/** The number of chars in a chunk, give or take a line. */
+	private static final int CHUNK_SIZE = 1 << 20;
+	/** The most chunks given to a gathering write. */
+	private static final int MAX_GATHER = 16;
+
+	private final JEditBuffer buffer;
+	private final Charset charset;
+	private final char[] newline;
+	private final boolean trailingEOL;
+
+	private int errorLine;
+
+	//{{{ getChunkLines() method
+	/**
+	 * Returns the lines the chunks start at, followed by the number of
+	 * lines.
+	 */
+	private int[] getChunkLines()
+	{
+		int length = buffer.getLength();
+		int lineCount = buffer.getLineCount();
+		int[] lines = new int[length / CHUNK_SIZE + 2];
+		int chunks = 0;
+		for(int offset = CHUNK_SIZE; offset < length; offset += CHUNK_SIZE)
+		{
+			int line = buffer.getLineOfOffset(offset) + 1;
+			if(line >= lineCount)
+				break;
+			if(line > lines[chunks])
+				lines[++chunks] = line;
+		}
+		lines[++chunks] = lineCount;
+
+		int[] result = new int[chunks + 1];
+		System.arraycopy(lines, 0, result, 0, chunks + 1);
+		return result;
+	} //}}}
+
+	//{{{ writeChunks() method
+	/**
+	 * Encodes the chunks with the workers, keeping only a few of them
+	 * ahead of the ones being written.
+	 */
+	private void writeChunks(CharSequence text, int[] lines,
+		ExecutorService workers, int lookAhead, OutputStream out,
+		IntConsumer progress) throws IOException, InterruptedException
+	{
+		FileChannel channel = out instanceof FileOutputStream
+			? ((FileOutputStream)out).getChannel() : null;
+		int chunks = lines.length - 1;
+		Deque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+		int submitted = 0;
+		int written = 0;
+		ByteBuffer[] batch = new ByteBuffer[MAX_GATHER];
+		while(written < chunks)
+		{
+			while(submitted < chunks && submitted - written < lookAhead)
+			{
+				int startLine = lines[submitted];
+				int endLine = lines[submitted + 1];
+				int start = buffer.getLineStartOffset(startLine);
+				int end = endLine == buffer.getLineCount()
+					? buffer.getLength()
+					: buffer.getLineStartOffset(endLine);
+				boolean last = endLine == buffer.getLineCount();
+				pending.add(workers.submit(() ->
+					encodeChunk(text, start, end, last)));
+				submitted++;
+			}
+
+			// the chunks encoded already are written together
+			int count = 0;
+			do
+			{
+				int chunk = written + count;
+				batch[count++] = getChunk(pending.remove(),
+					lines[chunk], lines[chunk + 1]);
+			}
+			while(count < MAX_GATHER && !pending.isEmpty()
+				&& pending.peek().isDone());
+
+			if(channel != null)
+			{
+				long remaining = 0;
+				for(int i = 0; i < count; i++)
+					remaining += batch[i].remaining();
+				while(remaining > 0)
+					remaining -= channel.write(batch, 0, count);
+			}
+			else
+			{
+				for(int i = 0; i < count; i++)
+				{
+					ByteBuffer bytes = batch[i];
+					out.write(bytes.array(), bytes.arrayOffset()
+						+ bytes.position(), bytes.remaining());
+				}
+			}
+			for(int i = 0; i < count; i++)
+				batch[i] = null;
+
+			written += count;
+			if(progress != null)
+				progress.accept(lines[written]);
+		}
+		out.flush();
+	} //}}}
+
+	//{{{ getChunk() method
+	/**
+	 * Waits for a chunk to be encoded.
+	 */
+	private ByteBuffer getChunk(Future<ByteBuffer> chunk, int startLine,
+		int endLine) throws IOException, InterruptedException
+	{
+		try
+		{
+			return chunk.get();
+		}
+		catch(ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if(cause instanceof CharacterCodingException)
+			{
+				errorLine = findErrorLine(startLine, endLine);
+				throw (CharacterCodingException)cause;
+			}
+			if(cause instanceof IOException)
+				throw (IOException)cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if(cause instanceof Error)
+				throw (Error)cause;
+			throw new IOException(cause);
+		}
+	} //}}}
+
+	//{{{ encodeChunk() method
+	/**
+	 * Encodes the text from <code>start</code> to <code>end</code>, with
+	 * its line separators.
+	 * @param last Whether the chunk ends with the last line
+	 */
+	private ByteBuffer encodeChunk(CharSequence text, int start, int end,
+		boolean last) throws CharacterCodingException
+	{
+		int length = end - start;
+		char[] chars = new char[length + (length >> 4) + newline.length];
+		int count = 0;
+		int index = 0;
+		Segment[] segments = text instanceof SegmentedCharSequence
+			? ((SegmentedCharSequence)text).getSegments() : null;
+		while(segments != null && index < segments.length
+			&& start >= segments[index].count)
+		{
+			start -= segments[index].count;
+			end -= segments[index].count;
+			index++;
+		}
+
+		while(start < end)
+		{
+			char[] array;
+			int offset;
+			int stop;
+			if(segments != null)
+			{
+				Segment seg = segments[index++];
+				array = seg.array;
+				offset = seg.offset;
+				stop = Math.min(end, seg.count);
+				end -= seg.count;
+			}
+			else
+			{
+				array = null;
+				offset = 0;
+				stop = end;
+				end = 0;
+			}
+
+			if(array == null)
+			{
+				array = new char[stop - start];
+				for(int i = start; i < stop; i++)
+					array[i - start] = text.charAt(i);
+				stop -= start;
+				start = 0;
+			}
+
+			// the text between line separators is copied at once
+			int run = start;
+			for(int i = start; i <= stop; i++)
+			{
+				if(i < stop && array[offset + i] != '\n')
+					continue;
+				int len = i - run;
+				if(count + len + newline.length > chars.length)
+					chars = grow(chars, count + len + newline.length);
+				System.arraycopy(array, offset + run, chars, count, len);
+				count += len;
+				if(i < stop)
+				{
+					System.arraycopy(newline, 0, chars, count,
+						newline.length);
+					count += newline.length;
+				}
+				run = i + 1;
+			}
+			start = 0;
+		}
+
+		if(last && trailingEOL)
+		{
+			if(count + newline.length > chars.length)
+				chars = grow(chars, count + newline.length);
+			System.arraycopy(newline, 0, chars, count, newline.length);
+			count += newline.length;
+		}
+
+		return charset.newEncoder().encode(CharBuffer.wrap(chars, 0, count));
+	} //}}}
+
+	//{{{ grow() method
+	private static char[] grow(char[] chars, int capacity)
+	{
+		char[] charsN = new char[Math.max(capacity, chars.length * 2)];
+		System.arraycopy(chars, 0, charsN, 0, chars.length);
+		return charsN;
+	} //}}}
+
+	//{{{ findErrorLine() method
+	/**
+	 * Returns the first line of a chunk that cannot be encoded.
+	 */
+	private int findErrorLine(int startLine, int endLine)
+	{
+		Segment seg = new Segment();
+		for(int line = startLine; line < endLine; line++)
+		{
+			buffer.getLineText(line, seg);
+			try
+			{
+				charset.newEncoder().encode(CharBuffer.wrap(
+					seg.array, seg.offset, seg.count));
+			}
+			catch(CharacterCodingException e)
+			{
+				return line;
+			}
+		}
+		return startLine;
+	} //}}}
+
+	//}}}
+}
@@ -0,0 +1,474 @@
+/*
+ * DirectoryListingCache.java - Listings of the local directories being browsed
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.io;
+
+//{{{ Imports
+import java.awt.Component;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.gjt.sp.jedit.MiscUtilities;
+import org.gjt.sp.jedit.OperatingSystem;
+import org.gjt.sp.util.IOUtilities;
+import org.gjt.sp.util.Log;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+//}}}
+
+/**
+ * Keeps the listings of the local directories most recently shown by the
+ * file system browser and the file choosers, so that going back to a
+ * directory does not list it again.<p>
+ *
+ * Each cached directory is watched with a {@link WatchService}, and its
+ * listing is forgotten as soon as one of its files is created, deleted or
+ * modified. It is also forgotten when {@link VFSManager#sendVFSUpdate(VFS,String,boolean)}
+ * is called for it or one of its files, and when the browser reloads it.
+ * Directories that cannot be watched, or that are on a network file system
+ * where changes made by other hosts are not reported, are not cached, and
+ * nothing is cached where the watch service only polls for changes.
+ *
+ * @since jEdit 5.7pre1
+ */
+public class DirectoryListingCache
+{
+	//{{{ getInstance() method
+	public static synchronized DirectoryListingCache getInstance()
+	{
+		if(instance == null)
+			instance = new DirectoryListingCache();
+		return instance;
+	} //}}}
+
+	//{{{ listFiles() method
+	/**
+	 * Returns the files of a directory, from the cache if it did not change
+	 * since it was last listed, or with {@link VFS#_listFiles(Object,String,Component)}.
+	 * Only directories of the {@link FileVFS} are cached. New
+	 * {@link VFSFile} objects are returned each time, with the attributes
+	 * read when the directory was listed, except for its subdirectories and
+	 * links, whose attributes are read again since their changes are not
+	 * reported.
+	 * @param vfs The VFS of the directory
+	 * @param session The VFS session
+	 * @param path The canonical path of the directory
+	 * @param comp The component that will parent error dialog boxes
+	 * @exception IOException if an I/O error occurred
+	 */
+	public VFSFile[] listFiles(VFS vfs, Object session, String path,
+		Component comp) throws IOException
+	{
+		if(vfs.getClass() != FileVFS.class)
+			return vfs._listFiles(session,path,comp);
+
+		String key = getKey(path);
+		Entry entry;
+		FileVFS.LocalFile[] cached = null;
+		boolean[] reread = null;
+		synchronized(this)
+		{
+			entry = entries.get(key);
+			if(entry != null && entry.files != null)
+			{
+				hits++;
+				cached = entry.files;
+				reread = entry.reread;
+			}
+			else
+				misses++;
+		}
+		if(cached != null)
+		{
+			VFSFile[] files = new VFSFile[cached.length];
+			for(int i = 0; i < cached.length; i++)
+			{
+				files[i] = reread[i]
+					? new FileVFS.LocalFile(new File(cached[i].getPath()))
+					: new FileVFS.LocalFile(cached[i]);
+			}
+			return files;
+		}
+
+		// the directory is watched before it is listed, so that a
+		// change made meanwhile is not missed
+		if(entry == null)
+		{
+			WatchKey watchKey = watch(path);
+			if(watchKey == null)
+				return vfs._listFiles(session,path,comp);
+			entry = new Entry(watchKey);
+			synchronized(this)
+			{
+				// registering a directory twice gives the same
+				// key, which the watcher thread may have just
+				// cancelled because the directory changed; it
+				// is then listed without being cached
+				if(!watchKey.isValid())
+					entry = null;
+				else
+				{
+					Entry other = entries.putIfAbsent(key,entry);
+					if(other != null)
+					{
+						if(other.watchKey != watchKey)
+							watchKey.cancel();
+						entry = other;
+					}
+				}
+			}
+			if(entry == null)
+				return vfs._listFiles(session,path,comp);
+		}
+
+		VFSFile[] files = vfs._listFiles(session,path,comp);
+		if(files == null)
+			return null;
+		// the caller may change the files it is given
+		FileVFS.LocalFile[] listed = new FileVFS.LocalFile[files.length];
+		boolean[] listedReread = new boolean[files.length];
+		for(int i = 0; i < files.length; i++)
+		{
+			listed[i] = new FileVFS.LocalFile((FileVFS.LocalFile)files[i]);
+			listedReread[i] = files[i].getType() == VFSFile.DIRECTORY
+				|| isLink(files[i].getPath());
+		}
+		synchronized(this)
+		{
+			// unless it was forgotten while being listed
+			if(entries.get(key) == entry && entry.watchKey.isValid())
+			{
+				// it may have been listed by another thread too
+				if(entry.files != null)
+					fileCount -= entry.files.length;
+				entry.files = listed;
+				entry.reread = listedReread;
+				fileCount += listed.length;
+				trim();
+			}
+		}
+		return files;
+	} //}}}
+
+	//{{{ invalidate() method
+	/**
+	 * Forgets the listing of a directory, and that of its parent, since a
+	 * change to the given path may be a change to a file of the parent.
+	 * @param path The path of a file or directory
+	 */
+	public synchronized void invalidate(String path)
+	{
+		if(entries.isEmpty() || MiscUtilities.isURL(path))
+			return;
+		remove(getKey(path));
+		String parent = MiscUtilities.getParentOfPath(path);
+		if(parent != null && !parent.isEmpty())
+			remove(getKey(parent));
+	} //}}}
+
+	//{{{ invalidateTree() method
+	/**
+	 * Forgets the listings of a directory and of all its subdirectories.
+	 * @param path The path of the directory
+	 */
+	public synchronized void invalidateTree(String path)
+	{
+		if(entries.isEmpty() || MiscUtilities.isURL(path))
+			return;
+		String key = getKey(path);
+		String prefix = key.endsWith(File.separator) ? key
+			: key + File.separator;
+		Iterator<Map.Entry<String, Entry>> iter = entries.entrySet().iterator();
+		while(iter.hasNext())
+		{
+			Map.Entry<String, Entry> mapEntry = iter.next();
+			if(mapEntry.getKey().equals(key)
+				|| mapEntry.getKey().startsWith(prefix))
+			{
+				iter.remove();
+				removed(mapEntry.getValue());
+			}
+		}
+	} //}}}
+
+	//{{{ clear() method
+	/**
+	 * Forgets all the listings.
+	 */
+	public synchronized void clear()
+	{
+		for(Entry entry : entries.values())
+			entry.watchKey.cancel();
+		entries.clear();
+		fileCount = 0;
+	} //}}}
+
+	//{{{ invalidateIfCached() method
+	/**
+	 * Calls {@link #invalidate(String)} if the cache was used.
+	 */
+	static void invalidateIfCached(String path)
+	{
+		DirectoryListingCache cache;
+		synchronized(DirectoryListingCache.class)
+		{
+			cache = instance;
+		}
+		if(cache != null)
+			cache.invalidate(path);
+	} //}}}
+
+	//{{{ Private members
+	/** The number of directories kept. */
+	private static final int MAX_DIRECTORIES = 64;
+	/** The number of files kept, over all the directories. */
+	private static final int MAX_FILES = 50000;
+	/** Network file systems; changes made by other hosts are not seen. */
+	private static final Set<String> NETWORK_FILE_SYSTEMS = new HashSet<>(
+		Arrays.asList("nfs","nfs4","cifs","smbfs","smb2","afs","9p",
+			"fuse.sshfs","davfs","webdav"));
+
+	private static DirectoryListingCache instance;
+
+	/** The entries by key, see {@link #getKey(String)}, least recently used first. */
+	private final Map<String, Entry> entries = new LinkedHashMap<>(16,0.75f,true);
+	private int fileCount;
+
+	private WatchService watchService;
+	private boolean watchServiceFailed;
+
+	// counted since the last trim
+	private long hits;
+	private long misses;
+
+	//{{{ getKey() method
+	/**
+	 * Returns the key of a directory in {@link #entries}, without a trailing
+	 * separator, and in lower case on case insensitive file systems.
+	 */
+	private static String getKey(String path)
+	{
+		if(path.length() > 1 && (path.endsWith("/")
+			|| path.endsWith(File.separator)))
+			path = path.substring(0,path.length() - 1);
+		if(OperatingSystem.isCaseInsensitiveFS())
+			return path.toLowerCase();
+		return path;
+	} //}}}
+
+	//{{{ remove() method
+	private void remove(String key)
+	{
+		Entry entry = entries.remove(key);
+		if(entry != null)
+			removed(entry);
+	} //}}}
+
+	//{{{ removed() method
+	/**
+	 * Stops watching the directory of an entry that was removed, unless
+	 * another entry is for the same directory, through a link for example.
+	 */
+	private void removed(Entry entry)
+	{
+		if(entry.files != null)
+			fileCount -= entry.files.length;
+		for(Entry other : entries.values())
+		{
+			if(other.watchKey == entry.watchKey)
+				return;
+		}
+		entry.watchKey.cancel();
+	} //}}}
+
+	//{{{ trim() method
+	/**
+	 * Forgets the least recently used listings while there are too many.
+	 */
+	private void trim()
+	{
+		Iterator<Entry> iter = entries.values().iterator();
+		while((entries.size() > MAX_DIRECTORIES || fileCount > MAX_FILES)
+			&& iter.hasNext())
+		{
+			Entry entry = iter.next();
+			iter.remove();
+			removed(entry);
+		}
+		if(hits + misses >= 100)
+		{
+			Log.log(Log.DEBUG,this,"Directory listings: " + hits
+				+ " hits, " + misses + " misses, " + entries.size()
+				+ " directories and " + fileCount + " files cached");
+			hits = misses = 0;
+		}
+	} //}}}
+
+	//{{{ getWatchService() method
+	/**
+	 * Returns the watch service, starting the thread taking its events
+	 * the first time, or null if there is none.
+	 */
+	private synchronized WatchService getWatchService()
+	{
+		if(watchService == null && !watchServiceFailed)
+		{
+			try
+			{
+				watchService = FileSystems.getDefault().newWatchService();
+			}
+			catch(IOException | UnsupportedOperationException e)
+			{
+				Log.log(Log.WARNING,this,"Cannot watch directories, "
+					+ "they will not be cached: " + e);
+				watchServiceFailed = true;
+				return null;
+			}
+			if(IOUtilities.isPolling(watchService))
+			{
+				// a file created meanwhile would not be listed
+				// until the next poll
+				Log.log(Log.DEBUG,this,"Directories are polled "
+					+ "for changes, they will not be cached");
+				IOUtilities.closeQuietly(watchService);
+				watchService = null;
+				watchServiceFailed = true;
+				return null;
+			}
+			Thread thread = new Thread(this::takeEvents,
+				"Directory Listing Watcher");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return watchService;
+	} //}}}
+
+	//{{{ watch() method
+	/**
+	 * Starts watching a directory, returning null if it cannot be watched.
+	 * The file system may be slow, so the lock is not held.
+	 */
+	private WatchKey watch(String path)
+	{
+		WatchService watchService = getWatchService();
+		if(watchService == null)
+			return null;
+		try
+		{
+			Path dir = Paths.get(path);
+			String type = Files.getFileStore(dir).type();
+			if(NETWORK_FILE_SYSTEMS.contains(type))
+				return null;
+			return dir.register(watchService,
+				ENTRY_CREATE,ENTRY_DELETE,ENTRY_MODIFY);
+		}
+		catch(IOException | RuntimeException e)
+		{
+			Log.log(Log.DEBUG,this,"Cannot watch " + path
+				+ ", it will not be cached: " + e);
+			return null;
+		}
+	} //}}}
+
+	//{{{ isLink() method
+	private static boolean isLink(String path)
+	{
+		try
+		{
+			return Files.isSymbolicLink(Paths.get(path));
+		}
+		catch(InvalidPathException e)
+		{
+			return true;
+		}
+	} //}}}
+
+	//{{{ takeEvents() method
+	/**
+	 * Forgets the listings of the directories that changed, in the watcher
+	 * thread.
+	 */
+	private void takeEvents()
+	{
+		for(;;)
+		{
+			WatchKey watchKey;
+			try
+			{
+				watchKey = watchService.take();
+			}
+			catch(InterruptedException | ClosedWatchServiceException e)
+			{
+				return;
+			}
+
+			// any event, even an overflow, means the listing is stale
+			watchKey.pollEvents();
+			watchKey.reset();
+			synchronized(this)
+			{
+				Iterator<Entry> iter = entries.values().iterator();
+				while(iter.hasNext())
+				{
+					Entry entry = iter.next();
+					if(entry.watchKey == watchKey)
+					{
+						if(entry.files != null)
+							fileCount -= entry.files.length;
+						iter.remove();
+					}
+				}
+				watchKey.cancel();
+			}
+		}
+	} //}}}
+
+	//}}}
+
+	//{{{ Entry class
+	private static class Entry
+	{
+		final WatchKey watchKey;
+		/** The files of the directory, null while it is being listed. */
+		FileVFS.LocalFile[] files;
+		/** Whether the attributes of each file are read again, see
+		 * {@link DirectoryListingCache#listFiles(VFS,Object,String,Component)}. */
+		boolean[] reread;
+
+		Entry(WatchKey watchKey)
+		{
+			this.watchKey = watchKey;
+		}
+	} //}}}
+}
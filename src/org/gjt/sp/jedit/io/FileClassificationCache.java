@@ -0,0 +1,445 @@
+/*
+ * FileClassificationCache.java - Whether local files are binary, and their encoding
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.io;
+
+//{{{ Imports
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.gjt.sp.jedit.MiscUtilities;
+import org.gjt.sp.jedit.jEdit;
+import org.gjt.sp.util.Log;
+//}}}
+
+/**
+ * Remembers whether local files are binary, and the encoding detected in
+ * them, so that the directory searches skipping binary files and the
+ * encoding auto detection of {@link org.gjt.sp.jedit.bufferio.BufferLoadRequest}
+ * do not have to read the same files again.<p>
+ *
+ * An entry is trusted as long as the file's size and modification time
+ * are those it was made from, and the encoding detectors and binary check
+ * settings have not changed. The most recently used entries are kept, and
+ * saved a few seconds after a change to the <code>file-classification</code>
+ * file of the <code>cache</code> directory of the settings directory.
+ *
+ * @since jEdit 5.7pre1
+ */
+public class FileClassificationCache
+{
+	//{{{ getInstance() method
+	public static synchronized FileClassificationCache getInstance()
+	{
+		if(instance == null)
+		{
+			instance = new FileClassificationCache();
+			instance.load();
+		}
+		return instance;
+	} //}}}
+
+	//{{{ classify() method
+	/**
+	 * Returns the classification of a local file, from the cache if the
+	 * file did not change since, or by reading it.
+	 * @param path The path of the file
+	 * @param size Its size
+	 * @param modified Its modification time
+	 */
+	public Classification classify(String path, long size, long modified)
+		throws IOException
+	{
+		Classification classification = get(path,size,modified);
+		if(classification != null)
+			return classification;
+
+		long start = System.nanoTime();
+		try(InputStream in = new FileInputStream(path))
+		{
+			AutoDetection.Result detection = new AutoDetection.Result(in);
+			classification = Classification.of(
+				MiscUtilities.isBinary(detection),
+				detection.getDetectedEncoding());
+		}
+		synchronized(this)
+		{
+			classifyNanos += System.nanoTime() - start;
+			classified++;
+			totalClassified++;
+		}
+		put(path,size,modified,classification);
+		return classification;
+	} //}}}
+
+	//{{{ get() method
+	/**
+	 * Returns the classification of a file, or null if it is not known
+	 * for this size and modification time.
+	 */
+	public synchronized Classification get(String path, long size, long modified)
+	{
+		checkSettings();
+		Entry entry = entries.get(path);
+		scheduleStatistics();
+		if(entry == null || entry.size != size || entry.modified != modified)
+		{
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.classification;
+	} //}}}
+
+	//{{{ put() method
+	/**
+	 * Records the classification of a file, with the size and modification
+	 * time it was read with.
+	 */
+	public synchronized void put(String path, long size, long modified,
+		Classification classification)
+	{
+		checkSettings();
+		entries.put(path,new Entry(size,modified,classification));
+		if(!saveScheduled && settingsFile != null)
+		{
+			saveScheduled = true;
+			getSaver().schedule(this::save,SAVE_DELAY,TimeUnit.SECONDS);
+		}
+	} //}}}
+
+	//{{{ Classification class
+	/**
+	 * Whether a file is binary, and the encoding detected in it.
+	 */
+	public static final class Classification
+	{
+		//{{{ of() method
+		/**
+		 * @param binary true if the file is binary
+		 * @param encoding the encoding detected, or null
+		 */
+		public static Classification of(boolean binary, String encoding)
+		{
+			if(encoding == null)
+				return binary ? BINARY : TEXT;
+			synchronized(withEncoding)
+			{
+				return withEncoding.computeIfAbsent(encoding,
+					e -> new Classification(false,e));
+			}
+		} //}}}
+
+		//{{{ isBinary() method
+		public boolean isBinary()
+		{
+			return binary;
+		} //}}}
+
+		//{{{ getEncoding() method
+		/**
+		 * Returns the encoding detected in the file, or null.
+		 */
+		public String getEncoding()
+		{
+			return encoding;
+		} //}}}
+
+		//{{{ Private members
+		private static final Classification BINARY = new Classification(true,null);
+		private static final Classification TEXT = new Classification(false,null);
+		private static final Map<String, Classification> withEncoding = new HashMap<>();
+
+		private final boolean binary;
+		private final String encoding;
+
+		private Classification(boolean binary, String encoding)
+		{
+			// an encoding is only detected in text
+			this.binary = binary && encoding == null;
+			this.encoding = encoding;
+		} //}}}
+	} //}}}
+
+	//{{{ Private members
+	private static final int MAGIC = 0x6a456663; // 'jEfc'
+	private static final int VERSION = 1;
+	private static final int MAX_ENTRIES = 100000;
+	/** Seconds between the first change and the save. */
+	private static final int SAVE_DELAY = 10;
+	/** Seconds between the first lookup and the statistics being logged. */
+	private static final int STATISTICS_DELAY = 30;
+	private static final int NO_ENCODING = 0xffff;
+
+	private static FileClassificationCache instance;
+	private static ScheduledExecutorService saver;
+
+	private final File settingsFile;
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16,0.75f,true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+		{
+			return size() > MAX_ENTRIES;
+		}
+	};
+	/** The settings the entries were made with. */
+	private String settings;
+	private boolean saveScheduled;
+	private boolean statisticsScheduled;
+
+	// counted since the statistics were last logged
+	private long hits;
+	private long misses;
+	private long classified;
+	// over all the files read, to estimate the time a hit saves
+	private long totalClassified;
+	private long classifyNanos;
+
+	//{{{ FileClassificationCache constructor
+	private FileClassificationCache()
+	{
+		String settingsDirectory = jEdit.getSettingsDirectory();
+		settingsFile = settingsDirectory == null ? null
+			: new File(MiscUtilities.constructPath(settingsDirectory,
+				"cache","file-classification"));
+		settings = getSettings();
+	} //}}}
+
+	//{{{ getSettings() method
+	/**
+	 * Returns the settings the classifications depend on.
+	 */
+	private static String getSettings()
+	{
+		return jEdit.getProperty("encodingDetectors","") + '|'
+			+ jEdit.getIntegerProperty("vfs.binaryCheck.length",100) + '|'
+			+ jEdit.getIntegerProperty("vfs.binaryCheck.count",1);
+	} //}}}
+
+	//{{{ checkSettings() method
+	/**
+	 * Forgets the entries if they were made with other settings.
+	 */
+	private void checkSettings()
+	{
+		String current = getSettings();
+		if(!current.equals(settings))
+		{
+			Log.log(Log.DEBUG,this,"Encoding detection settings changed, "
+				+ "forgetting " + entries.size() + " file classifications");
+			entries.clear();
+			settings = current;
+		}
+	} //}}}
+
+	//{{{ scheduleStatistics() method
+	private void scheduleStatistics()
+	{
+		if(!statisticsScheduled)
+		{
+			statisticsScheduled = true;
+			getSaver().schedule(this::logStatistics,STATISTICS_DELAY,
+				TimeUnit.SECONDS);
+		}
+	} //}}}
+
+	//{{{ logStatistics() method
+	private synchronized void logStatistics()
+	{
+		statisticsScheduled = false;
+		// all the entries may come from the saved cache, with no
+		// file read to tell how long reading one takes
+		String saved = totalClassified == 0 ? ""
+			: ", about " + hits * (classifyNanos / totalClassified)
+				/ 1000000 + " ms saved";
+		Log.log(Log.DEBUG,this,"File classifications: " + hits
+			+ " hits, " + misses + " misses, " + classified
+			+ " files read" + saved);
+		hits = misses = classified = 0;
+	} //}}}
+
+	//{{{ getSaver() method
+	private static synchronized ScheduledExecutorService getSaver()
+	{
+		if(saver == null)
+		{
+			saver = Executors.newSingleThreadScheduledExecutor(r ->
+			{
+				Thread t = new Thread(r,"File Classification Cache Saver");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return saver;
+	} //}}}
+
+	//{{{ load() method
+	private void load()
+	{
+		if(settingsFile == null)
+			return;
+		long start = System.nanoTime();
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(
+			new FileInputStream(settingsFile))))
+		{
+			if(in.readInt() != MAGIC || in.readInt() != VERSION
+				|| !settings.equals(in.readUTF()))
+				return;
+			String[] encodings = new String[in.readInt()];
+			for(int i = 0; i < encodings.length; i++)
+				encodings[i] = in.readUTF();
+
+			// each path is stored as the length of the prefix it
+			// shares with the previous one, and the rest
+			int count = in.readInt();
+			String path = "";
+			for(int i = 0; i < count; i++)
+			{
+				int prefix = in.readUnsignedShort();
+				path = path.substring(0,prefix).concat(in.readUTF());
+				long size = in.readLong();
+				long modified = in.readLong();
+				boolean binary = in.readBoolean();
+				int encoding = in.readUnsignedShort();
+				entries.put(path,new Entry(size,modified,
+					Classification.of(binary,encoding == NO_ENCODING
+						? null : encodings[encoding])));
+			}
+			Log.log(Log.DEBUG,this,"Loaded " + count
+				+ " file classifications in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+		}
+		catch(FileNotFoundException e)
+		{
+		}
+		catch(IOException | RuntimeException e)
+		{
+			Log.log(Log.ERROR,this,"Error while loading " + settingsFile);
+			Log.log(Log.ERROR,this,e);
+			entries.clear();
+		}
+	} //}}}
+
+	//{{{ save() method
+	private void save()
+	{
+		List<String> paths;
+		Map<String, Entry> snapshot;
+		String savedSettings;
+		synchronized(this)
+		{
+			saveScheduled = false;
+			snapshot = new HashMap<>(entries);
+			savedSettings = settings;
+		}
+		paths = new ArrayList<>(snapshot.keySet());
+		paths.sort(null);
+
+		File dir = settingsFile.getParentFile();
+		if(!dir.exists() && !dir.mkdirs())
+			return;
+		File tempFile = new File(dir,"#" + settingsFile.getName() + "#save#");
+		try
+		{
+			try(DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tempFile))))
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(savedSettings);
+
+				Map<String, Integer> encodings = new LinkedHashMap<>();
+				for(Entry entry : snapshot.values())
+				{
+					String encoding = entry.classification.getEncoding();
+					if(encoding != null && encodings.size() < NO_ENCODING)
+						encodings.putIfAbsent(encoding,encodings.size());
+				}
+				out.writeInt(encodings.size());
+				for(String encoding : encodings.keySet())
+					out.writeUTF(encoding);
+
+				out.writeInt(paths.size());
+				String previous = "";
+				for(String path : paths)
+				{
+					Entry entry = snapshot.get(path);
+					int prefix = 0;
+					int max = Math.min(Math.min(previous.length(),
+						path.length()),0xffff);
+					while(prefix < max && previous.charAt(prefix)
+						== path.charAt(prefix))
+						prefix++;
+					out.writeShort(prefix);
+					out.writeUTF(path.substring(prefix));
+					out.writeLong(entry.size);
+					out.writeLong(entry.modified);
+					out.writeBoolean(entry.classification.isBinary());
+					Integer encoding = encodings.get(
+						entry.classification.getEncoding());
+					out.writeShort(encoding == null ? NO_ENCODING : encoding);
+					previous = path;
+				}
+			}
+			settingsFile.delete();
+			tempFile.renameTo(settingsFile);
+		}
+		catch(IOException e)
+		{
+			Log.log(Log.ERROR,this,"Error while saving " + settingsFile);
+			Log.log(Log.ERROR,this,e);
+		}
+	} //}}}
+
+	//}}}
+
+	//{{{ Entry class
+	private static class Entry
+	{
+		final long size;
+		final long modified;
+		final Classification classification;
+
+		Entry(long size, long modified, Classification classification)
+		{
+			this.size = size;
+			this.modified = modified;
+			this.classification = Objects.requireNonNull(classification);
+		}
+	} //}}}
+}
@@ -25,8 +25,6 @@
 package org.gjt.sp.jedit.io;
 
 //{{{ Imports
-import java.io.Closeable;
-
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.swing.filechooser.FileSystemView;
@@ -34,11 +32,20 @@ import javax.swing.*;
 
 import java.awt.Component;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
 import java.text.*;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import org.gjt.sp.jedit.*;
-import org.gjt.sp.util.IOUtilities;
 import org.gjt.sp.util.Log;
 //}}}
 
@@ -223,23 +230,52 @@ public class FileVFS extends VFS
 		{
 			this.file = file;
 
-			/* These attributes are fetched relatively
-			quickly. The rest are lazily filled in. */
+			/* The type, length and modification time are read
+			in one call. The rest are lazily filled in. */
 			setName(file.getName());
 			String path = file.getPath();
 			setPath(path);
 			setDeletePath(path);
-			setHidden(file.isHidden());
-			setType(file.isDirectory()
-				? VFSFile.DIRECTORY
-				: VFSFile.FILE);
+			BasicFileAttributes attrs = readAttributes(file);
+			if(attrs == null)
+			{
+				// gone, or a broken link
+				setHidden(file.isHidden());
+				setType(VFSFile.FILE);
+			}
+			else
+			{
+				setHidden(attrs instanceof DosFileAttributes
+					? ((DosFileAttributes)attrs).isHidden()
+					: file.isHidden());
+				setType(attrs.isDirectory()
+					? VFSFile.DIRECTORY
+					: VFSFile.FILE);
+				setLength(attrs.size());
+				setModified(attrs.lastModifiedTime().toMillis());
+			}
+		}
+
+		/**
+		 * Copies the attributes a file was created with, without
+		 * reading them again. Those fetched later are not copied.
+		 */
+		LocalFile(LocalFile other)
+		{
+			file = other.file;
+			setName(other.getName());
+			setPath(other.getPath());
+			setDeletePath(other.getDeletePath());
+			setHidden(other.isHidden());
+			setType(other.getType());
+			setLength(other.getLength());
+			setModified(other.modified);
 		} //}}}
 
 		//{{{ getExtendedAttribute() method
 		@Override
 		public String getExtendedAttribute(String name)
 		{
-			fetchAttrs();
 			if (name.equals(EA_MODIFIED))
 			{
 				return DATE_FORMAT.format(new Date(modified));
@@ -264,8 +300,6 @@ public class FileVFS extends VFS
 				file.getPath()));
 			setReadable(file.canRead());
 			setWriteable(file.canWrite());
-			setLength(file.length());
-			setModified(file.lastModified());
 		} //}}}
 
 		//{{{ getIcon() method
@@ -298,14 +332,6 @@ public class FileVFS extends VFS
 			return super.getSymlinkPath();
 		} //}}}
 
-		//{{{ getLength() method
-		@Override
-		public long getLength()
-		{
-			fetchAttrs();
-			return super.getLength();
-		} //}}}
-
 		//{{{ isReadable() method
 		@Override
 		public boolean isReadable()
@@ -322,11 +348,23 @@ public class FileVFS extends VFS
 			return super.isWriteable();
 		} //}}}
 
+		//{{{ isBinary() method
+		/**
+		 * Checks if the file is binary, reading it only if the
+		 * {@link FileClassificationCache} does not know it yet.
+		 */
+		@Override
+		public boolean isBinary(Object session)
+			throws IOException
+		{
+			return FileClassificationCache.getInstance().classify(
+				getPath(),getLength(),getModified()).isBinary();
+		} //}}}
+
 		//{{{ getModified() method
 		@Override
 		public long getModified()
 		{
-			fetchAttrs();
 			return modified;
 		} //}}}
 
@@ -336,10 +374,43 @@ public class FileVFS extends VFS
 			this.modified = modified;
 		} //}}}
 
+		//{{{ readAttributes() method
+		/**
+		 * Returns the attributes of a file, following links, or null if
+		 * they cannot be read. On Windows, they include whether the file
+		 * is hidden.
+		 */
+		private static BasicFileAttributes readAttributes(File file)
+		{
+			try
+			{
+				Path path = file.toPath();
+				if(OperatingSystem.isWindows())
+					return Files.readAttributes(path,DosFileAttributes.class);
+				return Files.readAttributes(path,BasicFileAttributes.class);
+			}
+			catch(IOException | InvalidPathException | UnsupportedOperationException e)
+			{
+				return null;
+			}
+		} //}}}
+
 		private transient FileSystemView fsView;
 		private transient Icon icon;
 	} //}}}
 
+	//{{{ reloadDirectory() method
+	/**
+	 * Forgets the cached listings of the directory and its subdirectories.
+	 * @see DirectoryListingCache
+	 */
+	@Override
+	public void reloadDirectory(String path)
+	{
+		DirectoryListingCache.getInstance().invalidateTree(
+			MiscUtilities.canonPath(path));
+	} //}}}
+
 	//{{{ _listFiles() method
 	@Override
 	public VFSFile[] _listFiles(Object session, String path,
@@ -399,6 +470,21 @@ public class FileVFS extends VFS
 		return new LocalFile(file);
 	} //}}}
 
+	//{{{ _listDirectory() method
+	/**
+	 * Lists the directories with several threads, see
+	 * {@link ParallelFileLister}.
+	 * @since jEdit 5.7pre1
+	 */
+	@Override
+	public void _listDirectory(Object session, String directory,
+		VFSFileFilter filter, boolean recursive, Component comp,
+		boolean skipBinary, boolean skipHidden, Consumer<String> consumer)
+	{
+		new ParallelFileLister(this,session,filter,recursive,comp,
+			skipBinary,skipHidden,consumer).list(directory);
+	} //}}}
+
 	//{{{ _delete() method
 	@Override
 	public boolean _delete(Object session, String path, Component comp)
@@ -548,9 +634,6 @@ public class FileVFS extends VFS
 
 	//{{{ Permission preservation code
 
-	/* Code borrowed from j text editor (http://www.armedbear.org) */
-	/* I made some changes to make it support suid, sgid and sticky files */
-
 	//{{{ getPermissions() method
 	/**
 	 * Returns numeric permissions of a file. On non-Unix systems, always
@@ -566,36 +649,24 @@ public class FileVFS extends VFS
 
 		if(OperatingSystem.isUnix())
 		{
-			String[] cmdarray = { "ls", "-lLd", path };
-
-			InputStreamReader isr = null;
-			BufferedReader reader = null;
 			try
 			{
-				Process process = Runtime.getRuntime().exec(cmdarray);
-				isr = new InputStreamReader(process.getInputStream());
-				reader = new BufferedReader(isr);
-
-				String output = reader.readLine();
-
-				if(output != null)
+				Path file = Paths.get(path);
+				try
 				{
-					String s = output.substring(1, 10);
-
-					permissions = MiscUtilities
-						.parsePermissions(s);
+					// includes the suid, sgid and sticky bits
+					permissions = (Integer)Files.getAttribute(file,
+						UNIX_MODE) & 07777;
+				}
+				catch(IllegalArgumentException | UnsupportedOperationException e)
+				{
+					permissions = toMode(Files.getPosixFilePermissions(file));
 				}
 			}
-
-			// Feb 4 2000 5:30 PM
-			// Catch Throwable here rather than Exception.
-			// Kaffe's implementation of Runtime.exec throws java.lang.InternalError.
-			catch (Throwable t)
-			{
-			}
-			finally
+			catch(IOException | InvalidPathException | UnsupportedOperationException e)
 			{
-				IOUtilities.closeQuietly((Closeable)reader);
+				Log.log(Log.DEBUG,FileVFS.class,"Cannot read the permissions of "
+					+ path + ": " + e);
 			}
 		}
 
@@ -617,35 +688,59 @@ public class FileVFS extends VFS
 		{
 			if(OperatingSystem.isUnix())
 			{
-				String[] cmdarray = { "chmod", Integer.toString(permissions, 8), path };
-
 				try
 				{
-					Process process = Runtime.getRuntime().exec(cmdarray);
-					process.getInputStream().close();
-					process.getOutputStream().close();
-					process.getErrorStream().close();
-					// Jun 9 2004 12:40 PM
-					// waitFor() hangs on some Java
-					// implementations.
-					/* int exitCode = process.waitFor();
-					if(exitCode != 0)
-						Log.log(Log.NOTICE,FileVFS.class,"chmod exited with code " + exitCode); */
+					Path file = Paths.get(path);
+					try
+					{
+						Files.setAttribute(file,UNIX_MODE,permissions);
+					}
+					catch(IllegalArgumentException | UnsupportedOperationException e)
+					{
+						// the suid, sgid and sticky bits are lost
+						Files.setPosixFilePermissions(file,
+							toPosixFilePermissions(permissions));
+					}
 				}
-
-				// Feb 4 2000 5:30 PM
-				// Catch Throwable here rather than Exception.
-				// Kaffe's implementation of Runtime.exec throws java.lang.InternalError.
-				catch (Throwable t)
+				catch(IOException | InvalidPathException | UnsupportedOperationException e)
 				{
+					Log.log(Log.NOTICE,FileVFS.class,"Cannot set the permissions of "
+						+ path + " to 0" + Integer.toString(permissions,8)
+						+ ": " + e);
 				}
 			}
 		}
 	} //}}}
 
+	//{{{ toMode() method
+	private static int toMode(Set<PosixFilePermission> permissions)
+	{
+		int mode = 0;
+		for(PosixFilePermission permission : permissions)
+			mode |= 0400 >> permission.ordinal();
+		return mode;
+	} //}}}
+
+	//{{{ toPosixFilePermissions() method
+	private static Set<PosixFilePermission> toPosixFilePermissions(int mode)
+	{
+		Set<PosixFilePermission> permissions = EnumSet.noneOf(
+			PosixFilePermission.class);
+		// the constants are declared from OWNER_READ to OTHERS_EXECUTE
+		for(PosixFilePermission permission : PosixFilePermission.values())
+		{
+			if((mode & (0400 >> permission.ordinal())) != 0)
+				permissions.add(permission);
+		}
+		return permissions;
+	} //}}}
+
 	//}}}
 
 	//{{{ Private members
+	/** The mode attribute of the JDK's unix view, which the POSIX view lacks. */
+	private static final String UNIX_MODE = "unix:mode";
+
 	private static FileSystemView fsView;
 	//}}}
 }
@@ -0,0 +1,269 @@
+/*
+ * ParallelFileLister.java - Lists local directories with several threads
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.io;
+
+//{{{ Imports
+import java.awt.Component;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.gjt.sp.jedit.MiscUtilities;
+import org.gjt.sp.util.Log;
+//}}}
+
+/**
+ * Lists a directory tree of the local file system with several threads, for
+ * {@link FileVFS#_listDirectory(Object,String,VFSFileFilter,boolean,Component,boolean,boolean,Consumer)}.<p>
+ *
+ * Each directory is listed and filtered by a task of its own, which submits
+ * a task for each of its subdirectories. The binary checks, which open the
+ * files, are done by tasks of their own too, a batch of files each. The
+ * paths are given to the consumer as soon as they are found, from the
+ * worker threads.<p>
+ *
+ * Like the single threaded listing, a directory reached through a symbolic
+ * link is not listed again once its target has been listed, so that links
+ * to a parent directory do not loop.
+ *
+ * @since jEdit 5.7pre1
+ */
+class ParallelFileLister
+{
+	//{{{ ParallelFileLister constructor
+	ParallelFileLister(VFS vfs, Object session, VFSFileFilter filter,
+		boolean recursive, Component comp, boolean skipBinary,
+		boolean skipHidden, Consumer<String> consumer)
+	{
+		this.vfs = vfs;
+		this.session = session;
+		this.filter = filter;
+		this.recursive = recursive;
+		this.comp = comp;
+		this.skipBinary = skipBinary;
+		this.skipHidden = skipHidden;
+		this.consumer = consumer;
+	} //}}}
+
+	//{{{ list() method
+	/**
+	 * Lists the directory, returning once all the paths have been given to
+	 * the consumer. If the calling thread is interrupted, the listing stops
+	 * and the thread keeps its interrupted status.
+	 */
+	void list(String directory)
+	{
+		AtomicInteger threadIDs = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(THREADS, r ->
+		{
+			Thread t = new Thread(r, "File Lister #"
+				+ threadIDs.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+		try
+		{
+			submit(() -> listDirectory(directory));
+			done.await();
+		}
+		catch(InterruptedException e)
+		{
+			cancelled = true;
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			workers.shutdownNow();
+		}
+	} //}}}
+
+	//{{{ Private members
+	/** The files can be on a slow disk, so there are more threads than cores. */
+	private static final int THREADS = Math.min(8,
+		Math.max(2, Runtime.getRuntime().availableProcessors() * 2));
+	/** The number of files opened by a binary check task. */
+	private static final int BINARY_BATCH = 32;
+
+	private final VFS vfs;
+	private final Object session;
+	private final VFSFileFilter filter;
+	private final boolean recursive;
+	private final Component comp;
+	private final boolean skipBinary;
+	private final boolean skipHidden;
+	private final Consumer<String> consumer;
+
+	/** The targets of the links listed so far. */
+	private final Set<String> visited = ConcurrentHashMap.newKeySet();
+	/** The tasks submitted and not done yet. */
+	private final AtomicInteger pending = new AtomicInteger();
+	private final CountDownLatch done = new CountDownLatch(1);
+	private ExecutorService workers;
+	private volatile boolean cancelled;
+
+	//{{{ submit() method
+	private void submit(Runnable task)
+	{
+		pending.incrementAndGet();
+		try
+		{
+			workers.execute(() ->
+			{
+				try
+				{
+					if(!cancelled)
+						task.run();
+				}
+				catch(RuntimeException e)
+				{
+					Log.log(Log.ERROR,this,e);
+				}
+				finally
+				{
+					taskDone();
+				}
+			});
+		}
+		catch(RejectedExecutionException e)
+		{
+			// the listing was stopped
+			taskDone();
+		}
+	} //}}}
+
+	//{{{ taskDone() method
+	private void taskDone()
+	{
+		if(pending.decrementAndGet() == 0)
+			done.countDown();
+	} //}}}
+
+	//{{{ listDirectory() method
+	private void listDirectory(String directory)
+	{
+		if(recursive && !MiscUtilities.isURL(directory))
+		{
+			String resolvedPath = MiscUtilities.resolveSymlinks(directory);
+			/*
+			 * If looking at a symlink, do not traverse the
+			 * resolved path more than once.
+			 */
+			if(!directory.equals(resolvedPath) && !visited.add(resolvedPath))
+			{
+				Log.log(Log.ERROR,this,
+					"Recursion in listFiles(): " + directory);
+				return;
+			}
+		}
+
+		VFSFile[] files;
+		try
+		{
+			files = vfs._listFiles(session,directory,comp);
+		}
+		catch(IOException e)
+		{
+			Log.log(Log.ERROR,this,e);
+			return;
+		}
+		if(files == null)
+			return;
+
+		List<VFSFile> toCheck = new ArrayList<>();
+		for(VFSFile file : files)
+		{
+			if(cancelled)
+				return;
+			if(skipHidden && (file.isHidden() || MiscUtilities.isBackup(file.getName())))
+				continue;
+			if(!filter.accept(file))
+				continue;
+			if(file.getType() == VFSFile.DIRECTORY
+				|| file.getType() == VFSFile.FILESYSTEM)
+			{
+				if(recursive)
+				{
+					try
+					{
+						String canonPath = vfs._canonPath(session,
+							file.getPath(),comp);
+						submit(() -> listDirectory(canonPath));
+					}
+					catch(IOException e)
+					{
+						Log.log(Log.ERROR,this,e);
+					}
+				}
+			}
+			else if(skipBinary)
+			{
+				toCheck.add(file);
+				if(toCheck.size() == BINARY_BATCH)
+				{
+					List<VFSFile> batch = toCheck;
+					submit(() -> checkBinary(batch));
+					toCheck = new ArrayList<>();
+				}
+			}
+			else
+				consumer.accept(file.getPath());
+		}
+		checkBinary(toCheck);
+	} //}}}
+
+	//{{{ checkBinary() method
+	/**
+	 * Gives the files that are not binary to the consumer.
+	 */
+	private void checkBinary(List<VFSFile> files)
+	{
+		for(VFSFile file : files)
+		{
+			if(cancelled)
+				return;
+			try
+			{
+				if(file.isBinary(session))
+				{
+					Log.log(Log.NOTICE,this,
+						file.getPath() + ": skipped as a binary file");
+					continue;
+				}
+			}
+			catch(IOException e)
+			{
+				Log.log(Log.ERROR,this,e);
+				// may be not binary...
+			}
+			consumer.accept(file.getPath());
+		}
+	} //}}}
+
+	//}}}
+}
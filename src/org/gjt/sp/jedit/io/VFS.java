@@ -28,6 +28,8 @@ import java.awt.Component;
 import java.io.*;
 import java.io.Closeable;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
 
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -869,10 +871,10 @@ public abstract class VFS
 		boolean skipBinary, boolean skipHidden)
 		throws IOException
 	{
-		List<String> files = new ArrayList<>(100);
+		Collection<String> files = new ConcurrentLinkedQueue<>();
 
-		listFiles(session,new HashSet<>(), files,directory,filter,
-			recursive, comp, skipBinary, skipHidden);
+		_listDirectory(session,directory,filter,recursive,comp,
+			skipBinary,skipHidden,files::add);
 
 		String[] retVal = files.toArray(StandardUtilities.EMPTY_STRING_ARRAY);
 
@@ -881,6 +883,36 @@ public abstract class VFS
 		return retVal;
 	} //}}}
 
+	//{{{ _listDirectory() method
+	/**
+	 * Filters the directory listing like
+	 * {@link #_listDirectory(Object,String,VFSFileFilter,boolean,Component,boolean,boolean)},
+	 * but gives each path to a consumer as soon as it is found, in no
+	 * particular order, instead of returning them all at the end.<p>
+	 *
+	 * The consumer may be called from several threads at once, as a VFS
+	 * may list the directories in parallel; {@link FileVFS} does.
+	 * @param session The session
+	 * @param directory The directory
+	 * @param filter The {@link VFSFileFilter} to use for filtering.
+	 * @param recursive If true, subdirectories will also be listed.
+	 * @param comp The component that will parent error dialog boxes
+	 * @param skipBinary ignore binary files (do not return them).
+	 * @param skipHidden skips hidden files, directories, and
+	 *        backup files.
+	 * @param consumer Given the path of each file
+	 * @exception IOException if an I/O error occurred
+	 * @since jEdit 5.7pre1
+	 */
+	public void _listDirectory(Object session, String directory,
+		VFSFileFilter filter, boolean recursive, Component comp,
+		boolean skipBinary, boolean skipHidden, Consumer<String> consumer)
+		throws IOException
+	{
+		listFiles(session,new HashSet<>(),consumer,directory,filter,
+			recursive, comp, skipBinary, skipHidden);
+	} //}}}
+
 	//{{{ _listFiles() method
 	/**
 	 * Lists the specified directory.
@@ -1214,7 +1246,7 @@ public abstract class VFS
 
 	//{{{ recursive listFiles() method
 	private void listFiles(Object session, Collection<String> stack,
-		List<String> files, String directory, VFSFileFilter filter, boolean recursive,
+		Consumer<String> files, String directory, VFSFileFilter filter, boolean recursive,
 		Component comp, boolean skipBinary, boolean skipHidden) throws IOException
 	{
 		if (recursive && !MiscUtilities.isURL(directory))
@@ -1282,7 +1314,7 @@ public abstract class VFS
 						// may be not binary...
 					}
 				}
-				files.add(file.getPath());
+				files.accept(file.getPath());
 			}
 		}
 	} //}}}
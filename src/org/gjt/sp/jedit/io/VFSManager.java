@@ -323,6 +323,9 @@ public class VFSManager
 				|| path.endsWith(java.io.File.separator)))
 				path = path.substring(0,path.length() - 1);
 
+			// before the browsers are told to list it again
+			DirectoryListingCache.invalidateIfCached(path);
+
 			synchronized(vfsUpdateLock)
 			{
 				for (VFSUpdate msg : vfsUpdates)
@@ -1593,66 +1593,46 @@ public class jEdit implements Runnable
 	//{{{ scrollToLine() method
 	/**
 	 * Scroll to specified line. This is called from an on click
-	 * node from the graphical javascript mindmap.
-	 * @param args The line number to scroll to.
+	 * node from the graphical javascript mindmap.<p>
+	 *
+	 * Requests are coalesced: if several arrive before the text area
+	 * had a chance to update, only the latest one is applied.
+	 * @param newLineNumber The line number to scroll to.
 	 */
 	public void scrollToLine(int newLineNumber) {
-		
-		//Harlan
-		EditPane editPanes[] = currentView.getEditPanes();
-		
-		if (editPanes.length > 0) {
-
-		    int lastPane = editPanes.length - 1;
-		    
-		    SwingUtilities.invokeLater(() -> {
-		       
-		    	JEditTextArea jTextArea = editPanes[lastPane].getTextArea();
-		    	int visibleLines = jTextArea.getLineCount();
-		    	
-		    	if (newLineNumber < visibleLines) {
-		    		
-				    EditBus.send(new PositionChanging(editPanes[lastPane]));
-				    jTextArea.setCaretPosition(jTextArea.getLineStartOffset(newLineNumber));
-				    jTextArea.scrollTo(jTextArea.getLineStartOffset(newLineNumber), false);
-				    
-				    jTextArea.revalidate();
-				    jTextArea.repaint();
-		    	}
-		    });
-		}
-	}
-	
-    public void scrollToLineCentered(int newLineNumber) {
-    	
-		//Harlan
-		EditPane editPanes[] = currentView.getEditPanes();
-		
-		if (editPanes.length > 0) {
-
-		    int lastPane = editPanes.length - 1;
-		    
-		    SwingUtilities.invokeLater(() -> {
-		    	
-		    	JEditTextArea jTextArea = editPanes[lastPane].getTextArea();
-		        int totalLines = jTextArea.getLineCount();
+		scrollRequests.post(newLineNumber, jEdit::applyScrollToLine);
+	} //}}}
 
-		        if (newLineNumber < 0 || newLineNumber >= totalLines)
-		            return;
+	//{{{ scrollToLineCentered() method
+	/**
+	 * Scroll so that the specified line is centered in the text area.
+	 * This is called on mouse-over of a node of the graphical javascript
+	 * mindmap, and is coalesced the same way as {@link #scrollToLine(int)}.
+	 * @param newLineNumber The line number to center.
+	 */
+	public void scrollToLineCentered(int newLineNumber) {
+		scrollRequests.post(newLineNumber, jEdit::applyScrollToLineCentered);
+	} //}}}
 
-		        // Set caret to line start to ensure it's the active line
-		        int offset = jTextArea.getLineStartOffset(newLineNumber);
-		        jTextArea.setCaretPosition(offset, true);  // true = do not scroll yet
+	//{{{ getScrollRequestsReceived() method
+	/**
+	 * Returns the number of scroll requests received from the mindmap.
+	 */
+	public static long getScrollRequestsReceived()
+	{
+		return scrollRequests.getReceivedCount();
+	} //}}}
 
-		        // Calculate new first visible line to center the desired line
-		        int visibleLines = jTextArea.getVisibleLines();
-		        int firstVisible = Math.max(0, newLineNumber - visibleLines / 2);
+	//{{{ getScrollRequestsApplied() method
+	/**
+	 * Returns the number of scroll requests actually applied to the
+	 * text area, the others having been superseded by a newer request.
+	 */
+	public static long getScrollRequestsApplied()
+	{
+		return scrollRequests.getAppliedCount();
+	} //}}}
 
-		        jTextArea.setFirstLine(firstVisible);  // Scrolls so the line is centered	
-		    });
-		}
-    }
-	
 	//{{{ openFile() methods
 	/**
 	 * Opens a file, either immediately if the application is finished starting up,
@@ -3291,6 +3271,59 @@ public class jEdit implements Runnable
 
 	//{{{ Private members
 
+	//{{{ getScrollTarget() method
+	/**
+	 * Returns the edit pane mindmap scroll requests are applied to.
+	 */
+	private static EditPane getScrollTarget()
+	{
+		//Harlan
+		if (currentView == null)
+			return null;
+
+		EditPane editPanes[] = currentView.getEditPanes();
+		if (editPanes.length == 0)
+			return null;
+		return editPanes[editPanes.length - 1];
+	} //}}}
+
+	//{{{ applyScrollToLine() method
+	private static void applyScrollToLine(int newLineNumber)
+	{
+		EditPane editPane = getScrollTarget();
+		if (editPane == null)
+			return;
+
+		JEditTextArea jTextArea = editPane.getTextArea();
+		if (newLineNumber >= jTextArea.getLineCount())
+			return;
+
+		EditBus.send(new PositionChanging(editPane));
+		int offset = jTextArea.getLineStartOffset(newLineNumber);
+		jTextArea.setCaretPosition(offset);
+		jTextArea.scrollTo(offset, false);
+	} //}}}
+
+	//{{{ applyScrollToLineCentered() method
+	private static void applyScrollToLineCentered(int newLineNumber)
+	{
+		EditPane editPane = getScrollTarget();
+		if (editPane == null)
+			return;
+
+		JEditTextArea jTextArea = editPane.getTextArea();
+		if (newLineNumber < 0 || newLineNumber >= jTextArea.getLineCount())
+			return;
+
+		// Set caret to line start to ensure it's the active line
+		int offset = jTextArea.getLineStartOffset(newLineNumber);
+		jTextArea.setCaretPosition(offset, true);  // true = do not scroll yet
+
+		// Calculate new first visible line to center the desired line
+		int visibleLines = jTextArea.getVisibleLines();
+		jTextArea.setFirstLine(Math.max(0, newLineNumber - visibleLines / 2));
+	} //}}}
+
 	//{{{ Static variables
 	private static String jEditHome;
 	private static String settingsDirectory;
@@ -3323,6 +3356,7 @@ public class jEdit implements Runnable
 	private static final Vector<String> additionalFiles = new Vector<>();
 
 	private static Thread mainThread;
+	private static final ScrollRequestCoalescer scrollRequests = new ScrollRequestCoalescer();
 	//}}}
 
 	public jEdit() {}
@@ -55,6 +55,7 @@ public class BufferManagerImpl implements BufferManager
 	private final Object bufferListLock = new Object();
 
 	private final Map<String, Buffer> bufferHash;
+	private final FileStatusWatcher fileStatusWatcher = new FileStatusWatcher();
 	private boolean sortBuffers;
 	private boolean sortByName;
 	private int bufferCount;
@@ -168,10 +169,13 @@ public class BufferManagerImpl implements BufferManager
 		return buffersLast;
 	} //}}}
 
-	//{{{ checkBufferStatus() method
+	//{{{ checkBufferStatus() methods
 	/**
 	 * Checks buffer status on disk and shows the dialog box
 	 * informing the user that buffers changed on disk, if necessary.
+	 * Only the buffers whose file was seen changing since the last check
+	 * are looked at here; the files that cannot be watched are looked at
+	 * in the background, and checked once they are found changed.
 	 * @param view The view
 	 * @param currentBuffer indicates whether to check only the current buffer
 	 * @param autoReload true if we autoreload
@@ -179,6 +183,20 @@ public class BufferManagerImpl implements BufferManager
 	 */
 	public void checkBufferStatus(View view, boolean currentBuffer, boolean autoReload)
 	{
+		Buffer only = currentBuffer ? view.getBuffer() : null;
+		checkBufferStatus(view, fileStatusWatcher.takeChanged(only), autoReload);
+		fileStatusWatcher.poll(only, changed ->
+		{
+			if(!view.isClosed())
+				checkBufferStatus(view, changed, autoReload);
+		});
+	}
+
+	private void checkBufferStatus(View view, Set<Buffer> changed, boolean autoReload)
+	{
+		if(changed.isEmpty())
+			return;
+
 		// still need to call the status check even if the option is
 		// off, so that the write protection is updated if it changes
 		// on disk
@@ -196,7 +214,7 @@ public class BufferManagerImpl implements BufferManager
 		boolean notifyFileChanged = false;
 		while(buffer != null)
 		{
-			if(currentBuffer && buffer != view.getBuffer())
+			if(!changed.contains(buffer))
 			{
 				buffer = buffer.getNext();
 				i++;
@@ -338,6 +356,7 @@ public class BufferManagerImpl implements BufferManager
 		String path = getPathForBufferHash(buffer);
 
 		bufferHash.put(path,buffer);
+		fileStatusWatcher.add(buffer);
 	} //}}}
 
 	//{{{ removeBufferFromList() method
@@ -345,6 +364,7 @@ public class BufferManagerImpl implements BufferManager
 	{
 		synchronized(bufferListLock)
 		{
+			fileStatusWatcher.remove(buffer);
 			bufferCount--;
 
 			String path = buffer.getPath();
@@ -395,6 +415,7 @@ public class BufferManagerImpl implements BufferManager
 		{
 			String symlinkPath = getPathForBufferHash(buffer);
 
+			fileStatusWatcher.add(buffer);
 			bufferCount++;
 
 			bufferHash.put(symlinkPath,buffer);
@@ -483,6 +504,8 @@ public class BufferManagerImpl implements BufferManager
 			removeBufferFromList(buffer);
 			addBufferToList(buffer);
 		}
+		else
+			fileStatusWatcher.add(buffer);
 	} //}}}
 
 	//{{{ getPathForBufferHash() method
@@ -517,6 +540,7 @@ public class BufferManagerImpl implements BufferManager
 		buffersFirst = buffersLast = null;
 		bufferHash.clear();
 		bufferCount = 0;
+		fileStatusWatcher.clear();
 
 		while(buffer != null)
 		{
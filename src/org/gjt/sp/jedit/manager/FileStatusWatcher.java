@@ -0,0 +1,482 @@
+/*
+ * jEdit - Programmer's Text Editor
+ * :tabSize=8:indentSize=8:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * Copyright © 2020 jEdit contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.manager;
+
+import org.gjt.sp.jedit.Buffer;
+import org.gjt.sp.jedit.OperatingSystem;
+import org.gjt.sp.jedit.io.FileVFS;
+import org.gjt.sp.util.IOUtilities;
+import org.gjt.sp.util.Log;
+import org.gjt.sp.util.Task;
+import org.gjt.sp.util.ThreadUtilities;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the directories of the open buffers, so that checking the buffer
+ * status only has to look at the buffers whose file changed since.<p>
+ *
+ * The directories are registered with a {@link WatchService} in the
+ * background, and a thread records the buffers whose file is created,
+ * modified or deleted. Buffers in directories that cannot be watched, or
+ * that are on a network file system where changes made by other hosts are
+ * not reported, are compared with their file in a background task
+ * instead. So are all buffers if the watch service only polls for
+ * changes, since it would report them seconds late.
+ *
+ * @since jEdit 5.7pre1
+ */
+class FileStatusWatcher
+{
+	//{{{ add() method
+	/**
+	 * Starts watching the file of a buffer. The buffer counts as changed
+	 * until its directory is watched.
+	 */
+	void add(Buffer buffer)
+	{
+		if(buffer.isUntitled() || !(buffer.getVFS() instanceof FileVFS))
+			return;
+		List<Path> paths = new ArrayList<>(2);
+		try
+		{
+			paths.add(Paths.get(buffer.getPath()));
+			// changes to the target of a link are seen in its directory
+			Path target = Paths.get(buffer.getSymlinkPath());
+			if(!target.equals(paths.get(0)))
+				paths.add(target);
+		}
+		catch(InvalidPathException e)
+		{
+			Log.log(Log.WARNING,this,e);
+			return;
+		}
+
+		synchronized(this)
+		{
+			remove(buffer);
+			files.put(buffer,paths);
+			for(Path path : paths)
+			{
+				buffers.computeIfAbsent(getKey(path),
+					k -> new ArrayList<>(1)).add(buffer);
+			}
+			changed.add(buffer);
+		}
+		getRegistrar().execute(() -> register(buffer,paths));
+	} //}}}
+
+	//{{{ remove() method
+	/**
+	 * Stops watching the file of a buffer.
+	 */
+	synchronized void remove(Buffer buffer)
+	{
+		changed.remove(buffer);
+		polled.remove(buffer);
+		List<Path> paths = files.remove(buffer);
+		if(paths == null)
+			return;
+		for(Path path : paths)
+		{
+			Path key = getKey(path);
+			List<Buffer> list = buffers.get(key);
+			if(list != null)
+			{
+				list.remove(buffer);
+				if(list.isEmpty())
+					buffers.remove(key);
+			}
+			Path dir = path.getParent();
+			if(dir != null && !isWatched(dir))
+			{
+				WatchKey watchKey = keys.remove(dir);
+				if(watchKey != null)
+					watchKey.cancel();
+			}
+		}
+	} //}}}
+
+	//{{{ clear() method
+	/**
+	 * Stops watching the files of all buffers.
+	 */
+	synchronized void clear()
+	{
+		for(WatchKey watchKey : keys.values())
+			watchKey.cancel();
+		keys.clear();
+		files.clear();
+		buffers.clear();
+		changed.clear();
+		polled.clear();
+	} //}}}
+
+	//{{{ takeChanged() method
+	/**
+	 * Returns the buffers whose file changed since the last call, and
+	 * forgets about them. A buffer being loaded or saved is kept for the
+	 * next call, since its status is not checked meanwhile.
+	 * @param only The only buffer to return, or null for all
+	 */
+	synchronized Set<Buffer> takeChanged(Buffer only)
+	{
+		Set<Buffer> result = new HashSet<>();
+		Iterator<Buffer> iter = changed.iterator();
+		while(iter.hasNext())
+		{
+			Buffer buffer = iter.next();
+			if((only != null && buffer != only) || buffer.isPerformingIO())
+				continue;
+			iter.remove();
+			result.add(buffer);
+		}
+		return result;
+	} //}}}
+
+	//{{{ poll() method
+	/**
+	 * Compares the buffers that are not watched with their file in the
+	 * background, unless that is being done already.
+	 * @param only The only buffer to look at, or null for all
+	 * @param callback Given the buffers whose file changed, in the event
+	 * dispatch thread
+	 */
+	void poll(Buffer only, Consumer<Set<Buffer>> callback)
+	{
+		List<Buffer> toPoll = new ArrayList<>();
+		synchronized(this)
+		{
+			if(polling)
+				return;
+			for(Buffer buffer : polled)
+			{
+				if(only == null || buffer == only)
+					toPoll.add(buffer);
+			}
+			if(toPoll.isEmpty())
+				return;
+			polling = true;
+		}
+		ThreadUtilities.runInBackground(new PollTask(toPoll,callback));
+	} //}}}
+
+	//{{{ Private members
+	/** Network file systems; changes made by other hosts are not seen. */
+	private static final Set<String> NETWORK_FILE_SYSTEMS = new HashSet<>(
+		Arrays.asList("nfs","nfs4","cifs","smbfs","smb2","afs","9p",
+			"fuse.sshfs","davfs","webdav"));
+
+	private final Map<Buffer, List<Path>> files = new HashMap<>();
+	/** The buffers of each file, see {@link #getKey(Path)}. */
+	private final Map<Path, List<Buffer>> buffers = new HashMap<>();
+	private final Map<Path, WatchKey> keys = new HashMap<>();
+	private final Set<Buffer> changed = new HashSet<>();
+	private final Set<Buffer> polled = new HashSet<>();
+	private boolean polling;
+
+	private WatchService watchService;
+	private boolean watchServiceFailed;
+	private ExecutorService registrar;
+
+	//{{{ getKey() method
+	/**
+	 * Returns the key of a file in {@link #buffers}; names in watch events
+	 * may differ in case from the path of the buffer on case insensitive
+	 * file systems.
+	 */
+	private static Path getKey(Path path)
+	{
+		if(OperatingSystem.isCaseInsensitiveFS())
+			return Paths.get(path.toString().toLowerCase());
+		return path;
+	} //}}}
+
+	//{{{ isWatched() method
+	/**
+	 * Returns true if a buffer has a file in the given directory.
+	 */
+	private boolean isWatched(Path dir)
+	{
+		for(List<Path> paths : files.values())
+		{
+			for(Path path : paths)
+			{
+				if(dir.equals(path.getParent()))
+					return true;
+			}
+		}
+		return false;
+	} //}}}
+
+	//{{{ getRegistrar() method
+	private synchronized ExecutorService getRegistrar()
+	{
+		if(registrar == null)
+		{
+			registrar = Executors.newSingleThreadExecutor(r ->
+			{
+				Thread t = new Thread(r,"File Status Registrar");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return registrar;
+	} //}}}
+
+	//{{{ getWatchService() method
+	/**
+	 * Returns the watch service, starting the thread taking its events
+	 * the first time, or null if there is none.
+	 */
+	private synchronized WatchService getWatchService()
+	{
+		if(watchService == null && !watchServiceFailed)
+		{
+			try
+			{
+				watchService = FileSystems.getDefault().newWatchService();
+			}
+			catch(IOException | UnsupportedOperationException e)
+			{
+				Log.log(Log.WARNING,this,"Cannot watch files, "
+					+ "they will be polled: " + e);
+				watchServiceFailed = true;
+				return null;
+			}
+			if(IOUtilities.isPolling(watchService))
+			{
+				// it would only see a file changed just before
+				// jEdit gets the focus seconds later
+				Log.log(Log.DEBUG,this,"The watch service polls, "
+					+ "files will be compared instead");
+				IOUtilities.closeQuietly(watchService);
+				watchService = null;
+				watchServiceFailed = true;
+				return null;
+			}
+			Thread thread = new Thread(this::takeEvents,
+				"File Status Watcher");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return watchService;
+	} //}}}
+
+	//{{{ register() method
+	/**
+	 * Watches the directories of a buffer, in the registrar thread. The
+	 * buffer is polled instead if one of them cannot be watched.
+	 */
+	private void register(Buffer buffer, List<Path> paths)
+	{
+		WatchService watchService = getWatchService();
+		boolean watched = watchService != null;
+		for(Path path : paths)
+		{
+			Path dir = path.getParent();
+			if(dir == null)
+			{
+				watched = false;
+				continue;
+			}
+			synchronized(this)
+			{
+				if(files.get(buffer) != paths)
+					return;
+				if(keys.containsKey(dir))
+					continue;
+			}
+			if(!watched)
+				continue;
+
+			// the file system may be slow, so the lock is not held
+			WatchKey watchKey;
+			try
+			{
+				String type = Files.getFileStore(dir).type();
+				if(NETWORK_FILE_SYSTEMS.contains(type))
+				{
+					Log.log(Log.DEBUG,this,dir + " is on " + type
+						+ ", its files will be polled");
+					watched = false;
+					continue;
+				}
+				watchKey = dir.register(watchService,
+					ENTRY_CREATE,ENTRY_DELETE,ENTRY_MODIFY);
+			}
+			catch(IOException | RuntimeException e)
+			{
+				Log.log(Log.DEBUG,this,"Cannot watch " + dir
+					+ ", its files will be polled: " + e);
+				watched = false;
+				continue;
+			}
+
+			synchronized(this)
+			{
+				if(!isWatched(dir))
+				{
+					watchKey.cancel();
+					return;
+				}
+				keys.put(dir,watchKey);
+			}
+		}
+
+		synchronized(this)
+		{
+			if(files.get(buffer) != paths)
+				return;
+			if(!watched)
+				polled.add(buffer);
+			// it may have changed before it was watched
+			changed.add(buffer);
+		}
+	} //}}}
+
+	//{{{ takeEvents() method
+	/**
+	 * Records the buffers whose file changed, in the watcher thread.
+	 */
+	private void takeEvents()
+	{
+		for(;;)
+		{
+			WatchKey watchKey;
+			try
+			{
+				watchKey = watchService.take();
+			}
+			catch(InterruptedException | ClosedWatchServiceException e)
+			{
+				return;
+			}
+
+			Path dir = (Path)watchKey.watchable();
+			List<WatchEvent<?>> events = watchKey.pollEvents();
+			boolean valid = watchKey.reset();
+			synchronized(this)
+			{
+				for(WatchEvent<?> event : events)
+				{
+					if(event.kind() == OVERFLOW)
+					{
+						// some events were lost
+						changeAll(dir,false);
+					}
+					else
+					{
+						Path file = dir.resolve((Path)event.context());
+						List<Buffer> list = buffers.get(getKey(file));
+						if(list != null)
+							changed.addAll(list);
+					}
+				}
+				if(!valid && keys.get(dir) == watchKey)
+				{
+					// the directory is gone
+					keys.remove(dir);
+					changeAll(dir,true);
+				}
+			}
+		}
+	} //}}}
+
+	//{{{ changeAll() method
+	/**
+	 * Marks the buffers with a file in the given directory as changed.
+	 * @param poll true to poll them from now on
+	 */
+	private void changeAll(Path dir, boolean poll)
+	{
+		for(Map.Entry<Buffer, List<Path>> entry : files.entrySet())
+		{
+			for(Path path : entry.getValue())
+			{
+				if(dir.equals(path.getParent()))
+				{
+					changed.add(entry.getKey());
+					if(poll)
+						polled.add(entry.getKey());
+				}
+			}
+		}
+	} //}}}
+
+	//}}}
+
+	//{{{ PollTask class
+	private class PollTask extends Task
+	{
+		private final List<Buffer> toPoll;
+		private final Consumer<Set<Buffer>> callback;
+
+		PollTask(List<Buffer> toPoll, Consumer<Set<Buffer>> callback)
+		{
+			this.toPoll = toPoll;
+			this.callback = callback;
+			setLabel("Checking the status of " + toPoll.size() + " files");
+			setMaximum(toPoll.size());
+		}
+
+		@Override
+		public void _run()
+		{
+			Set<Buffer> changedOnDisk = new HashSet<>();
+			try
+			{
+				for(int i = 0; i < toPoll.size(); i++)
+				{
+					Buffer buffer = toPoll.get(i);
+					if(!buffer.isClosed() && buffer.isChangedOnDisk())
+						changedOnDisk.add(buffer);
+					setValue(i + 1);
+				}
+			}
+			finally
+			{
+				synchronized(FileStatusWatcher.this)
+				{
+					polling = false;
+				}
+			}
+			if(!changedOnDisk.isEmpty())
+				ThreadUtilities.runInDispatchThread(() -> callback.accept(changedOnDisk));
+		}
+	} //}}}
+}
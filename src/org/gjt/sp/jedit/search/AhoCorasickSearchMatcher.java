@@ -0,0 +1,333 @@
+/*
+ * AhoCorasickSearchMatcher.java - Multiple string literal matcher
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.search;
+
+//{{{ Imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+//}}}
+
+/**
+ * Searches for any of several string literals at once, with the
+ * Aho-Corasick algorithm. The text is read once, whatever the number of
+ * literals, which is much faster than an alternation of the literals in a
+ * regular expression.<p>
+ *
+ * Of the occurrences, the one starting first is returned, and the longest
+ * one of those starting at the same offset. The index of the literal that
+ * matched is set in {@link SearchMatcher.Match#pattern}.
+ *
+ * @since jEdit 5.7pre1
+ */
+public class AhoCorasickSearchMatcher extends SearchMatcher
+{
+	//{{{ AhoCorasickSearchMatcher constructor
+	/**
+	 * Creates a new multiple string literal matcher.
+	 * @param literals the strings to search for; empty ones are ignored
+	 * @param ignoreCase <code>true</code> if you want to ignore case
+	 * @param wholeWord <code>true</code> to search for whole words only
+	 */
+	public AhoCorasickSearchMatcher(String[] literals, boolean ignoreCase,
+		boolean wholeWord)
+	{
+		this.literals = literals.clone();
+		this.ignoreCase = ignoreCase;
+		this.wholeWord = wholeWord;
+		forward = new Automaton(this.literals, ignoreCase, false);
+	} //}}}
+
+	//{{{ fromLines() method
+	/**
+	 * Creates a matcher searching for each line of a search string.
+	 * @param search The search string
+	 * @param ignoreCase <code>true</code> if you want to ignore case
+	 * @param wholeWord <code>true</code> to search for whole words only
+	 * @return the matcher, or null if all the lines are empty
+	 */
+	public static AhoCorasickSearchMatcher fromLines(String search,
+		boolean ignoreCase, boolean wholeWord)
+	{
+		List<String> literals = new ArrayList<>();
+		for(String line : search.split("\n"))
+		{
+			if(!line.isEmpty())
+				literals.add(line);
+		}
+		if(literals.isEmpty())
+			return null;
+		return new AhoCorasickSearchMatcher(
+			literals.toArray(new String[0]), ignoreCase, wholeWord);
+	} //}}}
+
+	//{{{ getLiteral() method
+	/**
+	 * Returns one of the literals searched for.
+	 * @param index The index found in {@link SearchMatcher.Match#pattern}
+	 */
+	public String getLiteral(int index)
+	{
+		return literals[index];
+	} //}}}
+
+	//{{{ getLiteralCount() method
+	public int getLiteralCount()
+	{
+		return literals.length;
+	} //}}}
+
+	//{{{ nextMatch() method
+	@Override
+	public SearchMatcher.Match nextMatch(CharSequence text,
+		boolean start, boolean end, boolean firstTime,
+		boolean reverse) throws InterruptedException
+	{
+		Automaton automaton;
+		if(reverse)
+		{
+			if(backward == null)
+				backward = new Automaton(literals, ignoreCase, true);
+			automaton = backward;
+		}
+		else
+			automaton = forward;
+
+		int[] delta = automaton.delta;
+		int stride = automaton.stride;
+		int maxLength = automaton.maxLength;
+
+		int bestStart = -1;
+		int bestEnd = -1;
+		int bestPattern = -1;
+
+		int state = 0;
+		int length = text.length();
+		for(int i = 0; i < length; i++)
+		{
+			// no occurrence ending further can start before the best one
+			if(bestStart != -1 && i - maxLength >= bestStart)
+				break;
+			if((i & 0xfff) == 0 && Thread.interrupted())
+				throw new InterruptedException();
+
+			char ch = text.charAt(i);
+			if(ignoreCase)
+				ch = Character.toUpperCase(ch);
+			state = delta[state * stride + automaton.indexOf(ch)];
+
+			// the chain holds the literals ending here, longest first
+			int node = automaton.pattern[state] != -1 ? state
+				: automaton.dictLink[state];
+			for(; node != -1; node = automaton.dictLink[node])
+			{
+				int matchStart = i + 1 - automaton.depth[node];
+				// at the same start, a later end is a longer literal
+				if(bestStart != -1 && matchStart > bestStart)
+					break;
+				if(wholeWord && !isWholeWord(text, matchStart, i + 1))
+					continue;
+				bestStart = matchStart;
+				bestEnd = i + 1;
+				bestPattern = automaton.pattern[node];
+				break;
+			}
+		}
+
+		if(bestStart == -1)
+			return null;
+
+		returnValue.start = bestStart;
+		returnValue.end = bestEnd;
+		returnValue.pattern = bestPattern;
+		return returnValue;
+	} //}}}
+
+	//{{{ toString() method
+	@Override
+	public String toString()
+	{
+		return "AhoCorasickSearchMatcher[" + Arrays.toString(literals)
+			+ ',' + ignoreCase + ']';
+	} //}}}
+
+	//{{{ Private members
+	private final String[] literals;
+	private final boolean ignoreCase;
+	private final Automaton forward;
+	/** The automaton of the reversed literals, for backward searches. */
+	private Automaton backward;
+	//}}}
+
+	//{{{ Automaton class
+	/**
+	 * The trie of the literals with the failure transitions folded in, so
+	 * that each character of the text takes exactly one transition.
+	 */
+	private static class Automaton
+	{
+		/** Transitions, <code>stride</code> entries per state. */
+		final int[] delta;
+		final int stride;
+		/** The index of the literal ending at each state, or -1. */
+		final int[] pattern;
+		/** The length of the path to each state. */
+		final int[] depth;
+		/** The longest proper suffix of each state that ends a literal,
+		 * or -1. */
+		final int[] dictLink;
+		final int maxLength;
+
+		/** Column of each ASCII character; 0 is for characters that are
+		 * in no literal. */
+		private final int[] asciiIndex = new int[128];
+		/** The other characters of the literals, sorted. */
+		private final char[] others;
+
+		//{{{ Automaton constructor
+		Automaton(String[] literals, boolean ignoreCase, boolean reverse)
+		{
+			char[][] keys = new char[literals.length][];
+			StringBuilder otherChars = new StringBuilder();
+			int columns = 1;
+			int maxLength = 0;
+			for(int i = 0; i < literals.length; i++)
+			{
+				char[] key = literals[i].toCharArray();
+				for(int j = 0; j < key.length; j++)
+				{
+					char ch = key[j];
+					if(ignoreCase)
+						key[j] = ch = Character.toUpperCase(ch);
+					if(ch < 128)
+					{
+						if(asciiIndex[ch] == 0)
+							asciiIndex[ch] = columns++;
+					}
+					else if(otherChars.indexOf(String.valueOf(ch)) == -1)
+						otherChars.append(ch);
+				}
+				if(reverse)
+				{
+					for(int a = 0, b = key.length - 1; a < b; a++, b--)
+					{
+						char tmp = key[a];
+						key[a] = key[b];
+						key[b] = tmp;
+					}
+				}
+				keys[i] = key;
+				maxLength = Math.max(maxLength, key.length);
+			}
+			others = otherChars.toString().toCharArray();
+			Arrays.sort(others);
+			stride = columns + others.length;
+			this.maxLength = maxLength;
+
+			//{{{ Build the trie
+			List<Map<Integer,Integer>> children = new ArrayList<>();
+			List<Integer> patterns = new ArrayList<>();
+			List<Integer> depths = new ArrayList<>();
+			children.add(new HashMap<>());
+			patterns.add(-1);
+			depths.add(0);
+			for(int i = 0; i < keys.length; i++)
+			{
+				if(keys[i].length == 0)
+					continue;
+				int state = 0;
+				for(char ch : keys[i])
+				{
+					int column = indexOf(ch);
+					Integer next = children.get(state).get(column);
+					if(next == null)
+					{
+						next = children.size();
+						children.add(new HashMap<>());
+						patterns.add(-1);
+						depths.add(depths.get(state) + 1);
+						children.get(state).put(column, next);
+					}
+					state = next;
+				}
+				// keep the first of duplicate literals
+				if(patterns.get(state) == -1)
+					patterns.set(state, i);
+			} //}}}
+
+			int states = children.size();
+			delta = new int[states * stride];
+			pattern = new int[states];
+			depth = new int[states];
+			dictLink = new int[states];
+			for(int i = 0; i < states; i++)
+			{
+				pattern[i] = patterns.get(i);
+				depth[i] = depths.get(i);
+			}
+
+			//{{{ Fold the failure transitions, breadth first
+			int[] fail = new int[states];
+			int[] queue = new int[states];
+			int head = 0;
+			int tail = 0;
+			dictLink[0] = -1;
+			for(Map.Entry<Integer,Integer> e : children.get(0).entrySet())
+			{
+				delta[e.getKey()] = e.getValue();
+				fail[e.getValue()] = 0;
+				dictLink[e.getValue()] = -1;
+				queue[tail++] = e.getValue();
+			}
+			while(head < tail)
+			{
+				int state = queue[head++];
+				int failState = fail[state];
+				System.arraycopy(delta, failState * stride,
+					delta, state * stride, stride);
+				for(Map.Entry<Integer,Integer> e : children.get(state).entrySet())
+				{
+					int child = e.getValue();
+					int childFail = delta[failState * stride + e.getKey()];
+					fail[child] = childFail;
+					dictLink[child] = pattern[childFail] != -1
+						? childFail : dictLink[childFail];
+					delta[state * stride + e.getKey()] = child;
+					queue[tail++] = child;
+				}
+			} //}}}
+		} //}}}
+
+		//{{{ indexOf() method
+		/**
+		 * Returns the transition column of a character.
+		 */
+		int indexOf(char ch)
+		{
+			if(ch < 128)
+				return asciiIndex[ch];
+			int index = Arrays.binarySearch(others, ch);
+			return index < 0 ? 0 : stride - others.length + index;
+		} //}}}
+	} //}}}
+}
@@ -25,6 +25,13 @@
 
 package org.gjt.sp.jedit.search;
 
+//{{{ Imports
+import javax.swing.text.Segment;
+
+import org.gjt.sp.util.ReverseCharSequence;
+import org.gjt.sp.util.SegmentedCharSequence;
+//}}}
+
 /**
  * Implements literal search using the Boyer-Moore algorithm.
  * @version $Id$
@@ -109,6 +116,9 @@ public class BoyerMooreSearchMatcher extends SearchMatcher
 	 *  algorithm may be found on Moore's website at:
 	 *
 	 *   http://www.cs.utexas.edu/users/moore/best-ideas/string-searching/
+	 *
+	 *  text from a buffer or a decoded file is backed by char arrays,
+	 *  which are then searched directly; see {@link SegmentedCharSequence}.
 	 * @throws InterruptedException 
 	 *
 	 * @since jEdit 4.3pre5
@@ -143,6 +153,10 @@ public class BoyerMooreSearchMatcher extends SearchMatcher
 			suffix = fwd_suffix;
 		} //}}}
 
+		Segment[] regions = getRegions(text, reverse);
+		if(regions != null)
+			return matchRegions(text, regions, reverse, skip, suffix);
+
 		// position variable for pattern test position
 		int pos;
 
@@ -166,8 +180,9 @@ public class BoyerMooreSearchMatcher extends SearchMatcher
 		// based on the mismatch character and its position in the
 		// pattern to determine the furthest we can move the anchor
 		// without missing any potential pattern matches.
+		int length = text.length();
 		SEARCH:
-		while (anchor + pattern_end < text.length())
+		while (anchor + pattern_end < length)
 		{
 			if(Thread.interrupted())
 				throw new InterruptedException();
@@ -208,6 +223,142 @@ public class BoyerMooreSearchMatcher extends SearchMatcher
 		return -1;
 	} //}}}
 
+	//{{{ getRegions() method
+	/**
+	 * Returns the arrays backing the text, or null if it is not backed by
+	 * arrays. For a reverse search, the text is a reversed view of them.
+	 */
+	private static Segment[] getRegions(CharSequence text, boolean reverse)
+	{
+		if(reverse)
+		{
+			if(!(text instanceof ReverseCharSequence))
+				return null;
+			text = ((ReverseCharSequence)text).baseSequence();
+		}
+		if(text instanceof SegmentedCharSequence)
+			return ((SegmentedCharSequence)text).getSegments();
+		if(text instanceof Segment)
+			return new Segment[] { (Segment)text };
+		return null;
+	} //}}}
+
+	//{{{ matchRegions() method
+	/**
+	 * Searches text backed by arrays, one array at a time. The occurrences
+	 * spanning two arrays, such as the two sides of the gap of a buffer,
+	 * are looked for in a copy of the characters around the boundary.
+	 */
+	private int matchRegions(CharSequence text, Segment[] regions,
+		boolean reverse, int[] skip, int[] suffix)
+		throws InterruptedException
+	{
+		int length = text.length();
+		int regionStart = 0;
+		for(int i = 0; i < regions.length; i++)
+		{
+			Segment region = regions[reverse ? regions.length - 1 - i : i];
+			int pos = matchArray(region.array, region.offset, region.count,
+				reverse, skip, suffix);
+			if(pos != -1)
+				return regionStart + pos;
+			regionStart += region.count;
+
+			if(i + 1 < regions.length && pattern_end > 0)
+			{
+				// a match in this window necessarily spans the boundary
+				int windowStart = Math.max(0, regionStart - pattern_end);
+				int windowEnd = Math.min(length, regionStart + pattern_end);
+				char[] window = new char[windowEnd - windowStart];
+				// matchArray() reads the array backwards in reverse
+				for(int j = 0; j < window.length; j++)
+				{
+					window[reverse ? window.length - 1 - j : j]
+						= text.charAt(windowStart + j);
+				}
+				pos = matchArray(window, 0, window.length, reverse,
+					skip, suffix);
+				if(pos != -1)
+					return windowStart + pos;
+			}
+		}
+		return -1;
+	} //}}}
+
+	//{{{ matchArray() method
+	/**
+	 * The search loop of {@link #match(CharSequence,boolean)}, over a range
+	 * of an array. For a reverse search, the range is read from its end.
+	 * @return the position of the match in the range, counted from its end
+	 * for a reverse search, or -1
+	 */
+	private int matchArray(char[] array, int offset, int count,
+		boolean reverse, int[] skip, int[] suffix)
+		throws InterruptedException
+	{
+		char[] pattern = this.pattern;
+		if(reverse)
+		{
+			if(back_pattern == null)
+			{
+				back_pattern = new char[pattern.length];
+				for(int i = 0; i < pattern.length; i++)
+					back_pattern[i] = pattern[pattern_end - i];
+			}
+			pattern = back_pattern;
+		}
+		int last = offset + count - 1;
+
+		int anchor = 0;
+		int iterations = 0;
+		SEARCH:
+		while (anchor + pattern_end < count)
+		{
+			if((++iterations & 0xfff) == 0 && Thread.interrupted())
+				throw new InterruptedException();
+
+			for (int pos = pattern_end; pos >= 0; --pos)
+			{
+				char ch = reverse ? array[last - anchor - pos]
+					: array[offset + anchor + pos];
+				if(ignoreCase)
+				{
+					if(ch >= 'a' && ch <= 'z')
+						ch -= 'a' - 'A';
+					else if(ch >= 128)
+						ch = Character.toUpperCase(ch);
+				}
+
+				if (ch != pattern[pos])
+				{
+					int bad_char = pos - skip[getSkipIndex(ch)];
+					int good_suffix = suffix[pos];
+					anchor += Math.max(bad_char, good_suffix);
+					continue SEARCH;
+				}
+			}
+
+			return anchor;
+		}
+
+		return -1;
+	} //}}}
+
+	//{{{ getLiteral() method
+	/**
+	 * Returns the search string, in upper case if case is ignored.
+	 */
+	String getLiteral()
+	{
+		return new String(pattern);
+	} //}}}
+
+	//{{{ isIgnoreCase() method
+	boolean isIgnoreCase()
+	{
+		return ignoreCase;
+	} //}}}
+
 	//{{{ toString() method
 	public String toString()
 	{
@@ -224,6 +375,8 @@ public class BoyerMooreSearchMatcher extends SearchMatcher
 	private int[] fwd_suffix;
 	private int[] back_skip;
 	private int[] back_suffix;
+	/** The pattern reversed, for reverse searches in arrays. */
+	private char[] back_pattern;
 
 	// Boyer-Moore helper methods
 
@@ -0,0 +1,491 @@
+/*
+ * BytePrefilter.java - Skips files whose bytes cannot contain a match
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.search;
+
+//{{{ Imports
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+//}}}
+
+/**
+ * Looks for a literal that every match must contain in the undecoded bytes
+ * of a file, so that files that cannot match are neither decoded nor given
+ * to the {@link SearchMatcher}.<p>
+ *
+ * The literal is the search string itself for a
+ * {@link BoyerMooreSearchMatcher}, or the longest run of plain characters
+ * that a regular expression requires. It is encoded in each encoding the
+ * file could be decoded with, and the file is only skipped when none of the
+ * encoded forms occurs. This is only done for UTF-8 and for the ASCII based
+ * single byte encodings, in which a decoded string always comes from its own
+ * encoded bytes; in any other encoding the file is searched as usual.
+ * Line separators are converted when a file is decoded, so the literal
+ * never spans one.
+ *
+ * @since jEdit 5.7pre1
+ */
+class BytePrefilter
+{
+	//{{{ create() method
+	/**
+	 * Returns a prefilter for the matcher, or null if no literal long
+	 * enough to be worth looking for can be derived from it.
+	 */
+	static BytePrefilter create(SearchMatcher matcher)
+	{
+		List<String> literals = getRequiredLiterals(matcher);
+		boolean ignoreCase;
+		if (matcher instanceof BoyerMooreSearchMatcher)
+		{
+			BoyerMooreSearchMatcher bm = (BoyerMooreSearchMatcher) matcher;
+			ignoreCase = bm.isIgnoreCase();
+			// the search string is upper case; a lower case dotless i
+			// or long s also matches an I or S
+			if (ignoreCase && containsAny(bm.getLiteral(), "IS"))
+				return null;
+		}
+		else if (matcher instanceof PatternSearchMatcher)
+			ignoreCase = ((PatternSearchMatcher) matcher).isIgnoreCase();
+		else
+			return null;
+
+		if (literals == null)
+			return null;
+		String longest = "";
+		for (String literal : literals)
+		{
+			if (literal.length() > longest.length())
+				longest = literal;
+		}
+		if (longest.length() < MIN_LENGTH || longest.indexOf('\uFFFD') != -1)
+			return null;
+		if (ignoreCase && !isAscii(longest))
+			return null;
+		return new BytePrefilter(longest, ignoreCase);
+	} //}}}
+
+	//{{{ getRequiredLiterals() method
+	/**
+	 * Returns strings that every match of the matcher contains, or null
+	 * if nothing is known about its matches. The strings never contain a
+	 * line separator. If the search ignores case, they may be in either
+	 * case.
+	 */
+	static List<String> getRequiredLiterals(SearchMatcher matcher)
+	{
+		if (matcher instanceof BoyerMooreSearchMatcher)
+			return splitLines(((BoyerMooreSearchMatcher) matcher).getLiteral());
+		if (matcher instanceof PatternSearchMatcher)
+			return getRequiredLiterals(((PatternSearchMatcher) matcher).getPattern());
+		return null;
+	} //}}}
+
+	//{{{ mayMatch() method
+	/**
+	 * @param bytes The contents of the file
+	 * @param encodings The encodings the file could be decoded with
+	 * @return false if the file certainly contains no match
+	 */
+	boolean mayMatch(ByteBuffer bytes, List<String> encodings)
+	{
+		for (String encoding : encodings)
+		{
+			byte[] needle = needles.computeIfAbsent(encoding, this::encode);
+			if (needle == UNSUPPORTED)
+				return true;
+			if (needle != UNENCODABLE && indexOf(bytes, needle) != -1)
+				return true;
+		}
+		return false;
+	} //}}}
+
+	//{{{ toString() method
+	@Override
+	public String toString()
+	{
+		return "BytePrefilter[" + literal + ',' + ignoreCase + ']';
+	} //}}}
+
+	//{{{ Private members
+	private static final int MIN_LENGTH = 2;
+
+	/** The literal cannot be looked for in this encoding. */
+	private static final byte[] UNSUPPORTED = new byte[0];
+	/** No text decoded with this encoding can contain the literal. */
+	private static final byte[] UNENCODABLE = new byte[0];
+
+	private final String literal;
+	private final boolean ignoreCase;
+	private final Map<String, byte[]> needles = new ConcurrentHashMap<>();
+
+	//{{{ BytePrefilter constructor
+	private BytePrefilter(String literal, boolean ignoreCase)
+	{
+		this.literal = ignoreCase ? toLowerAscii(literal) : literal;
+		this.ignoreCase = ignoreCase;
+	} //}}}
+
+	//{{{ encode() method
+	private byte[] encode(String encoding)
+	{
+		Charset charset;
+		try
+		{
+			if (!Charset.isSupported(encoding))
+				return UNSUPPORTED;
+			charset = Charset.forName(encoding);
+		}
+		catch (IllegalCharsetNameException e)
+		{
+			return UNSUPPORTED;
+		}
+		String name = charset.name();
+		if (!charset.equals(StandardCharsets.UTF_8)
+			&& !name.equals("US-ASCII")
+			&& !name.startsWith("ISO-8859-")
+			&& !name.startsWith("windows-125"))
+			return UNSUPPORTED;
+		if (!charset.newEncoder().canEncode(literal))
+			return UNENCODABLE;
+		return literal.getBytes(charset);
+	} //}}}
+
+	//{{{ indexOf() method
+	/**
+	 * Boyer-Moore-Horspool search of the needle in the bytes.
+	 */
+	private int indexOf(ByteBuffer bytes, byte[] needle)
+	{
+		int[] skip = new int[256];
+		int last = needle.length - 1;
+		for (int i = 0; i < 256; i++)
+			skip[i] = needle.length;
+		for (int i = 0; i < last; i++)
+			skip[needle[i] & 0xff] = last - i;
+		if (ignoreCase)
+		{
+			// the needle is lower case ASCII
+			for (int c = 'a'; c <= 'z'; c++)
+				skip[c - 'a' + 'A'] = skip[c];
+		}
+
+		int limit = bytes.limit() - last;
+		for (int pos = bytes.position(); pos < limit; )
+		{
+			int i = last;
+			while (fold(bytes.get(pos + i)) == needle[i])
+			{
+				if (i == 0)
+					return pos;
+				i--;
+			}
+			pos += skip[bytes.get(pos + last) & 0xff];
+		}
+		return -1;
+	} //}}}
+
+	//{{{ fold() method
+	private byte fold(byte b)
+	{
+		if (ignoreCase && b >= 'A' && b <= 'Z')
+			return (byte) (b - 'A' + 'a');
+		return b;
+	} //}}}
+
+	//{{{ splitLines() method
+	private static List<String> splitLines(String text)
+	{
+		List<String> lines = new ArrayList<>();
+		int start = 0;
+		for (int i = 0; i <= text.length(); i++)
+		{
+			if (i == text.length() || text.charAt(i) == '\n'
+				|| text.charAt(i) == '\r')
+			{
+				lines.add(text.substring(start, i));
+				start = i + 1;
+			}
+		}
+		return lines;
+	} //}}}
+
+	//{{{ getRequiredLiterals() method
+	/**
+	 * Returns runs of literal characters that appear in every match of
+	 * the regular expression, or null if the expression uses a construct
+	 * that is not understood. Only the top level of the expression is
+	 * considered; groups and character classes just end a run.
+	 */
+	private static List<String> getRequiredLiterals(String re)
+	{
+		List<String> runs = new ArrayList<>();
+		StringBuilder run = new StringBuilder();
+		int i = 0;
+		while (i < re.length())
+		{
+			char ch = re.charAt(i);
+			switch (ch)
+			{
+			case '\\':
+				if (i + 1 >= re.length())
+					return null;
+				char escaped = re.charAt(i + 1);
+				if (escaped == 'Q')
+				{
+					int end = re.indexOf("\\E", i + 2);
+					if (end == -1)
+						end = re.length();
+					for (int j = i + 2; j < end; j++)
+						appendLiteral(run, runs, re.charAt(j));
+					i = Math.min(re.length(), end + 2);
+				}
+				else if ("dDsSwWbBAGzZhHvVRXtnrfae".indexOf(escaped) != -1)
+				{
+					flush(run, runs);
+					i += 2;
+				}
+				else if (Character.isLetterOrDigit(escaped))
+				{
+					// hex, unicode and property escapes, back references...
+					return null;
+				}
+				else
+				{
+					appendLiteral(run, runs, escaped);
+					i += 2;
+				}
+				break;
+			case '(':
+				if (re.startsWith("(?", i) && !isSkippableGroup(re, i + 2))
+					return null;
+				flush(run, runs);
+				i = skipGroup(re, i);
+				if (i == -1)
+					return null;
+				break;
+			case '[':
+				flush(run, runs);
+				i = skipClass(re, i);
+				if (i == -1)
+					return null;
+				break;
+			case '|':
+			case ')':
+				return null;
+			case '*':
+			case '?':
+			case '{':
+				// the previous character may not be there at all
+				if (run.length() != 0)
+					run.setLength(run.length() - 1);
+				flush(run, runs);
+				i = skipQuantifier(re, i);
+				if (i == -1)
+					return null;
+				break;
+			case '+':
+				flush(run, runs);
+				i = skipQuantifier(re, i);
+				break;
+			case '.':
+			case '^':
+			case '$':
+				flush(run, runs);
+				i++;
+				break;
+			default:
+				appendLiteral(run, runs, ch);
+				i++;
+				break;
+			}
+		}
+		flush(run, runs);
+		return runs;
+	} //}}}
+
+	//{{{ appendLiteral() method
+	private static void appendLiteral(StringBuilder run, List<String> runs, char ch)
+	{
+		if (ch == '\n' || ch == '\r')
+			flush(run, runs);
+		else
+			run.append(ch);
+	} //}}}
+
+	//{{{ flush() method
+	private static void flush(StringBuilder run, List<String> runs)
+	{
+		if (run.length() != 0)
+		{
+			runs.add(run.toString());
+			run.setLength(0);
+		}
+	} //}}}
+
+	//{{{ isSkippableGroup() method
+	/**
+	 * Non-capturing groups, lookarounds and named groups can be skipped;
+	 * inline flags change how the rest of the expression matches.
+	 */
+	private static boolean isSkippableGroup(String re, int i)
+	{
+		if (i >= re.length())
+			return false;
+		char ch = re.charAt(i);
+		if (ch == ':' || ch == '=' || ch == '!' || ch == '>')
+			return true;
+		return ch == '<' && i + 1 < re.length()
+			&& (re.charAt(i + 1) == '=' || re.charAt(i + 1) == '!'
+			|| Character.isLetter(re.charAt(i + 1)));
+	} //}}}
+
+	//{{{ skipGroup() method
+	/**
+	 * @return the index after the group and its quantifier, or -1
+	 */
+	private static int skipGroup(String re, int i)
+	{
+		int depth = 0;
+		while (i < re.length())
+		{
+			char ch = re.charAt(i);
+			if (ch == '\\')
+			{
+				i += 2;
+				continue;
+			}
+			if (ch == '[')
+			{
+				i = skipClass(re, i);
+				if (i == -1)
+					return -1;
+				continue;
+			}
+			if (ch == '(')
+				depth++;
+			else if (ch == ')' && --depth == 0)
+				return skipQuantifier(re, i + 1);
+			i++;
+		}
+		return -1;
+	} //}}}
+
+	//{{{ skipClass() method
+	/**
+	 * @return the index after the character class and its quantifier,
+	 * or -1
+	 */
+	private static int skipClass(String re, int i)
+	{
+		int depth = 0;
+		while (i < re.length())
+		{
+			char ch = re.charAt(i);
+			if (ch == '\\')
+			{
+				i += 2;
+				continue;
+			}
+			if (ch == '[')
+			{
+				depth++;
+				// a ] right after [ or [^ is a literal
+				if (re.startsWith("^", i + 1))
+					i++;
+				if (re.startsWith("]", i + 1))
+					i++;
+			}
+			else if (ch == ']' && --depth == 0)
+				return skipQuantifier(re, i + 1);
+			i++;
+		}
+		return -1;
+	} //}}}
+
+	//{{{ skipQuantifier() method
+	/**
+	 * @return the index after the quantifier at the given index, if any,
+	 * or -1 if it is malformed
+	 */
+	private static int skipQuantifier(String re, int i)
+	{
+		if (i >= re.length())
+			return i;
+		char ch = re.charAt(i);
+		if (ch == '{')
+		{
+			int end = re.indexOf('}', i);
+			if (end == -1)
+				return -1;
+			i = end + 1;
+		}
+		else if (ch == '*' || ch == '+' || ch == '?')
+			i++;
+		else
+			return i;
+		// lazy or possessive
+		if (i < re.length() && (re.charAt(i) == '?' || re.charAt(i) == '+'))
+			i++;
+		return i;
+	} //}}}
+
+	//{{{ containsAny() method
+	private static boolean containsAny(String text, String chars)
+	{
+		for (int i = 0; i < chars.length(); i++)
+		{
+			if (text.indexOf(chars.charAt(i)) != -1)
+				return true;
+		}
+		return false;
+	} //}}}
+
+	//{{{ isAscii() method
+	private static boolean isAscii(String text)
+	{
+		for (int i = 0; i < text.length(); i++)
+		{
+			if (text.charAt(i) >= 0x80)
+				return false;
+		}
+		return true;
+	} //}}}
+
+	//{{{ toLowerAscii() method
+	private static String toLowerAscii(String text)
+	{
+		char[] chars = text.toCharArray();
+		for (int i = 0; i < chars.length; i++)
+		{
+			if (chars[i] >= 'A' && chars[i] <= 'Z')
+				chars[i] += 'a' - 'A';
+		}
+		return new String(chars);
+	} //}}}
+
+	//}}}
+}
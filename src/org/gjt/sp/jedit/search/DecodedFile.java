@@ -0,0 +1,490 @@
+/*
+ * DecodedFile.java - The text of a file searched without opening a buffer
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.search;
+
+//{{{ Imports
+import java.io.ByteArrayOutputStream;
+import java.io.CharConversionException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import javax.swing.text.Segment;
+
+import org.gjt.sp.jedit.BufferHistory;
+import org.gjt.sp.jedit.Mode;
+import org.gjt.sp.jedit.jEdit;
+import org.gjt.sp.jedit.io.AutoDetection;
+import org.gjt.sp.jedit.io.EncodingDetector;
+import org.gjt.sp.jedit.io.EncodingServer;
+import org.gjt.sp.jedit.syntax.ModeProvider;
+import org.gjt.sp.util.IntegerArray;
+//}}}
+
+/**
+ * The text of a local file, decoded the way a temporary buffer would load
+ * it, but without the cost of creating one.<p>
+ *
+ * The encoding is detected with the same detectors and fallbacks as
+ * {@link org.gjt.sp.jedit.bufferio.BufferLoadRequest}, gzipped files are
+ * uncompressed, and line separators are converted to <code>\n</code>, so
+ * that offsets into the text are the offsets the file will have once it is
+ * opened in a buffer.
+ *
+ * @since jEdit 5.7pre1
+ */
+class DecodedFile
+{
+	//{{{ read() method
+	/**
+	 * Reads and decodes a local file.
+	 * @param path The path of the file
+	 */
+	static DecodedFile read(String path) throws IOException, InterruptedException
+	{
+		return read(path, null);
+	} //}}}
+
+	//{{{ read() method
+	/**
+	 * Reads and decodes a local file, unless the prefilter tells that it
+	 * contains no match. Large files are memory-mapped, so that a file
+	 * that is skipped is never copied, and unmapped once decoded.
+	 * @param path The path of the file
+	 * @param prefilter The prefilter, or null
+	 * @return the decoded file, or null if it was skipped
+	 */
+	static DecodedFile read(String path, BytePrefilter prefilter)
+		throws IOException, InterruptedException
+	{
+		ByteBuffer bytes = readBytes(path);
+		try
+		{
+			return decodeBytes(path, bytes, prefilter);
+		}
+		catch (RuntimeException e)
+		{
+			// so that this file only is given up
+			throw new IOException(path + ": " + e, e);
+		}
+		finally
+		{
+			unmap(bytes);
+		}
+	} //}}}
+
+	//{{{ getPath() method
+	String getPath()
+	{
+		return path;
+	} //}}}
+
+	//{{{ getLength() method
+	int getLength()
+	{
+		return length;
+	} //}}}
+
+	//{{{ getLineCount() method
+	int getLineCount()
+	{
+		return lineCount;
+	} //}}}
+
+	//{{{ getSegment() method
+	/**
+	 * Returns a segment sharing the decoded text, like
+	 * {@link org.gjt.sp.jedit.buffer.JEditBuffer#getSegment(int,int)}.
+	 */
+	CharSequence getSegment(int start, int len)
+	{
+		return new Segment(text, start, len);
+	} //}}}
+
+	//{{{ getLineOfOffset() method
+	int getLineOfOffset(int offset)
+	{
+		int low = 0;
+		int high = lineCount - 1;
+		while (low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if (lineStarts[mid] <= offset)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	} //}}}
+
+	//{{{ getLineStartOffset() method
+	int getLineStartOffset(int line)
+	{
+		return lineStarts[line];
+	} //}}}
+
+	//{{{ getLineEndOffset() method
+	/**
+	 * Returns the offset just after the line's newline, as in buffers.
+	 */
+	int getLineEndOffset(int line)
+	{
+		return line + 1 < lineCount ? lineStarts[line + 1] : length + 1;
+	} //}}}
+
+	//{{{ getLineText() method
+	String getLineText(int line)
+	{
+		int start = lineStarts[line];
+		return new String(text, start, getLineEndOffset(line) - start - 1);
+	} //}}}
+
+	//{{{ getNoWordSep() method
+	/**
+	 * Returns the word separators of the mode the file would be opened
+	 * with, as {@link org.gjt.sp.jedit.Buffer#setMode()} would find it.
+	 */
+	String getNoWordSep()
+	{
+		String firstLine = lineCount == 0 ? "" : getLineText(0);
+		Mode mode = ModeProvider.instance.getModeForFile(path, null, firstLine);
+		if (mode == null)
+			return jEdit.getProperty("buffer.noWordSep");
+		mode.loadIfNecessary();
+		Object noWordSep = mode.getProperty("noWordSep");
+		return noWordSep == null ? null : noWordSep.toString();
+	} //}}}
+
+	//{{{ Private members
+	private static final int IOBUFSIZE = 32768;
+
+	/** Smaller files are cheaper to read than to map. */
+	private static final long MAP_THRESHOLD = 256 * 1024;
+	/** Larger files are read, not to take that much address space. */
+	private static final long MAP_LIMIT = 64 * 1024 * 1024;
+	/** The text of larger files does not fit in an array. */
+	private static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+	private final String path;
+	private char[] text;
+	private int length;
+	private int[] lineStarts;
+	private int lineCount;
+
+	//{{{ decodeBytes() method
+	/**
+	 * Decodes the bytes of a file, which are not used anymore once this
+	 * returns.
+	 */
+	private static DecodedFile decodeBytes(String path, ByteBuffer bytes,
+		BytePrefilter prefilter) throws IOException, InterruptedException
+	{
+		if (AutoDetection.isGzipped(new ByteBufferInputStream(bytes)))
+			bytes = gunzip(bytes);
+
+		String defaultEncoding = getDefaultEncoding(path);
+		List<String> encodings = getCandidateEncodings(bytes, defaultEncoding);
+		if (prefilter != null && !prefilter.mayMatch(bytes, encodings))
+			return null;
+
+		for (String encoding : encodings)
+		{
+			try
+			{
+				Reader in = EncodingServer.getTextReader(
+					new ByteBufferInputStream(bytes), encoding);
+				return new DecodedFile(path, in, bytes.remaining());
+			}
+			catch (CharConversionException | CharacterCodingException
+				| UnsupportedEncodingException | UnsupportedCharsetException e)
+			{
+				// try the next one
+			}
+		}
+		Reader in = EncodingServer.getEncoding(defaultEncoding)
+			.getPermissiveTextReader(new ByteBufferInputStream(bytes));
+		return new DecodedFile(path, in, bytes.remaining());
+	} //}}}
+
+	//{{{ DecodedFile constructor
+	private DecodedFile(String path, Reader in, int sizeHint)
+		throws IOException, InterruptedException
+	{
+		this.path = path;
+		try
+		{
+			decode(in, sizeHint);
+		}
+		finally
+		{
+			in.close();
+		}
+	} //}}}
+
+	//{{{ decode() method
+	/**
+	 * Reads the whole text, converting \r\n and \r to \n like
+	 * {@link org.gjt.sp.jedit.bufferio.BufferIORequest} does.
+	 */
+	private void decode(Reader in, int sizeHint)
+		throws IOException, InterruptedException
+	{
+		text = new char[Math.max(16, sizeHint + 1)];
+		IntegerArray starts = new IntegerArray(Math.max(1, sizeHint / 50));
+		starts.add(0);
+		char[] buf = new char[IOBUFSIZE];
+		boolean lastWasCR = false;
+		int len;
+		while ((len = in.read(buf, 0, buf.length)) != -1)
+		{
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			ensureCapacity(length + len);
+			for (int i = 0; i < len; i++)
+			{
+				char ch = buf[i];
+				if (ch == '\r')
+				{
+					text[length++] = '\n';
+					starts.add(length);
+					lastWasCR = true;
+				}
+				else
+				{
+					if (ch == '\n')
+					{
+						if (lastWasCR)
+						{
+							lastWasCR = false;
+							continue;
+						}
+						text[length++] = '\n';
+						starts.add(length);
+					}
+					else
+						text[length++] = ch;
+					lastWasCR = false;
+				}
+			}
+		}
+
+		int originalLength = length;
+		if (length != 0 && text[length - 1] == 0x1a /* DOS ^Z */)
+			length--;
+		if (originalLength != 0 && text[originalLength - 1] == '\n'
+			&& jEdit.getBooleanProperty("stripTrailingEOL"))
+		{
+			length--;
+			starts.setSize(starts.getSize() - 1);
+		}
+		lineStarts = starts.getArray();
+		lineCount = starts.getSize();
+	} //}}}
+
+	//{{{ ensureCapacity() method
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity > text.length)
+		{
+			char[] newText = new char[Math.max(capacity, text.length * 2)];
+			System.arraycopy(text, 0, newText, 0, length);
+			text = newText;
+		}
+	} //}}}
+
+	//{{{ readBytes() method
+	/**
+	 * Returns the bytes of a file, memory-mapped if it is neither small
+	 * nor very large; see {@link #unmap(ByteBuffer)}.
+	 */
+	private static ByteBuffer readBytes(String path) throws IOException
+	{
+		long size;
+		try (FileChannel channel = FileChannel.open(Paths.get(path),
+			StandardOpenOption.READ))
+		{
+			size = channel.size();
+			if (size > MAX_SIZE)
+			{
+				throw new IOException(path + " is too large to be searched ("
+					+ size + " bytes)");
+			}
+			if (size >= MAP_THRESHOLD && size <= MAP_LIMIT)
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		catch (InvalidPathException | UnsupportedOperationException e)
+		{
+			throw new IOException(path + ": " + e, e);
+		}
+
+		try (InputStream in = Files.newInputStream(Paths.get(path)))
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream(
+				(int) Math.min(size + 1, MAP_LIMIT));
+			byte[] buf = new byte[IOBUFSIZE];
+			int len;
+			while ((len = in.read(buf)) != -1)
+			{
+				if (out.size() > MAX_SIZE - len)
+					throw new IOException(path + " is too large to be searched");
+				out.write(buf, 0, len);
+			}
+			return ByteBuffer.wrap(out.toByteArray());
+		}
+	} //}}}
+
+	//{{{ unmap() method
+	/**
+	 * Releases the mapping of a memory-mapped file right away rather than
+	 * when the buffer is collected, so that the file is not kept open,
+	 * and locked on Windows. The buffer must not be used anymore.
+	 */
+	private static void unmap(ByteBuffer bytes)
+	{
+		if (!bytes.isDirect())
+			return;
+		try
+		{
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafeClass.getMethod("invokeCleaner", ByteBuffer.class)
+				.invoke(theUnsafe.get(null), bytes);
+		}
+		catch (ReflectiveOperationException | RuntimeException e)
+		{
+			// the mapping is released when the buffer is collected
+		}
+	} //}}}
+
+	//{{{ gunzip() method
+	private static ByteBuffer gunzip(ByteBuffer bytes) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(
+			(int) Math.min(bytes.remaining() * 4L, MAP_LIMIT));
+		try (InputStream in = new GZIPInputStream(new ByteBufferInputStream(bytes)))
+		{
+			byte[] buf = new byte[IOBUFSIZE];
+			int len;
+			while ((len = in.read(buf)) != -1)
+			{
+				if (out.size() > MAX_SIZE - len)
+					throw new IOException("Uncompressed file is too large to be searched");
+				out.write(buf, 0, len);
+			}
+		}
+		return ByteBuffer.wrap(out.toByteArray());
+	} //}}}
+
+	//{{{ getDefaultEncoding() method
+	/**
+	 * The encoding the file was last opened with, or the default one.
+	 */
+	private static String getDefaultEncoding(String path)
+	{
+		BufferHistory.Entry entry = BufferHistory.getEntry(path);
+		if (entry != null && entry.encoding != null)
+			return entry.encoding;
+		return jEdit.getProperty("buffer.encoding");
+	} //}}}
+
+	//{{{ getCandidateEncodings() method
+	/**
+	 * Temporary buffers always autodetect their encoding, so do the same.
+	 */
+	private static List<String> getCandidateEncodings(ByteBuffer bytes,
+		String defaultEncoding) throws IOException
+	{
+		List<String> encodings = new ArrayList<>();
+		for (EncodingDetector detector : AutoDetection.getEncodingDetectors())
+		{
+			String encoding = detector.detectEncoding(
+				new ByteBufferInputStream(bytes));
+			if (encoding != null && !encoding.isEmpty()
+				&& !encodings.contains(encoding))
+				encodings.add(encoding);
+		}
+		if (!encodings.contains(defaultEncoding))
+			encodings.add(defaultEncoding);
+
+		String fallbackEncodings = jEdit.getProperty("fallbackEncodings");
+		if (fallbackEncodings != null && !fallbackEncodings.isEmpty())
+		{
+			for (String encoding : fallbackEncodings.split("\\s+"))
+			{
+				if (!encodings.contains(encoding))
+					encodings.add(encoding);
+			}
+		}
+		return encodings;
+	} //}}}
+
+	//{{{ ByteBufferInputStream class
+	/** Reads the bytes from the start, without moving the buffer. */
+	private static class ByteBufferInputStream extends InputStream
+	{
+		private final ByteBuffer bytes;
+
+		ByteBufferInputStream(ByteBuffer bytes)
+		{
+			this.bytes = bytes.duplicate();
+		}
+
+		@Override
+		public int read()
+		{
+			return bytes.hasRemaining() ? bytes.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len)
+		{
+			if (len == 0)
+				return 0;
+			if (!bytes.hasRemaining())
+				return -1;
+			len = Math.min(len, bytes.remaining());
+			bytes.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public int available()
+		{
+			return bytes.remaining();
+		}
+	} //}}}
+
+	//}}}
+}
@@ -0,0 +1,259 @@
+/*
+ * HyperSearchFileTreeNode.java - HyperSearch file node with compact results
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.search;
+
+//{{{ Imports
+import java.util.Arrays;
+import java.util.Enumeration;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.MutableTreeNode;
+import javax.swing.tree.TreeNode;
+
+import org.gjt.sp.jedit.Buffer;
+import org.gjt.sp.jedit.jEdit;
+//}}}
+
+/**
+ * The tree node of a file in the HyperSearch results, keeping its
+ * occurrences in arrays. The nodes of the lines, with their
+ * {@link HyperSearchResult}, are only created the first time the children
+ * are asked for, usually when the file node is expanded, so that a search
+ * with a great many occurrences takes little memory.<p>
+ *
+ * {@link #getChildCount()} does not create the children, so that the tree
+ * can show collapsed file nodes as they are.
+ *
+ * @since jEdit 5.7pre1
+ */
+class HyperSearchFileTreeNode extends DefaultMutableTreeNode
+{
+	//{{{ HyperSearchFileTreeNode constructor
+	HyperSearchFileTreeNode(HyperSearchFileNode fileNode)
+	{
+		super(fileNode);
+		lines = new int[4];
+		lineTexts = new String[4];
+		firstOccurs = new int[4];
+		occurStarts = new int[4];
+		occurEnds = new int[4];
+	} //}}}
+
+	//{{{ getFilePath() method
+	String getFilePath()
+	{
+		return ((HyperSearchFileNode)getUserObject()).path;
+	} //}}}
+
+	//{{{ addOccur() method
+	/**
+	 * Adds an occurrence. Occurrences must be added in the order of the
+	 * file.
+	 * @param line The line of the occurrence
+	 * @param lineText The text of the line; only needed for the first
+	 * occurrence on the line
+	 * @param pattern The literal found when several are searched for, or
+	 * null
+	 */
+	void addOccur(int line, String lineText, int start, int end,
+		String pattern)
+	{
+		if(lineCount == 0 || lines[lineCount - 1] != line)
+		{
+			if(lineCount == lines.length)
+			{
+				int length = lineCount * 2;
+				lines = Arrays.copyOf(lines,length);
+				lineTexts = Arrays.copyOf(lineTexts,length);
+				firstOccurs = Arrays.copyOf(firstOccurs,length);
+			}
+			lines[lineCount] = line;
+			lineTexts[lineCount] = lineText;
+			firstOccurs[lineCount] = occurCount;
+			lineCount++;
+		}
+
+		if(occurCount == occurStarts.length)
+		{
+			int length = occurCount * 2;
+			occurStarts = Arrays.copyOf(occurStarts,length);
+			occurEnds = Arrays.copyOf(occurEnds,length);
+			if(patterns != null)
+				patterns = Arrays.copyOf(patterns,length);
+		}
+		occurStarts[occurCount] = start;
+		occurEnds[occurCount] = end;
+		if(pattern != null)
+		{
+			if(patterns == null)
+				patterns = new String[occurStarts.length];
+			patterns[occurCount] = pattern;
+		}
+		occurCount++;
+	} //}}}
+
+	//{{{ trimToSize() method
+	/**
+	 * Releases the unused room in the arrays, once all occurrences are
+	 * added.
+	 */
+	void trimToSize()
+	{
+		if(materialized)
+			return;
+		lines = Arrays.copyOf(lines,lineCount);
+		lineTexts = Arrays.copyOf(lineTexts,lineCount);
+		firstOccurs = Arrays.copyOf(firstOccurs,lineCount);
+		occurStarts = Arrays.copyOf(occurStarts,occurCount);
+		occurEnds = Arrays.copyOf(occurEnds,occurCount);
+		if(patterns != null)
+			patterns = Arrays.copyOf(patterns,occurCount);
+	} //}}}
+
+	//{{{ isMaterialized() method
+	/**
+	 * Returns true once the nodes of the lines have been created.
+	 */
+	boolean isMaterialized()
+	{
+		return materialized;
+	} //}}}
+
+	//{{{ materialize() method
+	/**
+	 * Creates the nodes of the lines, and releases the arrays. If the file
+	 * is open, the occurrences get positions in its buffer.
+	 */
+	void materialize()
+	{
+		if(materialized)
+			return;
+		materialized = true;
+
+		Buffer buffer = jEdit.getBufferManager().getBuffer(getFilePath())
+			.orElse(null);
+		if(buffer != null && (!buffer.isLoaded() || buffer.isTemporary()))
+			buffer = null;
+
+		for(int i = 0; i < lineCount; i++)
+		{
+			HyperSearchResult result = new HyperSearchResult(
+				getFilePath(),lines[i],lineTexts[i]);
+			int last = i + 1 < lineCount ? firstOccurs[i + 1] : occurCount;
+			for(int j = firstOccurs[i]; j < last; j++)
+			{
+				if(patterns != null && patterns[j] != null)
+					result.addOccur(occurStarts[j],occurEnds[j],patterns[j]);
+				else
+					result.addOccur(occurStarts[j],occurEnds[j]);
+			}
+			if(buffer != null)
+				result.bufferOpened(buffer);
+			super.insert(new DefaultMutableTreeNode(result,false),i);
+		}
+
+		lines = firstOccurs = occurStarts = occurEnds = null;
+		lineTexts = patterns = null;
+	} //}}}
+
+	//{{{ DefaultMutableTreeNode overrides
+
+	//{{{ getChildCount() method
+	@Override
+	public int getChildCount()
+	{
+		return materialized ? super.getChildCount() : lineCount;
+	} //}}}
+
+	//{{{ getChildAt() method
+	@Override
+	public TreeNode getChildAt(int index)
+	{
+		materialize();
+		return super.getChildAt(index);
+	} //}}}
+
+	//{{{ children() method
+	@Override
+	public Enumeration<TreeNode> children()
+	{
+		materialize();
+		return super.children();
+	} //}}}
+
+	//{{{ getIndex() method
+	@Override
+	public int getIndex(TreeNode child)
+	{
+		materialize();
+		return super.getIndex(child);
+	} //}}}
+
+	//{{{ insert() method
+	@Override
+	public void insert(MutableTreeNode child, int index)
+	{
+		materialize();
+		super.insert(child,index);
+	} //}}}
+
+	//{{{ remove() method
+	@Override
+	public void remove(int index)
+	{
+		materialize();
+		super.remove(index);
+	} //}}}
+
+	//{{{ removeAllChildren() method
+	@Override
+	public void removeAllChildren()
+	{
+		if(!materialized)
+		{
+			materialized = true;
+			lines = firstOccurs = occurStarts = occurEnds = null;
+			lineTexts = patterns = null;
+		}
+		super.removeAllChildren();
+	} //}}}
+
+	//}}}
+
+	//{{{ Private members
+	private static final long serialVersionUID = 1L;
+
+	private boolean materialized;
+
+	/** For each line with occurrences: its number, its text, and the
+	 * index of its first occurrence. */
+	private int lineCount;
+	private int[] lines;
+	private String[] lineTexts;
+	private int[] firstOccurs;
+
+	private int occurCount;
+	private int[] occurStarts;
+	private int[] occurEnds;
+	/** The literals found when several are searched for, or null. */
+	private String[] patterns;
+	//}}}
+}
@@ -23,6 +23,17 @@
 package org.gjt.sp.jedit.search;
 
 //{{{ Imports
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.swing.tree.*;
 import javax.swing.*;
 
@@ -32,6 +43,8 @@ import org.gjt.sp.jedit.Buffer;
 import org.gjt.sp.jedit.GUIUtilities;
 import org.gjt.sp.jedit.jEdit;
 import org.gjt.sp.jedit.View;
+import org.gjt.sp.jedit.buffer.JEditBuffer;
+import org.gjt.sp.jedit.io.VFSManager;
 import org.gjt.sp.util.*;
 //}}}
 
@@ -78,6 +91,16 @@ class HyperSearchRequest extends Task
 		}
 
 		setMaximum(fileset.getFileCount(view));
+		if(selection == null && fileset instanceof DirectoryListSet)
+		{
+			String[] candidates = TrigramIndex.narrow(
+				(DirectoryListSet)fileset, files, matcher);
+			if(candidates != files)
+			{
+				files = candidates;
+				setMaximum(files.length);
+			}
+		}
 
 		// to minimize synchronization and stuff like that, we only
 		// show a status message at most twice a second
@@ -95,55 +118,7 @@ class HyperSearchRequest extends Task
 			}
 			else
 			{
-				int current = 0;
-
-				long lastStatusTime = 0L;
-				int resultCount = 0;
-				boolean asked = false;
-				int maxResults = jEdit.getIntegerProperty("hypersearch.maxWarningResults");
-				for(int i = 0; i < files.length; i++)
-				{
-					if(Thread.currentThread().isInterrupted())
-					{
-						Log.log(Log.MESSAGE, this, "Search stopped by user action (stop button)");
-						break;
-					}
-					if (!asked && resultCount > maxResults && maxResults != 0)
-					{
-						Log.log(Log.DEBUG, this, "Search in progress, " + resultCount +
-									 " occurrences found, asking the user to stop");
-						asked = true;
-						int ret = GUIUtilities.confirm(view, "hypersearch.tooManyResults",
-									       new Object[]{resultCount},
-									       JOptionPane.YES_NO_OPTION,
-									       JOptionPane.QUESTION_MESSAGE);
-						if (ret == JOptionPane.YES_OPTION)
-						{
-							Log.log(Log.MESSAGE, this, "Search stopped by user action");
-							break;
-						}
-					}
-					String file = files[i];
-					current++;
-
-					long currentTime = System.currentTimeMillis();
-					if(currentTime - lastStatusTime > 250L)
-					{
-						setValue(current);
-						lastStatusTime = currentTime;
-						results.setSearchStatus(searchingCaption + file);
-					}
-
-					Buffer buffer = jEdit.openTemporary(null,null,file,false);
-					if(buffer != null)
-					{
-						// Wait for the buffer to load
-						if(!buffer.isLoaded())
-							TaskManager.instance.waitForIoTasks();
-
-						resultCount += doHyperSearch(buffer, 0, buffer.getLength());
-					}
-				}
+				int resultCount = searchFiles(files, searchingCaption);
 				Log.log(Log.MESSAGE, this, resultCount +" OCCURENCES");
 			}
 		}
@@ -160,6 +135,7 @@ class HyperSearchRequest extends Task
 		}
 		finally
 		{
+			flushResults();
 			ThreadUtilities.runInDispatchThread(new Runnable()
 			{
 				public void run()
@@ -180,6 +156,8 @@ class HyperSearchRequest extends Task
 	private final Selection[] selection;
 	private final String searchString;
 	private DefaultMutableTreeNode selectNode;
+	/** The file nodes not handed to the results window yet. */
+	private List<DefaultMutableTreeNode> pendingNodes = new ArrayList<>();
 	//}}}
 
 	//{{{ searchInSelection() method
@@ -218,22 +196,216 @@ class HyperSearchRequest extends Task
 		return resultCount;
 	} //}}}
 
+	//{{{ searchFiles() method
+	/**
+	 * Searches the files with a pool of worker threads. Results are
+	 * collected in the order of the file set, and only a few files are
+	 * searched ahead of the one being collected, so that a large file set
+	 * does not pile up results in memory while the user is asked whether
+	 * to go on.
+	 */
+	private int searchFiles(String[] files, String searchingCaption)
+		throws Exception
+	{
+		int threads = jEdit.getIntegerProperty("hypersearch.threads", 0);
+		if (threads <= 0)
+			threads = Runtime.getRuntime().availableProcessors();
+		AtomicInteger threadIDs = new AtomicInteger();
+		ExecutorService workers = Executors.newFixedThreadPool(threads, r ->
+		{
+			Thread t = new Thread(r, "HyperSearch Worker #"
+				+ threadIDs.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+		ThreadLocal<SearchMatcher> matchers = ThreadLocal.withInitial(matcher::copy);
+		BytePrefilter prefilter = BytePrefilter.create(matcher);
+		AtomicInteger skipped = new AtomicInteger();
+
+		JEditTextArea textArea = jEdit.getActiveView().getTextArea();
+		JEditBuffer caretBuffer = textArea.getBuffer();
+		int caretLine = textArea.getCaretLine();
+
+		int lookAhead = threads * 4;
+		Deque<Future<FileResult>> pending = new ArrayDeque<>();
+		int submitted = 0;
+
+		long lastStatusTime = 0L;
+		int resultCount = 0;
+		boolean asked = false;
+		int maxResults = jEdit.getIntegerProperty("hypersearch.maxWarningResults");
+		try
+		{
+			for(int i = 0; i < files.length; i++)
+			{
+				while(submitted < files.length && submitted - i < lookAhead)
+				{
+					String file = files[submitted++];
+					pending.add(workers.submit(() -> searchFile(
+						matchers.get(), prefilter, skipped, file,
+						caretBuffer, caretLine)));
+				}
+
+				if(Thread.currentThread().isInterrupted())
+				{
+					Log.log(Log.MESSAGE, this, "Search stopped by user action (stop button)");
+					break;
+				}
+				if (!asked && resultCount > maxResults && maxResults != 0)
+				{
+					Log.log(Log.DEBUG, this, "Search in progress, " + resultCount +
+								 " occurrences found, asking the user to stop");
+					asked = true;
+					int ret = GUIUtilities.confirm(view, "hypersearch.tooManyResults",
+								       new Object[]{resultCount},
+								       JOptionPane.YES_NO_OPTION,
+								       JOptionPane.QUESTION_MESSAGE);
+					if (ret == JOptionPane.YES_OPTION)
+					{
+						Log.log(Log.MESSAGE, this, "Search stopped by user action");
+						break;
+					}
+				}
+
+				long currentTime = System.currentTimeMillis();
+				if(currentTime - lastStatusTime > 250L)
+				{
+					setValue(i + 1);
+					lastStatusTime = currentTime;
+					results.setSearchStatus(searchingCaption + files[i]);
+					flushResults();
+				}
+
+				FileResult result;
+				try
+				{
+					result = pending.remove().get();
+				}
+				catch(InterruptedException e)
+				{
+					Log.log(Log.MESSAGE, this, "Search stopped by user action (stop button)");
+					break;
+				}
+				catch(ExecutionException e)
+				{
+					Throwable cause = e.getCause();
+					if(cause instanceof Exception)
+						throw (Exception)cause;
+					throw e;
+				}
+				if(result != null)
+					resultCount += addResult(result);
+			}
+		}
+		finally
+		{
+			workers.shutdownNow();
+		}
+		if(prefilter != null)
+		{
+			Log.log(Log.DEBUG, this, prefilter + " skipped " + skipped
+				+ " of " + files.length + " files");
+		}
+		return resultCount;
+	} //}}}
+
+	//{{{ searchFile() method
+	/**
+	 * Searches one file, on a worker thread. Open buffers are searched
+	 * as they are in memory; other local files are decoded directly, and
+	 * only files on other file systems are loaded into a temporary buffer.
+	 * Local files the prefilter rules out are not decoded at all.
+	 * @return the results, or null if the file could not be read
+	 */
+	private FileResult searchFile(SearchMatcher matcher,
+		BytePrefilter prefilter, AtomicInteger skipped, String path,
+		JEditBuffer caretBuffer, int caretLine) throws Exception
+	{
+		Buffer buffer = jEdit.getBufferManager().getBuffer(path).orElse(null);
+		if(buffer == null
+			&& VFSManager.getVFSForPath(path) == VFSManager.getFileVFS())
+		{
+			DecodedFile file;
+			try
+			{
+				file = DecodedFile.read(path,prefilter);
+			}
+			catch(IOException e)
+			{
+				Log.log(Log.ERROR,this,e);
+				VFSManager.error(view,path,"ioerror.read-error",
+					new String[] { e.toString() });
+				return null;
+			}
+			FileResult result = new FileResult(path,true);
+			if(file == null)
+				skipped.incrementAndGet();
+			else
+				doHyperSearch(matcher,file,result);
+			return result;
+		}
+
+		if(buffer == null)
+			buffer = jEdit.openTemporary(null,null,path,false);
+		if(buffer == null)
+			return null;
+
+		// Wait for the buffer to load
+		if(!buffer.isLoaded())
+			TaskManager.instance.waitForIoTasks();
+
+		FileResult result = new FileResult(buffer.getPath(),
+			buffer.isTemporary());
+		doHyperSearch(matcher,buffer,0,buffer.getLength(),result,
+			buffer == caretBuffer ? caretLine : -1);
+		return result;
+	} //}}}
+
+	//{{{ addResult() method
+	private int addResult(FileResult result)
+	{
+		result.fileNode.setCount(result.count);
+		if(result.count != 0)
+		{
+			if(result.node instanceof HyperSearchFileTreeNode)
+				((HyperSearchFileTreeNode)result.node).trimToSize();
+			pendingNodes.add(result.node);
+			if(result.selectNode != null)
+				selectNode = result.selectNode;
+		}
+		return result.count;
+	} //}}}
+
+	//{{{ flushResults() method
+	/**
+	 * Hands the file nodes found since the last call to the results
+	 * window, which shows them while the search goes on.
+	 */
+	private void flushResults()
+	{
+		if(pendingNodes.isEmpty())
+			return;
+		List<DefaultMutableTreeNode> nodes = pendingNodes;
+		pendingNodes = new ArrayList<>();
+		ThreadUtilities.runInDispatchThread(() ->
+			results.addResults(rootSearchNode,nodes));
+	} //}}}
+
 	//{{{ doHyperSearch() method
 	private int doHyperSearch(Buffer buffer, int start, int end)
 		throws Exception
 	{
-		if(matcher instanceof BoyerMooreSearchMatcher)
+		if(matcher instanceof BoyerMooreSearchMatcher
+			|| matcher instanceof AhoCorasickSearchMatcher)
 			setCancellable(true);
 		else
 			setCancellable(false);
 
-		HyperSearchFileNode hyperSearchFileNode = new HyperSearchFileNode(buffer.getPath());
-		DefaultMutableTreeNode bufferNode = new DefaultMutableTreeNode(hyperSearchFileNode);
-
-		int resultCount = doHyperSearch(buffer,start,end,bufferNode);
-		hyperSearchFileNode.setCount(resultCount);
-		if(resultCount != 0)
-			rootSearchNode.insert(bufferNode,rootSearchNode.getChildCount());
+		JEditTextArea textArea = jEdit.getActiveView().getTextArea();
+		int caretLine = textArea.getBuffer() == buffer ? textArea.getCaretLine() : -1;
+		FileResult result = new FileResult(buffer.getPath(),false);
+		doHyperSearch(matcher,buffer,start,end,result,caretLine);
+		int resultCount = addResult(result);
 
 		setCancellable(true);
 
@@ -241,18 +413,17 @@ class HyperSearchRequest extends Task
 	} //}}}
 
 	//{{{ doHyperSearch() method
-	private int doHyperSearch(Buffer buffer, int start, int end,
-		DefaultMutableTreeNode bufferNode)
+	private static void doHyperSearch(SearchMatcher matcher, Buffer buffer,
+		int start, int end, FileResult result, int caretLine)
 	{
 		if(matcher.wholeWord)
 		{
-			buffer.setMode();
+			// open buffers already have their mode
+			if(buffer.isTemporary())
+				buffer.setMode();
 			String noWordSep = buffer.getStringProperty("noWordSep");
 			matcher.setNoWordSep(noWordSep);
 		}
-		int resultCount = 0;
-		JEditTextArea textArea = jEdit.getActiveView().getTextArea();
-		int caretLine = textArea.getBuffer() == buffer ? textArea.getCaretLine() : -1;
 		try
 		{
 			buffer.readLock();
@@ -263,6 +434,7 @@ class HyperSearchRequest extends Task
 			int offset = start;
 
 			HyperSearchResult lastResult = null;
+			int lastLine = -1;
 			for(int counter = 0; ; counter++)
 			{
 				boolean startOfLine = buffer.getLineStartOffset(
@@ -282,30 +454,127 @@ class HyperSearchRequest extends Task
 
 				int newLine = buffer.getLineOfOffset(
 					offset + match.start);
-				if(lastResult == null || lastResult.line != newLine)
+				if(result.node instanceof HyperSearchFileTreeNode)
 				{
-					lastResult = new HyperSearchResult(
-						buffer,newLine);
-					DefaultMutableTreeNode child = new DefaultMutableTreeNode(
-						lastResult, false);
-					if (lastResult.line == caretLine)
-						selectNode = child;
-					bufferNode.add(child);
+					((HyperSearchFileTreeNode)result.node).addOccur(newLine,
+						newLine == lastLine ? null : buffer.getLineText(newLine),
+						offset + match.start,offset + match.end,
+						getLiteral(matcher,match.pattern));
 				}
-
-				lastResult.addOccur(offset + match.start,
-					offset + match.end);
+				else
+				{
+					if(lastResult == null || lastResult.line != newLine)
+					{
+						lastResult = new HyperSearchResult(
+							buffer,newLine);
+						DefaultMutableTreeNode child = new DefaultMutableTreeNode(
+							lastResult, false);
+						if (lastResult.line == caretLine)
+							result.selectNode = child;
+						result.node.add(child);
+					}
+					addOccur(matcher,lastResult,offset + match.start,
+						offset + match.end,match.pattern);
+				}
+				lastLine = newLine;
 
 				offset += match.end;
-				resultCount++;
+				result.count++;
 			}
 		}
 		finally
 		{
 			buffer.readUnlock();
 		}
+	} //}}}
 
-		return resultCount;
+	//{{{ doHyperSearch() method
+	/**
+	 * Searches a file that is not open; the occurrences are given as
+	 * offsets, which get positions once the file is opened.
+	 */
+	private static void doHyperSearch(SearchMatcher matcher, DecodedFile file,
+		FileResult result) throws InterruptedException
+	{
+		if(matcher.wholeWord)
+			matcher.setNoWordSep(file.getNoWordSep());
+
+		HyperSearchFileTreeNode node = (HyperSearchFileTreeNode)result.node;
+		int end = file.getLength();
+		int offset = 0;
+		int lastLine = -1;
+		for(int counter = 0; ; counter++)
+		{
+			boolean startOfLine = file.getLineStartOffset(
+				file.getLineOfOffset(offset)) == offset;
+
+			SearchMatcher.Match match = matcher.nextMatch(
+				file.getSegment(offset, end - offset),
+				startOfLine,true,counter == 0,false);
+			if(match == null)
+				break;
+
+			int newLine = file.getLineOfOffset(offset + match.start);
+			node.addOccur(newLine,
+				newLine == lastLine ? null : file.getLineText(newLine),
+				offset + match.start,offset + match.end,
+				getLiteral(matcher,match.pattern));
+			lastLine = newLine;
+
+			offset += match.end;
+			result.count++;
+		}
+	} //}}}
+
+	//{{{ addOccur() method
+	/**
+	 * Adds an occurrence, tagged with the literal that matched when
+	 * several are searched for at once.
+	 */
+	private static void addOccur(SearchMatcher matcher,
+		HyperSearchResult result, int start, int end, int pattern)
+	{
+		String literal = getLiteral(matcher,pattern);
+		if(literal != null)
+			result.addOccur(start,end,literal);
+		else
+			result.addOccur(start,end);
+	} //}}}
+
+	//{{{ getLiteral() method
+	/**
+	 * Returns the literal that matched when several are searched for at
+	 * once, or null.
+	 */
+	private static String getLiteral(SearchMatcher matcher, int pattern)
+	{
+		if(pattern != -1 && matcher instanceof AhoCorasickSearchMatcher)
+			return ((AhoCorasickSearchMatcher)matcher).getLiteral(pattern);
+		return null;
+	} //}}}
+
+	//{{{ FileResult class
+	/** The occurrences found in one file. */
+	private static class FileResult
+	{
+		final HyperSearchFileNode fileNode;
+		final DefaultMutableTreeNode node;
+		int count;
+		DefaultMutableTreeNode selectNode;
+
+		/**
+		 * @param compact Whether to keep the occurrences in a
+		 * {@link HyperSearchFileTreeNode}; this is done for files that are
+		 * not open, whose occurrences need no position
+		 */
+		FileResult(String path, boolean compact)
+		{
+			fileNode = new HyperSearchFileNode(path);
+			if(compact)
+				node = new HyperSearchFileTreeNode(fileNode);
+			else
+				node = new DefaultMutableTreeNode(fileNode);
+		}
 	} //}}}
 
 	//}}}
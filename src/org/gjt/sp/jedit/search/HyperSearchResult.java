@@ -23,6 +23,9 @@
 package org.gjt.sp.jedit.search;
 
 //{{{ Imports
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.swing.text.Position;
 
 import org.gjt.sp.jedit.msg.BufferUpdate;
@@ -44,6 +47,13 @@ public class HyperSearchResult implements HyperSearchNode
 	public String str; // cached for speed
 	public Occur occur;
 	public int occurCount;
+	/**
+	 * The patterns found on the line, when several are searched for at
+	 * once, or null. They are shown after the line by the HyperSearch
+	 * results.
+	 * @since jEdit 5.7pre1
+	 */
+	public List<String> patterns;
 
 	//{{{ getBuffer() method
 	public Buffer getBuffer(View view)
@@ -110,6 +120,19 @@ public class HyperSearchResult implements HyperSearchNode
 			.replace('\t',' ').trim();
 	} //}}}
 
+	//{{{ HyperSearchResult constructor
+	/**
+	 * A result in a file that is not open. Occurrences are kept as
+	 * offsets until {@link #bufferOpened(Buffer)} is called.
+	 */
+	HyperSearchResult(String path, int line, String lineText)
+	{
+		this.path = path;
+		this.line = line;
+
+		str = (line + 1) + ": " + lineText.replace('\t',' ').trim();
+	} //}}}
+
 	//{{{ bufferOpened() method
 	void bufferOpened(Buffer buffer)
 	{
@@ -143,6 +166,20 @@ public class HyperSearchResult implements HyperSearchNode
 		occurCount++;
 	} //}}}
 
+	//{{{ addOccur() method
+	/**
+	 * Adds an occurrence of one of several patterns searched for at once.
+	 * @param pattern The pattern that matched
+	 */
+	void addOccur(int start, int end, String pattern)
+	{
+		addOccur(start,end);
+		if(patterns == null)
+			patterns = new ArrayList<>();
+		if(!patterns.contains(pattern))
+			patterns.add(pattern);
+	} //}}}
+
 	//{{{ pathEquals() method
 	/**
 	 * @param path A canonical path
@@ -187,21 +187,41 @@ public class HyperSearchResults extends JPanel implements DefaultFocusComponent
 	private void visitBuffers(final ResultVisitor visitor, final Buffer buffer)
 	{
 		// impl note: since multi-level hierarchies now allowed,
-		// use traverseNodes to process HyperSearchResult nodes
-		traverseNodes(resultTreeRoot, new TreeNodeCallbackAdapter()
+		// process the HyperSearchResult nodes at any depth
+		visitBuffers(resultTreeRoot, visitor, buffer);
+	} //}}}
+
+	//{{{ visitBuffers() method
+	private static void visitBuffers(DefaultMutableTreeNode node,
+		ResultVisitor visitor, Buffer buffer)
+	{
+		Object userObject = node.getUserObject();
+		if (userObject instanceof HyperSearchResult)
 		{
-			@Override
-			public boolean processNode(DefaultMutableTreeNode node)
+			HyperSearchResult result = (HyperSearchResult) userObject;
+			if (result.pathEquals(buffer.getSymlinkPath()))
+				visitor.visit(buffer, result);
+			return;
+		}
+		if (node instanceof HyperSearchFileTreeNode
+			&& !((HyperSearchFileTreeNode) node).isMaterialized())
+		{
+			// the occurrences only hold offsets, which must get
+			// positions before the buffer is edited
+			HyperSearchFileTreeNode fileNode = (HyperSearchFileTreeNode) node;
+			if (visitor instanceof BufferLoadedVisitor
+				&& buffer.getSymlinkPath().equals(MiscUtilities
+					.resolveSymlinks(fileNode.getFilePath())))
 			{
-				Object userObject = node.getUserObject();
-				if (!(userObject instanceof HyperSearchResult))
-					return true;
-				HyperSearchResult result = (HyperSearchResult) userObject;
-				if (result.pathEquals(buffer.getSymlinkPath()))
-					visitor.visit(buffer, result);
-				return true;
+				fileNode.materialize();
 			}
-		});
+			return;
+		}
+		for (int i = 0; i < node.getChildCount(); i++)
+		{
+			visitBuffers((DefaultMutableTreeNode) node.getChildAt(i),
+				visitor, buffer);
+		}
 	} //}}}
 
 	//{{{ handleBufferUpdate() method
@@ -279,6 +299,40 @@ public class HyperSearchResults extends JPanel implements DefaultFocusComponent
 		}
 	} //}}}
 
+	//{{{ addResults() method
+	/**
+	 * Adds file nodes to the result node of a search in progress, so that
+	 * the results show up as they are found. The result node is shown
+	 * with the first ones.
+	 * @param searchNode the result node
+	 * @param fileNodes the file nodes to add
+	 * @since jEdit 5.7pre1
+	 */
+	void addResults(DefaultMutableTreeNode searchNode,
+		List<DefaultMutableTreeNode> fileNodes)
+	{
+		boolean first = searchNode.getParent() == null
+			&& searchNode.getChildCount() == 0;
+		int[] indices = new int[fileNodes.size()];
+		for (int i = 0; i < indices.length; i++)
+		{
+			indices[i] = searchNode.getChildCount();
+			searchNode.add(fileNodes.get(i));
+		}
+
+		if (first)
+		{
+			streamedNodes.add(searchNode);
+			showSearchNode(searchNode);
+		}
+		else if (searchNode.getParent() == resultTreeRoot)
+		{
+			resultTreeModel.nodesWereInserted(searchNode, indices);
+			expandFileNodes(fileNodes);
+		}
+		// else the user has removed the result node meanwhile
+	} //}}}
+
 	//{{{ searchDone() method
 	/**
 	 * @param searchNode the result node
@@ -303,27 +357,12 @@ public class HyperSearchResults extends JPanel implements DefaultFocusComponent
 			@Override
 			public void run()
 			{
-				if(!multiStatus)
-				{
-					for(int i = 0; i < resultTreeRoot.getChildCount(); i++)
-					{
-						resultTreeRoot.remove(0);
-					}
-				}
-
-				resultTreeRoot.add(searchNode);
-				resultTreeModel.reload(resultTreeRoot);
-
+				// the results of a HyperSearchRequest are already shown
+				if (!streamedNodes.remove(searchNode))
+					showSearchNode(searchNode);
+				else if (searchNode.getParent() != resultTreeRoot)
+					return;
 
-				for (int i = 0; i < nodeCount; i++)
-				{
-					TreePath lastNode = new TreePath(
-						((DefaultMutableTreeNode)
-						searchNode.getChildAt(i))
-						.getPath());
-
-					resultTree.expandPath(lastNode);
-				}
 				TreePath treePath;
 				if (selectNode == null)
 				{
@@ -361,6 +400,57 @@ public class HyperSearchResults extends JPanel implements DefaultFocusComponent
 	private final RolloverButton stop;
 	private boolean multiStatus;
 
+	/** The result nodes of the searches still adding results. */
+	private final Set<DefaultMutableTreeNode> streamedNodes = new HashSet<>();
+	/** The number of lines shown in expanded file nodes, for the last
+	 * result node. */
+	private int expandedLines;
+
+	//{{{ showSearchNode() method
+	/**
+	 * Adds a result node to the tree, replacing the previous results
+	 * unless multiple results are kept, and expands its first files.
+	 */
+	private void showSearchNode(DefaultMutableTreeNode searchNode)
+	{
+		if(!multiStatus)
+			resultTreeRoot.removeAllChildren();
+
+		resultTreeRoot.add(searchNode);
+		resultTreeModel.reload(resultTreeRoot);
+
+		resultTree.expandPath(new TreePath(new Object[] {
+			resultTreeRoot, searchNode }));
+		expandedLines = 0;
+		List<DefaultMutableTreeNode> fileNodes = new ArrayList<>();
+		for (int i = 0; i < searchNode.getChildCount(); i++)
+			fileNodes.add((DefaultMutableTreeNode) searchNode.getChildAt(i));
+		expandFileNodes(fileNodes);
+	} //}}}
+
+	//{{{ expandFileNodes() method
+	/**
+	 * Expands file nodes of the last result node, until they show
+	 * <code>hypersearch.maxExpandedResults</code> lines. The lines of
+	 * the files left collapsed are only created if they are expanded.
+	 */
+	private void expandFileNodes(List<DefaultMutableTreeNode> fileNodes)
+	{
+		int maxLines = jEdit.getIntegerProperty("hypersearch.maxExpandedResults", 2000);
+		for (DefaultMutableTreeNode node : fileNodes)
+		{
+			int lines = node.getChildCount();
+			if (maxLines > 0 && expandedLines + lines > maxLines)
+			{
+				// keep the files in order
+				expandedLines = maxLines;
+				return;
+			}
+			expandedLines += lines;
+			resultTree.expandPath(new TreePath(node.getPath()));
+		}
+	} //}}}
+
 	//{{{ updateHighlightStatus() method
 	private void updateHighlightStatus()
 	{
@@ -978,7 +1068,7 @@ public class HyperSearchResults extends JPanel implements DefaultFocusComponent
 				setFont(boldFont);
 
 				CountNodes countNodes = new CountNodes();
-				traverseNodes(node, countNodes);
+				countNodes.countFiles(node);
 
 				setText(jEdit.getProperty("hypersearch-results.result-caption",
 							  new Object[] {
@@ -1007,14 +1097,52 @@ public class HyperSearchResults extends JPanel implements DefaultFocusComponent
 			else
 			{
 				setFont(plainFont);
+				if (node.getUserObject() instanceof HyperSearchResult)
+				{
+					List<String> patterns =
+						((HyperSearchResult) node.getUserObject()).patterns;
+					if (patterns != null)
+						setText(appendPatterns(getText(), patterns));
+				}
 			}
 		} //}}}
 
+		//{{{ appendPatterns() method
+		/**
+		 * Shows which of several patterns searched for at once are on
+		 * a line, after the text that may have been highlighted.
+		 */
+		private static String appendPatterns(String text, List<String> patterns)
+		{
+			String suffix = " [" + String.join(", ", patterns) + ']';
+			String htmlEnd = "</body></html>";
+			if (!text.endsWith(htmlEnd))
+				return text + suffix;
+			StringBuilder sb = new StringBuilder(text);
+			sb.setLength(text.length() - htmlEnd.length());
+			HtmlUtilities.appendString2html(sb, suffix);
+			return sb.append(htmlEnd).toString();
+		} //}}}
+
 		//{{{ CountNodes class
 		static class CountNodes implements HyperSearchTreeNodeCallback
 		{
 			int bufferCount;
 			int resultCount;
+
+			/**
+			 * Counts the files under a node, without going into them,
+			 * which would create the lines of the compact ones.
+			 */
+			void countFiles(DefaultMutableTreeNode node)
+			{
+				processNode(node);
+				if (node.getUserObject() instanceof HyperSearchFileNode)
+					return;
+				for (int i = 0; i < node.getChildCount(); i++)
+					countFiles((DefaultMutableTreeNode) node.getChildAt(i));
+			}
+
 			@Override
 			public boolean processNode(DefaultMutableTreeNode node)
 			{
@@ -0,0 +1,430 @@
+/*
+ * IncrementalMatches.java - The occurrences of an incremental search
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.search;
+
+//{{{ Imports
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.gjt.sp.jedit.buffer.BufferAdapter;
+import org.gjt.sp.jedit.buffer.JEditBuffer;
+import org.gjt.sp.jedit.textarea.TextArea;
+import org.gjt.sp.jedit.textarea.TextAreaExtension;
+import org.gjt.sp.jedit.textarea.TextAreaPainter;
+import org.gjt.sp.util.ThreadUtilities;
+//}}}
+
+/**
+ * The occurrences of the literal typed in the {@link SearchBar}.<p>
+ *
+ * The offsets of all occurrences are kept for each prefix of the search
+ * string, so that appending a character only has to check the occurrences
+ * of the previous prefix, and removing one restores them. They are computed
+ * by a background thread and highlighted in the text area as they become
+ * available. Any change to the buffer discards them.<p>
+ *
+ * All methods must be called from the event dispatch thread.
+ *
+ * @since jEdit 5.7pre1
+ */
+class IncrementalMatches
+{
+	/** Returned by {@link #find(TextArea,JEditBuffer,String,boolean,int,boolean)}
+	 * when the occurrences are not known yet. */
+	static final int UNKNOWN = -2;
+
+	//{{{ setLiteral() method
+	/**
+	 * Sets the string being searched for in the buffer of a text area.
+	 * @param textArea The text area
+	 * @param literal The search string
+	 * @param ignoreCase Whether case is ignored
+	 */
+	void setLiteral(TextArea textArea, String literal, boolean ignoreCase)
+	{
+		if(textArea != this.textArea || textArea.getBuffer() != buffer
+			|| ignoreCase != this.ignoreCase)
+		{
+			clear();
+			this.textArea = textArea;
+			this.ignoreCase = ignoreCase;
+			buffer = textArea.getBuffer();
+			buffer.addBufferListener(bufferHandler);
+			textArea.getPainter().addExtension(
+				TextAreaPainter.BELOW_SELECTION_LAYER,highlight);
+		}
+
+		String folded = fold(literal);
+		while(!levels.isEmpty() && !folded.startsWith(levels.peek().literal))
+			levels.pop().cancelled = true;
+
+		Level parent = levels.peek();
+		if(parent == null || !parent.literal.equals(folded))
+		{
+			Level level = new Level(folded,parent);
+			levels.push(level);
+			JEditBuffer buffer = this.buffer;
+			getWorker().execute(() -> compute(level,textArea,buffer,
+				ignoreCase));
+		}
+		textArea.getPainter().repaint();
+	} //}}}
+
+	//{{{ clear() method
+	/**
+	 * Forgets the occurrences and removes their highlight.
+	 */
+	void clear()
+	{
+		reset();
+		if(textArea != null)
+		{
+			textArea.getPainter().removeExtension(highlight);
+			textArea.getPainter().repaint();
+			buffer.removeBufferListener(bufferHandler);
+			textArea = null;
+			buffer = null;
+		}
+	} //}}}
+
+	//{{{ find() method
+	/**
+	 * Finds the next occurrence, as
+	 * {@link SearchAndReplace#find(org.gjt.sp.jedit.View,org.gjt.sp.jedit.Buffer,int,boolean,boolean)}
+	 * would, from the occurrences known so far.
+	 * @param textArea The text area searched in
+	 * @param buffer The buffer searched in
+	 * @param literal The search string
+	 * @param ignoreCase Whether case is ignored
+	 * @param start The offset to search from
+	 * @param reverse Whether to search backwards
+	 * @return the start offset of the occurrence, -1 if there is none, or
+	 * {@link #UNKNOWN} if it cannot be told yet, or if the occurrences
+	 * known are those of another text area or buffer
+	 */
+	int find(TextArea textArea, JEditBuffer buffer, String literal,
+		boolean ignoreCase, int start, boolean reverse)
+	{
+		Level level = levels.peek();
+		if(level == null || textArea != this.textArea
+			|| buffer != this.buffer || textArea.getBuffer() != buffer
+			|| ignoreCase != this.ignoreCase
+			|| !level.literal.equals(fold(literal)) || level.overflow)
+			return UNKNOWN;
+
+		// read completion before the size, and the size before the
+		// array, see Level
+		boolean complete = level.complete;
+		int size = level.size;
+		int[] positions = level.positions;
+		int len = literal.length();
+		if(reverse)
+		{
+			if(!complete)
+				return UNKNOWN;
+			int index = firstIndex(positions,size,start - len + 1) - 1;
+			return index < 0 ? -1 : positions[index];
+		}
+		else
+		{
+			int index = firstIndex(positions,size,start);
+			if(index < size)
+				return positions[index];
+			return complete ? -1 : UNKNOWN;
+		}
+	} //}}}
+
+	//{{{ Private members
+
+	/** Past this many occurrences, a prefix is not worth narrowing. */
+	private static final int MAX_POSITIONS = 1000000;
+
+	/** The number of offsets checked with the buffer locked. */
+	private static final int CHUNK_SIZE = 65536;
+
+	private final Deque<Level> levels = new ArrayDeque<>();
+	private final Highlight highlight = new Highlight();
+	private final BufferHandler bufferHandler = new BufferHandler();
+	private ExecutorService worker;
+	private TextArea textArea;
+	private JEditBuffer buffer;
+	private boolean ignoreCase;
+
+	//{{{ reset() method
+	private void reset()
+	{
+		for(Level level : levels)
+			level.cancelled = true;
+		levels.clear();
+	} //}}}
+
+	//{{{ fold() method
+	/**
+	 * Folds the case as {@link BoyerMooreSearchMatcher} does.
+	 */
+	private String fold(String literal)
+	{
+		if(!ignoreCase)
+			return literal;
+		char[] chars = literal.toCharArray();
+		for(int i = 0; i < chars.length; i++)
+			chars[i] = Character.toUpperCase(chars[i]);
+		return new String(chars);
+	} //}}}
+
+	//{{{ getWorker() method
+	/**
+	 * The prefixes are computed one after the other by a single thread,
+	 * so that a prefix is complete when the next one is narrowed from it.
+	 */
+	private ExecutorService getWorker()
+	{
+		if(worker == null)
+		{
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(1,1,
+				30L,TimeUnit.SECONDS,new LinkedBlockingQueue<>(),r ->
+			{
+				Thread t = new Thread(r, "Incremental Search");
+				t.setDaemon(true);
+				return t;
+			});
+			executor.allowCoreThreadTimeOut(true);
+			worker = executor;
+		}
+		return worker;
+	} //}}}
+
+	//{{{ firstIndex() method
+	/**
+	 * Returns the index of the first position not less than offset.
+	 */
+	private static int firstIndex(int[] positions, int size, int offset)
+	{
+		int low = 0;
+		int high = size;
+		while(low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if(positions[mid] < offset)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	} //}}}
+
+	//{{{ compute() method
+	/**
+	 * Finds the occurrences of a prefix, on the worker thread.
+	 */
+	private static void compute(Level level, TextArea textArea,
+		JEditBuffer buffer, boolean ignoreCase)
+	{
+		Level parent = level.parent;
+		boolean narrow = parent != null && parent.complete && !parent.overflow
+			&& !parent.cancelled;
+		char[] literal = level.literal.toCharArray();
+		int from = narrow ? parent.literal.length() : 0;
+
+		// the levels are cancelled when the buffer changes
+		int count = narrow ? parent.size
+			: Math.max(0,buffer.getLength() - literal.length + 1);
+		int next = 0;
+		long lastRepaint = System.currentTimeMillis();
+		while(!level.cancelled)
+		{
+			buffer.readLock();
+			try
+			{
+				if(level.cancelled)
+					return;
+				int length = buffer.getLength();
+				CharSequence text = buffer.getSegment(0,length);
+				int last = length - literal.length;
+				if(narrow)
+				{
+					int end = Math.min(count,next + CHUNK_SIZE);
+					for(; next < end; next++)
+					{
+						int pos = parent.positions[next];
+						if(pos <= last && matches(text,pos,literal,from,
+							ignoreCase))
+							level.add(pos);
+					}
+				}
+				else
+				{
+					int end = Math.min(count,next + CHUNK_SIZE);
+					for(; next < end; next++)
+					{
+						if(next <= last && matches(text,next,literal,0,
+							ignoreCase))
+							level.add(next);
+					}
+				}
+			}
+			finally
+			{
+				buffer.readUnlock();
+			}
+
+			if(level.size > MAX_POSITIONS)
+			{
+				level.overflow = true;
+				break;
+			}
+			boolean done = next >= count;
+			if(done)
+				level.complete = true;
+			long now = System.currentTimeMillis();
+			if(done || now - lastRepaint > 100L)
+			{
+				lastRepaint = now;
+				ThreadUtilities.runInDispatchThread(() ->
+					textArea.getPainter().repaint());
+			}
+			if(done)
+				break;
+		}
+	} //}}}
+
+	//{{{ matches() method
+	private static boolean matches(CharSequence text, int pos,
+		char[] literal, int from, boolean ignoreCase)
+	{
+		for(int i = from; i < literal.length; i++)
+		{
+			char ch = text.charAt(pos + i);
+			if(ignoreCase)
+				ch = Character.toUpperCase(ch);
+			if(ch != literal[i])
+				return false;
+		}
+		return true;
+	} //}}}
+
+	//}}}
+
+	//{{{ Level class
+	/**
+	 * The occurrences of one prefix, in increasing order. They are added by
+	 * the worker thread and read by the event dispatch thread, which reads
+	 * the size before the array, so that it always sees an array holding
+	 * that many positions.
+	 */
+	private static class Level
+	{
+		final String literal;
+		/** The shorter prefix this one is narrowed from, or null. */
+		final Level parent;
+		volatile int[] positions = new int[16];
+		volatile int size;
+		volatile boolean complete;
+		volatile boolean overflow;
+		volatile boolean cancelled;
+
+		Level(String literal, Level parent)
+		{
+			this.literal = literal;
+			this.parent = parent;
+		}
+
+		void add(int pos)
+		{
+			int[] array = positions;
+			if(size == array.length)
+			{
+				int[] newArray = new int[array.length * 2];
+				System.arraycopy(array,0,newArray,0,size);
+				positions = array = newArray;
+			}
+			array[size] = pos;
+			size++;
+		}
+	} //}}}
+
+	//{{{ Highlight class
+	/**
+	 * Outlines the occurrences known so far in the visible lines.
+	 */
+	private class Highlight extends TextAreaExtension
+	{
+		@Override
+		public void paintValidLine(Graphics2D gfx, int screenLine,
+			int physicalLine, int start, int end, int y)
+		{
+			Level level = levels.peek();
+			if(level == null || textArea == null
+				|| textArea.getBuffer() != buffer)
+				return;
+
+			int size = level.size;
+			int[] positions = level.positions;
+			int len = level.literal.length();
+			TextAreaPainter painter = textArea.getPainter();
+			int height = Math.min(painter.getLineHeight(),
+				painter.getFontHeight());
+			y += Math.max(painter.getLineExtraSpacing(), 0);
+			gfx.setColor(painter.getStructureHighlightColor());
+
+			for(int i = firstIndex(positions,size,start - len + 1);
+				i < size && positions[i] < end; i++)
+			{
+				int pos = positions[i];
+				Point p1 = textArea.offsetToXY(Math.max(pos,start));
+				Point p2 = textArea.offsetToXY(Math.min(pos + len,end - 1));
+				if(p1 == null || p2 == null)
+					continue;
+				gfx.drawRect(p1.x,y,Math.max(p2.x - p1.x,1),height - 1);
+			}
+		}
+	} //}}}
+
+	//{{{ BufferHandler class
+	private class BufferHandler extends BufferAdapter
+	{
+		@Override
+		public void contentInserted(JEditBuffer buffer, int startLine,
+			int offset, int numLines, int length)
+		{
+			ThreadUtilities.runInDispatchThread(IncrementalMatches.this::reset);
+		}
+
+		@Override
+		public void contentRemoved(JEditBuffer buffer, int startLine,
+			int offset, int numLines, int length)
+		{
+			ThreadUtilities.runInDispatchThread(IncrementalMatches.this::reset);
+		}
+
+		@Override
+		public void bufferLoaded(JEditBuffer buffer)
+		{
+			ThreadUtilities.runInDispatchThread(IncrementalMatches.this::reset);
+		}
+	} //}}}
+}
@@ -21,6 +21,7 @@
 
 package org.gjt.sp.jedit.search;
 
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -83,10 +84,14 @@ public class PatternSearchMatcher extends SearchMatcher
 	 * <p>Reverse regex search is done by searching from the beginning to
 	 * just prior to the current match, so will be inefficient for large
 	 * buffers.</p>
+	 * <p>If every match contains a literal string and cannot span lines,
+	 * the literal is searched for first, and the expression is only run on
+	 * the lines where it occurs.</p>
 	 */
 	@Override
 	public SearchMatcher.Match nextMatch(CharSequence text, boolean start,
 		boolean end, boolean firstTime, boolean reverse)
+		throws InterruptedException
 	{
 		// "For the mean time, there is no way to automatically generate a sexeger"
 		//
@@ -122,7 +127,8 @@ public class PatternSearchMatcher extends SearchMatcher
 		}
 
 		Matcher match = re.matcher(text);
-		if (!match.find(matchStart)) {
+		LiteralFinder finder = new LiteralFinder(match, text, getLiteralMatcher());
+		if (!finder.find(matchStart)) {
 			// Check for special constructs, groups starting with (? are either pure, 
 			// non-capturing groups that do not capture text and do not count towards 
 			// the group total, or named-capturing group. Either way, need to remove
@@ -132,6 +138,7 @@ public class PatternSearchMatcher extends SearchMatcher
 			match = p.matcher(text);
 			if (!match.matches())
 				return null;
+			finder = new LiteralFinder(match, text, null);
 		}
 
 		// Special care for zero width matches. Without this care,
@@ -139,7 +146,7 @@ public class PatternSearchMatcher extends SearchMatcher
 		// search.
 		if (!reverse && !firstTime && match.start() == 0 && match.end() == 0)
 		{
-			if (!match.find())
+			if (!finder.find())
 				return null;
 		}
 
@@ -183,7 +190,7 @@ public class PatternSearchMatcher extends SearchMatcher
 
 			if (wholeWord && !isWholeWord(text, _start, _end))
 			{
-				if (!match.find())
+				if (!finder.find())
 					return null;
 				continue;
 			}
@@ -191,7 +198,7 @@ public class PatternSearchMatcher extends SearchMatcher
 			// For non-reversed searches, we break immediately
 			// to return the first match.  For reversed searches,
 			// we continue until no more matches are found
-			if (!reverse || !match.find())
+			if (!reverse || !finder.find())
 			{
 				// For reverse search, check for zero width match at
 				// the end of text.
@@ -297,6 +304,29 @@ public class PatternSearchMatcher extends SearchMatcher
         return re;
     } //}}}
     
+	//{{{ getPattern() method
+	String getPattern()
+	{
+		return pattern;
+	} //}}}
+
+	//{{{ isIgnoreCase() method
+	boolean isIgnoreCase()
+	{
+		return (flags & Pattern.CASE_INSENSITIVE) != 0;
+	} //}}}
+
+	//{{{ copy() method
+	@Override
+	public SearchMatcher copy()
+	{
+		PatternSearchMatcher copy = (PatternSearchMatcher) super.copy();
+		// Boyer-Moore matchers build their tables lazily
+		copy.literalMatcher = null;
+		copy.literalChecked = false;
+		return copy;
+	} //}}}
+
 	//{{{ toString() method
 	@Override
 	public String toString()
@@ -317,6 +347,164 @@ public class PatternSearchMatcher extends SearchMatcher
 	private final int flags;
 	private Pattern	re;
 	private final String pattern;
+	/** Finds the candidate lines, or null if every line is a candidate. */
+	private BoyerMooreSearchMatcher literalMatcher;
+	private boolean literalChecked;
+
+	/** Literals shorter than this occur too often to be worth it. */
+	private static final int MIN_LITERAL_LENGTH = 3;
+
+	//{{{ getLiteralMatcher() method
+	/**
+	 * Returns a matcher for the longest literal that every match contains,
+	 * or null if the matches may span lines or contain no such literal.
+	 */
+	private BoyerMooreSearchMatcher getLiteralMatcher()
+	{
+		if (literalChecked)
+			return literalMatcher;
+		literalChecked = true;
+
+		int unsafeFlags = Pattern.DOTALL | Pattern.COMMENTS
+			| Pattern.LITERAL | Pattern.UNICODE_CASE;
+		if ((re.flags() & unsafeFlags) != 0 || !isSingleLine(pattern))
+			return null;
+		List<String> literals = BytePrefilter.getRequiredLiterals(this);
+		if (literals == null)
+			return null;
+		String longest = "";
+		for (String literal : literals)
+		{
+			if (literal.length() > longest.length())
+				longest = literal;
+		}
+		if (longest.length() < MIN_LITERAL_LENGTH)
+			return null;
+		literalMatcher = new BoyerMooreSearchMatcher(longest,
+			(re.flags() & Pattern.CASE_INSENSITIVE) != 0);
+		return literalMatcher;
+	} //}}}
+
+	//{{{ isSingleLine() method
+	/**
+	 * Returns true if no match of the expression can contain a newline.
+	 * This errs on the safe side: escapes and constructs that are not
+	 * known to exclude newlines, or that depend on where the search
+	 * started, make it return false.
+	 */
+	private static boolean isSingleLine(String re)
+	{
+		for (int i = 0; i < re.length(); i++)
+		{
+			char ch = re.charAt(i);
+			if (ch < ' ')
+				return false;
+			if (ch == '[' && i + 1 < re.length() && re.charAt(i + 1) == '^')
+				return false;
+			if (ch == '(' && i + 2 < re.length() && re.charAt(i + 1) == '?'
+				&& ":=!<>".indexOf(re.charAt(i + 2)) == -1)
+			{
+				// inline flags could turn on DOTALL or COMMENTS
+				return false;
+			}
+			if (ch == '\\')
+			{
+				if (++i == re.length())
+					return false;
+				char escaped = re.charAt(i);
+				if (escaped == 'Q')
+				{
+					int end = re.indexOf("\\E", i);
+					if (end == -1)
+						end = re.length();
+					for (int j = i + 1; j < end; j++)
+					{
+						if (re.charAt(j) < ' ')
+							return false;
+					}
+					i = end + 1;
+				}
+				else if (Character.isLetterOrDigit(escaped)
+					&& "wdbBAZzE".indexOf(escaped) == -1)
+				{
+					// octal, hexadecimal, unicode and control
+					// escapes may be a newline, a back reference
+					// may match one, and \G would be moved to
+					// the start of each line
+					return false;
+				}
+			}
+		}
+		return true;
+	} //}}}
+
 	//}}}
+
+	//{{{ LiteralFinder class
+	/**
+	 * Wraps a matcher, and looks for its matches only on the lines where
+	 * the literal occurs. The matcher uses transparent bounds and no
+	 * anchoring bounds, so lookarounds and anchors see the whole text, and
+	 * the matches found are the same as without the literal.
+	 */
+	private static class LiteralFinder
+	{
+		private final Matcher match;
+		private final CharSequence text;
+		private final BoyerMooreSearchMatcher literal;
+		/** The end of the line being searched. */
+		private int lineEnd;
+
+		LiteralFinder(Matcher match, CharSequence text,
+			BoyerMooreSearchMatcher literal)
+		{
+			this.match = match;
+			this.text = text;
+			this.literal = literal;
+			if (literal != null)
+				match.useTransparentBounds(true).useAnchoringBounds(false);
+		}
+
+		/** Like {@link Matcher#find(int)}. */
+		boolean find(int from) throws InterruptedException
+		{
+			if (literal == null)
+				return match.find(from);
+			return findFromLine(from);
+		}
+
+		/** Like {@link Matcher#find()}. */
+		boolean find() throws InterruptedException
+		{
+			if (literal == null)
+				return match.find();
+			if (match.find())
+				return true;
+			return lineEnd < text.length() && findFromLine(lineEnd + 1);
+		}
+
+		private boolean findFromLine(int from) throws InterruptedException
+		{
+			int length = text.length();
+			while (from < length)
+			{
+				int pos = literal.match(text.subSequence(from, length), false);
+				if (pos == -1)
+					return false;
+				pos += from;
+				int lineStart = pos;
+				while (lineStart > from && text.charAt(lineStart - 1) != '\n')
+					lineStart--;
+				lineEnd = pos;
+				while (lineEnd < length && text.charAt(lineEnd) != '\n')
+					lineEnd++;
+				match.region(lineStart, lineEnd);
+				if (match.find())
+					return true;
+				from = lineEnd + 1;
+			}
+			return false;
+		}
+	} //}}}
 }
 
@@ -0,0 +1,397 @@
+/*
+ * ReplaceAllRequest.java - Replace all in a file set, run in the background
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.search;
+
+//{{{ Imports
+import java.awt.Component;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.gjt.sp.jedit.BeanShell;
+import org.gjt.sp.jedit.Buffer;
+import org.gjt.sp.jedit.View;
+import org.gjt.sp.jedit.jEdit;
+import org.gjt.sp.jedit.buffer.JEditBuffer;
+import org.gjt.sp.jedit.io.VFSManager;
+import org.gjt.sp.util.Log;
+import org.gjt.sp.util.Task;
+import org.gjt.sp.util.TaskManager;
+import org.gjt.sp.util.ThreadUtilities;
+//}}}
+
+/**
+ * Replaces all occurrences in the files of a file set.<p>
+ *
+ * The files are matched by a pool of worker threads, so that only the files
+ * containing an occurrence are loaded into a buffer. The replacement itself
+ * is done in the event dispatch thread, one file at a time, and the changed
+ * buffers are committed, or saved, once all files are done or the task is
+ * cancelled.
+ *
+ * @since jEdit 5.7pre1
+ */
+class ReplaceAllRequest extends Task
+{
+	//{{{ ReplaceAllRequest constructor
+	/**
+	 * @param view The view
+	 * @param comp The component that will parent any dialog boxes
+	 * @param matcher The search matcher
+	 * @param replacement The replace settings
+	 * @param fileset The files to replace in
+	 * @param smartCaseReplace See user's guide
+	 * @param dontOpenChangedFiles Whether to save changed files instead of
+	 * opening them
+	 * @param threaded Whether the request is run as a task, matching the
+	 * files with worker threads; if false, {@link #replaceAll()} is called
+	 * instead, and does everything in the calling thread
+	 * @param done Called in the event dispatch thread once done, with
+	 * whether any file was changed; may be null
+	 */
+	ReplaceAllRequest(View view, Component comp, SearchMatcher matcher,
+		SearchAndReplace.Replacement replacement, SearchFileSet fileset,
+		boolean smartCaseReplace, boolean dontOpenChangedFiles,
+		boolean threaded, Consumer<Boolean> done)
+	{
+		this.view = view;
+		this.comp = comp;
+		this.matcher = matcher;
+		this.replacement = replacement;
+		this.fileset = fileset;
+		this.smartCaseReplace = smartCaseReplace;
+		this.dontOpenChangedFiles = dontOpenChangedFiles;
+		this.threaded = threaded;
+		this.done = done;
+		this.searchString = SearchAndReplace.getSearchString();
+		changed = new ArrayList<>();
+	} //}}}
+
+	//{{{ replaceAll() method
+	/**
+	 * Replaces in the files, and commits or saves the changed ones.
+	 * @return true if any file was changed
+	 */
+	boolean replaceAll()
+	{
+		String[] files = fileset.getFiles(view);
+		if(files == null)
+			files = new String[0];
+		if(threaded)
+			setMaximum(files.length);
+
+		String replacingCaption = jEdit.getProperty("replace-all.replacing",
+			new String[] { searchString }) + ' ';
+		try
+		{
+			replaceInFiles(files, replacingCaption);
+		}
+		catch(final Exception e)
+		{
+			Log.log(Log.ERROR,this,e);
+			ThreadUtilities.runInDispatchThread(() ->
+				SearchAndReplace.handleError(comp,e));
+		}
+		finally
+		{
+			ThreadUtilities.runInDispatchThreadAndWait(this::finish);
+		}
+		return !changed.isEmpty();
+	} //}}}
+
+	//{{{ _run() method
+	@Override
+	public void _run()
+	{
+		setStatus(jEdit.getProperty("replace-all-status"));
+		replaceAll();
+	} //}}}
+
+	//{{{ Private members
+	private final View view;
+	private final Component comp;
+	private final SearchMatcher matcher;
+	private final SearchAndReplace.Replacement replacement;
+	private final SearchFileSet fileset;
+	private final boolean smartCaseReplace;
+	private final boolean dontOpenChangedFiles;
+	private final boolean threaded;
+	private final Consumer<Boolean> done;
+	private final String searchString;
+
+	/** The buffers changed so far, in the order of the file set. */
+	private final List<Buffer> changed;
+	private int occurCount;
+	private Exception replaceError;
+
+	//{{{ replaceInFiles() method
+	/**
+	 * Matches the files ahead of the one being replaced in, and stops at
+	 * the first file that is replaced in once the task is cancelled.
+	 */
+	private void replaceInFiles(String[] files, String replacingCaption)
+		throws Exception
+	{
+		ExecutorService workers = null;
+		int lookAhead = 1;
+		if(threaded)
+		{
+			int threads = jEdit.getIntegerProperty("hypersearch.threads", 0);
+			if(threads <= 0)
+				threads = Runtime.getRuntime().availableProcessors();
+			AtomicInteger threadIDs = new AtomicInteger();
+			workers = Executors.newFixedThreadPool(threads, r ->
+			{
+				Thread t = new Thread(r, "Replace All Worker #"
+					+ threadIDs.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			});
+			lookAhead = threads * 4;
+		}
+		ThreadLocal<SearchMatcher> matchers = ThreadLocal.withInitial(matcher::copy);
+		BytePrefilter prefilter = BytePrefilter.create(matcher);
+
+		Deque<Future<Buffer>> pending = new ArrayDeque<>();
+		int submitted = 0;
+		long lastStatusTime = 0L;
+		try
+		{
+			for(int i = 0; i < files.length; i++)
+			{
+				while(workers != null && submitted < files.length
+					&& submitted - i < lookAhead)
+				{
+					String file = files[submitted++];
+					pending.add(workers.submit(() -> prepareFile(
+						matchers.get(), prefilter, file)));
+				}
+
+				if(Thread.currentThread().isInterrupted())
+				{
+					Log.log(Log.MESSAGE, this, "Replace all stopped by user action (stop button)");
+					break;
+				}
+
+				long currentTime = System.currentTimeMillis();
+				if(threaded && currentTime - lastStatusTime > 250L)
+				{
+					setValue(i + 1);
+					lastStatusTime = currentTime;
+					setStatus(replacingCaption + files[i]);
+				}
+
+				Buffer buffer;
+				if(workers == null)
+					buffer = prepareFile(matcher, prefilter, files[i]);
+				else
+				{
+					try
+					{
+						buffer = pending.remove().get();
+					}
+					catch(InterruptedException e)
+					{
+						Log.log(Log.MESSAGE, this, "Replace all stopped by user action (stop button)");
+						break;
+					}
+					catch(ExecutionException e)
+					{
+						Throwable cause = e.getCause();
+						if(cause instanceof Exception)
+							throw (Exception)cause;
+						throw e;
+					}
+				}
+
+				if(buffer != null)
+				{
+					Buffer loaded = buffer;
+					ThreadUtilities.runInDispatchThreadAndWait(() ->
+						replaceInBuffer(loaded));
+					if(replaceError != null)
+						throw replaceError;
+				}
+			}
+		}
+		finally
+		{
+			if(workers != null)
+				workers.shutdownNow();
+		}
+	} //}}}
+
+	//{{{ prepareFile() method
+	/**
+	 * Finds out whether a file contains an occurrence. Local files that
+	 * are not open are decoded directly, and only loaded into a temporary
+	 * buffer if they do.
+	 * @return the loaded buffer, or null if there is nothing to replace
+	 */
+	private Buffer prepareFile(SearchMatcher matcher, BytePrefilter prefilter,
+		String path) throws Exception
+	{
+		Buffer buffer = jEdit.getBufferManager().getBuffer(path).orElse(null);
+		if(buffer == null)
+		{
+			boolean local = VFSManager.getVFSForPath(path)
+				== VFSManager.getFileVFS();
+			if(local)
+			{
+				DecodedFile file;
+				try
+				{
+					file = DecodedFile.read(path, prefilter);
+				}
+				catch(IOException e)
+				{
+					Log.log(Log.ERROR,this,e);
+					VFSManager.error(view,path,"ioerror.read-error",
+						new String[] { e.toString() });
+					return null;
+				}
+				if(file == null || !contains(matcher, file))
+					return null;
+			}
+
+			buffer = jEdit.openTemporary(view,null,path,false);
+			if(buffer == null)
+				return null;
+
+			// Wait for the buffer to load
+			if(buffer.isPerformingIO())
+				TaskManager.instance.waitForIoTasks();
+
+			// the replacement uses the word separators of the mode
+			if(buffer.isTemporary())
+				buffer.setMode();
+			if(local)
+				return buffer;
+		}
+		return contains(matcher, buffer) ? buffer : null;
+	} //}}}
+
+	//{{{ contains() method
+	private static boolean contains(SearchMatcher matcher, DecodedFile file)
+		throws InterruptedException
+	{
+		if(matcher.wholeWord)
+			matcher.setNoWordSep(file.getNoWordSep());
+		return matcher.nextMatch(file.getSegment(0, file.getLength()),
+			true, true, true, false) != null;
+	} //}}}
+
+	//{{{ contains() method
+	private static boolean contains(SearchMatcher matcher, JEditBuffer buffer)
+		throws InterruptedException
+	{
+		if(matcher.wholeWord)
+			matcher.setNoWordSep(buffer.getStringProperty("noWordSep"));
+		buffer.readLock();
+		try
+		{
+			return matcher.nextMatch(buffer.getSegment(0, buffer.getLength()),
+				true, true, true, false) != null;
+		}
+		finally
+		{
+			buffer.readUnlock();
+		}
+	} //}}}
+
+	//{{{ replaceInBuffer() method
+	/**
+	 * Replaces in one buffer, in the event dispatch thread.
+	 */
+	private void replaceInBuffer(Buffer buffer)
+	{
+		if(!buffer.isEditable())
+			return;
+
+		// Leave buffer in a consistent state if
+		// an error occurs
+		int retVal;
+		try
+		{
+			buffer.beginCompoundEdit();
+			retVal = SearchAndReplace._replace(view,buffer,matcher,
+				replacement,0,buffer.getLength(),smartCaseReplace);
+		}
+		catch(Exception e)
+		{
+			replaceError = e;
+			return;
+		}
+		finally
+		{
+			buffer.endCompoundEdit();
+		}
+
+		if(retVal != 0)
+		{
+			occurCount += retVal;
+			changed.add(buffer);
+		}
+	} //}}}
+
+	//{{{ finish() method
+	/**
+	 * Commits or saves the changed buffers, in the event dispatch thread.
+	 */
+	private void finish()
+	{
+		for(Buffer buffer : changed)
+		{
+			if(dontOpenChangedFiles)
+			{
+				buffer.save(null,null);
+			}
+			else
+			{
+				jEdit.commitTemporary(buffer);
+				jEdit.getBufferSetManager().addBuffer(view, buffer);
+			}
+		}
+
+		/* Don't do this when playing a macro, cos it's annoying */
+		if(!BeanShell.isScriptRunning())
+		{
+			Object[] args = {occurCount, changed.size()};
+			view.getStatus().setMessageAndClear(jEdit.getProperty(
+				"view.status.replace-all",args));
+			if(occurCount == 0)
+				javax.swing.UIManager.getLookAndFeel().provideErrorFeedback(null);
+		}
+
+		if(done != null)
+			done.accept(!changed.isEmpty());
+	} //}}}
+
+	//}}}
+}
@@ -26,6 +26,9 @@ package org.gjt.sp.jedit.search;
 //{{{ Imports
 import org.gjt.sp.jedit.bsh.*;
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import javax.swing.JOptionPane;
 import org.gjt.sp.jedit.*;
@@ -206,6 +209,37 @@ public class SearchAndReplace
 		return regexp;
 	} //}}}
 
+	//{{{ setMultipleLiterals() method
+	/**
+	 * Sets the state of the multiple literals flag. When it is set, and
+	 * regular expressions are not, each line of the search string is
+	 * searched for, with an {@link AhoCorasickSearchMatcher}.
+	 * @param multipleLiterals True if each line of the search string
+	 * should be searched for
+	 * @since jEdit 5.7pre1
+	 */
+	public static void setMultipleLiterals(boolean multipleLiterals)
+	{
+		if(multipleLiterals == SearchAndReplace.multipleLiterals)
+			return;
+
+		SearchAndReplace.multipleLiterals = multipleLiterals;
+		matcher = null;
+
+		EditBus.send(new SearchSettingsChanged(null));
+	} //}}}
+
+	//{{{ getMultipleLiterals() method
+	/**
+	 * Returns the state of the multiple literals flag.
+	 * @return True if each line of the search string is searched for
+	 * @since jEdit 5.7pre1
+	 */
+	public static boolean getMultipleLiterals()
+	{
+		return multipleLiterals;
+	} //}}}
+
 	//{{{ setReverseSearch() method
 	/**
 	 * Determines whether a reverse search will conducted from the current
@@ -327,6 +361,8 @@ public class SearchAndReplace
 				PatternSearchMatcher.getFlag(ignoreCase));
 			matcher = new PatternSearchMatcher(re, ignoreCase, wholeWord);
 		}
+		else if (multipleLiterals)
+			matcher = AhoCorasickSearchMatcher.fromLines(search, ignoreCase, wholeWord);
 		else
 			matcher = new BoyerMooreSearchMatcher(search, ignoreCase, wholeWord);
 
@@ -666,27 +702,15 @@ loop:		for(;;)
 			startOfLine,endOfLine,firstTime,reverse);
 		if(match != null)
 		{
-			jEdit.commitTemporary(buffer);
-			view.setBuffer(buffer);
-			JEditTextArea textArea = view.getTextArea();
-
 			if(reverse)
 			{
-				textArea.setSelection(new Selection.Range(
-					start - match.end,
-					start - match.start));
-				// make sure end of match is visible
-				textArea.scrollTo(start - match.start,false);
-				textArea.moveCaretPosition(start - match.end);
+				selectMatch(view,buffer,start - match.end,
+					start - match.start,true);
 			}
 			else
 			{
-				textArea.setSelection(new Selection.Range(
-					start + match.start,
-					start + match.end));
-				textArea.moveCaretPosition(start + match.end);
-				// make sure start of match is visible
-				textArea.scrollTo(start + match.start,false);
+				selectMatch(view,buffer,start + match.start,
+					start + match.end,false);
 			}
 
 			return true;
@@ -695,6 +719,40 @@ loop:		for(;;)
 			return false;
 	} //}}}
 
+	//{{{ selectMatch() method
+	/**
+	 * Selects an occurrence found by a search, showing the buffer in the
+	 * view if needed.
+	 * @param view The view
+	 * @param buffer The buffer
+	 * @param start The start offset of the occurrence
+	 * @param end The end offset of the occurrence
+	 * @param reverse Whether the occurrence was found backwards, in which
+	 * case the caret is put at its start
+	 * @since jEdit 5.7pre1
+	 */
+	static void selectMatch(View view, Buffer buffer, int start, int end,
+		boolean reverse)
+	{
+		jEdit.commitTemporary(buffer);
+		view.setBuffer(buffer);
+		JEditTextArea textArea = view.getTextArea();
+
+		textArea.setSelection(new Selection.Range(start,end));
+		if(reverse)
+		{
+			// make sure end of match is visible
+			textArea.scrollTo(end,false);
+			textArea.moveCaretPosition(start);
+		}
+		else
+		{
+			textArea.moveCaretPosition(end);
+			// make sure start of match is visible
+			textArea.scrollTo(start,false);
+		}
+	} //}}}
+
 	//{{{ replace() method
 	/**
 	 * Replaces the current selection with the replacement string.
@@ -739,7 +797,7 @@ loop:		for(;;)
 			if(matcher == null)
 				return false;
 
-			initReplace();
+			Replacement replacement = initReplace();
 
 			int retVal = 0;
 
@@ -747,7 +805,7 @@ loop:		for(;;)
 			{
 				s = aSelection;
 				retVal += replaceInSelection(view, textArea, buffer,
-					matcher, smartCaseReplace, s);
+					matcher, replacement, smartCaseReplace, s);
 			}
 			
 			if(reverse)
@@ -820,12 +878,12 @@ loop:		for(;;)
 			if(matcher == null)
 				return false;
 
-			initReplace();
+			Replacement replacement = initReplace();
 
 			int retVal = 0;
 
-			retVal += _replace(view,buffer,matcher,start,end,
-				smartCaseReplace);
+			retVal += _replace(view,buffer,matcher,replacement,
+				start,end,smartCaseReplace);
 
 			if(retVal != 0)
 				return true;
@@ -864,111 +922,57 @@ loop:		for(;;)
 	 */
 	public static boolean replaceAll(View view, boolean dontOpenChangedFiles)
 	{
-		// component that will parent any dialog boxes
-		Component comp = SearchDialog.getSearchDialog(view);
-		if(!comp.isShowing())
-			comp = view;
-
-		if(fileset.getFileCount(view) == 0)
-		{
-			GUIUtilities.error(comp,"empty-fileset",null);
+		ReplaceAllRequest request = createReplaceAllRequest(view,
+			dontOpenChangedFiles,false,null);
+		if(request == null)
 			return false;
-		}
-
-		record(view,"replaceAll(view)",true,true);
 
 		view.showWaitCursor();
-
-		boolean smartCaseReplace = getSmartCaseReplace();
-
-		int fileCount = 0;
-		int occurCount = 0;
 		try
 		{
-			SearchMatcher matcher = getSearchMatcher();
-			if(matcher == null)
-				return false;
-
-			initReplace();
-
-			String path = fileset.getFirstFile(view);
-loop:		while(path != null)
-			{
-				Buffer buffer = jEdit.openTemporary(
-					view,null,path,false);
-
-				/* this is stupid and misleading.
-				 * but 'path' is not used anywhere except
-				 * the above line, and if this is done
-				 * after the 'continue', then we will
-				 * either hang, or be forced to duplicate
-				 * it inside the buffer == null, or add
-				 * a 'finally' clause. you decide which one's
-				 * worse. */
-				path = fileset.getNextFile(view,path);
-
-				if(buffer == null)
-					continue loop;
-
-				// Wait for buffer to finish loading
-				if(buffer.isPerformingIO())
-					TaskManager.instance.waitForIoTasks();
-
-				if(!buffer.isEditable())
-					continue loop;
-
-				// Leave buffer in a consistent state if
-				// an error occurs
-				int retVal = 0;
-
-				try
-				{
-					buffer.beginCompoundEdit();
-					retVal = _replace(view,buffer,matcher,
-						0,buffer.getLength(),
-						smartCaseReplace);
-				}
-				finally
-				{
-					buffer.endCompoundEdit();
-				}
-
-				if(retVal != 0)
-				{
-					fileCount++;
-					occurCount += retVal;
-					if (dontOpenChangedFiles)
-					{
-						buffer.save(null,null);
-					}
-					else
-					{
-						jEdit.commitTemporary(buffer);
-						jEdit.getBufferSetManager().addBuffer(view, buffer);
-					}
-				}
-			}
-		}
-		catch(Exception e)
-		{
-			handleError(comp,e);
+			return request.replaceAll();
 		}
 		finally
 		{
 			view.hideWaitCursor();
 		}
+	} //}}}
 
-		/* Don't do this when playing a macro, cos it's annoying */
-		if(!BeanShell.isScriptRunning())
+	//{{{ replaceAll() method
+	/**
+	 * Replaces all occurrences of the search string with the replacement
+	 * string, in a background task unless a macro is running or the file
+	 * set is the current buffer.
+	 * @param view The view
+	 * @param dontOpenChangedFiles Whether to open changed files or to autosave them quietly
+	 * @param done Called in the event dispatch thread once the files are
+	 * replaced in, with whether any file was changed; may be null
+	 * @since jEdit 5.7pre1
+	 */
+	public static void replaceAll(View view, boolean dontOpenChangedFiles,
+		Consumer<Boolean> done)
+	{
+		/* Macros expect the files to be replaced in when this
+		 * returns, and the current buffer is replaced in
+		 * quicker than a task can be started. */
+		if(BeanShell.isScriptRunning()
+			|| fileset instanceof CurrentBufferSet)
 		{
-			Object[] args = {occurCount, fileCount};
-			view.getStatus().setMessageAndClear(jEdit.getProperty(
-				"view.status.replace-all",args));
-			if(occurCount == 0)
-				javax.swing.UIManager.getLookAndFeel().provideErrorFeedback(null); 
+			boolean changed = replaceAll(view,dontOpenChangedFiles);
+			if(done != null)
+				done.accept(changed);
+			return;
 		}
 
-		return (fileCount != 0);
+		ReplaceAllRequest request = createReplaceAllRequest(view,
+			dontOpenChangedFiles,true,done);
+		if(request == null)
+		{
+			if(done != null)
+				done.accept(false);
+			return;
+		}
+		ThreadUtilities.runInBackground(request);
 	} //}}}
 
 	//}}}
@@ -999,6 +1003,7 @@ loop:		while(path != null)
 		wholeWord = jEdit.getBooleanProperty("search.wholeWord.toggle");
 		ignoreCase = jEdit.getBooleanProperty("search.ignoreCase.toggle");
 		regexp = jEdit.getBooleanProperty("search.regexp.toggle");
+		multipleLiterals = jEdit.getBooleanProperty("search.multipleLiterals.toggle");
 		beanshell = jEdit.getBooleanProperty("search.beanshell.toggle");
 		wrap = jEdit.getBooleanProperty("search.wrap.toggle");
 
@@ -1022,6 +1027,7 @@ loop:		while(path != null)
 		jEdit.setBooleanProperty("search.wholeWord.toggle",wholeWord);
 		jEdit.setBooleanProperty("search.ignoreCase.toggle",ignoreCase);
 		jEdit.setBooleanProperty("search.regexp.toggle",regexp);
+		jEdit.setBooleanProperty("search.multipleLiterals.toggle",multipleLiterals);
 		jEdit.setBooleanProperty("search.beanshell.toggle",beanshell);
 		jEdit.setBooleanProperty("search.wrap.toggle",wrap);
 	} //}}}
@@ -1044,17 +1050,43 @@ loop:		while(path != null)
 		}
 	} //}}}
 
+	//{{{ Replacement class
+	/**
+	 * The replace settings, copied when a replace starts so that changing
+	 * them meanwhile, or starting another replace, does not affect it.
+	 */
+	static class Replacement
+	{
+		final String replace;
+		final boolean regexp;
+		final boolean ignoreCase;
+		/** The BeanShell replace, or null. */
+		final BshMethod replaceMethod;
+
+		Replacement(String replace, boolean regexp, boolean ignoreCase,
+			BshMethod replaceMethod)
+		{
+			this.replace = replace;
+			this.regexp = regexp;
+			this.ignoreCase = ignoreCase;
+			this.replaceMethod = replaceMethod;
+		}
+	} //}}}
+
 	//{{{ Private members
 
+	/** Replace-alls with more occurrences are applied as one edit. */
+	private static final int BULK_REPLACE_THRESHOLD = 64;
+
 	//{{{ Instance variables
 	private static String search;
 	private static String replace;
-	private static BshMethod replaceMethod;
 	private static NameSpace replaceNS = new NameSpace(
 		BeanShell.getNameSpace(),
 		BeanShell.getNameSpace().getClassManager(),
 		"search and replace");
 	private static boolean regexp;
+	private static boolean multipleLiterals;
 	private static boolean wholeWord;
 	private static boolean ignoreCase;
 	private static boolean reverse;
@@ -1064,12 +1096,53 @@ loop:		while(path != null)
 	private static SearchFileSet fileset;
 	//}}}
 
+	//{{{ createReplaceAllRequest() method
+	/**
+	 * @return the request, or null if there is nothing to replace in or an
+	 * error was shown
+	 */
+	private static ReplaceAllRequest createReplaceAllRequest(View view,
+		boolean dontOpenChangedFiles, boolean background,
+		Consumer<Boolean> done)
+	{
+		// component that will parent any dialog boxes
+		Component comp = SearchDialog.getSearchDialog(view);
+		if(!comp.isShowing())
+			comp = view;
+
+		if(fileset.getFileCount(view) == 0)
+		{
+			GUIUtilities.error(comp,"empty-fileset",null);
+			return null;
+		}
+
+		record(view,"replaceAll(view)",true,true);
+
+		try
+		{
+			SearchMatcher matcher = getSearchMatcher();
+			if(matcher == null)
+				return null;
+
+			return new ReplaceAllRequest(view,comp,matcher,
+				initReplace(),fileset,getSmartCaseReplace(),
+				dontOpenChangedFiles,background,done);
+		}
+		catch(Exception e)
+		{
+			handleError(comp,e);
+		}
+		return null;
+	} //}}}
+
 	//{{{ initReplace() method
 	/**
-	 * Set up BeanShell replace if necessary.
+	 * Copies the replace settings, and sets up BeanShell replace if
+	 * necessary.
 	 */
-	private static void initReplace() throws Exception
+	private static Replacement initReplace() throws Exception
 	{
+		BshMethod replaceMethod = null;
 		if(beanshell && !replace.isEmpty())
 		{
 			String text;
@@ -1080,8 +1153,7 @@ loop:		while(path != null)
 			replaceMethod = BeanShell.cacheBlock("replace",
 				text,true);
 		}
-		else
-			replaceMethod = null;
+		return new Replacement(replace,regexp,ignoreCase,replaceMethod);
 	} //}}}
 
 	//{{{ record() method
@@ -1117,6 +1189,8 @@ loop:		while(path != null)
 				+ ignoreCase + ");");
 			recorder.record("SearchAndReplace.setRegexp("
 				+ regexp + ");");
+			recorder.record("SearchAndReplace.setMultipleLiterals("
+				+ multipleLiterals + ");");
 
 			if(recordFileSet)
 			{
@@ -1130,8 +1204,8 @@ loop:		while(path != null)
 
 	//{{{ replaceInSelection() method
 	private static int replaceInSelection(View view, TextArea textArea,
-		Buffer buffer, SearchMatcher matcher, boolean smartCaseReplace,
-		Selection s) throws Exception
+		Buffer buffer, SearchMatcher matcher, Replacement replacement,
+		boolean smartCaseReplace, Selection s) throws Exception
 	{
 		/* if an occurence occurs at the
 		beginning of the selection, the
@@ -1143,13 +1217,17 @@ loop:		while(path != null)
 
 		if(s instanceof Selection.Range)
 		{
-			returnValue = _replace(view,buffer,matcher,
+			// the selection can collapse if all of it is replaced
+			// in one edit
+			int end = s.getEnd();
+			int length = buffer.getLength();
+			returnValue = _replace(view,buffer,matcher,replacement,
 				s.getStart(),s.getEnd(),
 				smartCaseReplace);
 
 			textArea.removeFromSelection(s);
 			textArea.addToSelection(new Selection.Range(
-				start,s.getEnd()));
+				start,end + buffer.getLength() - length));
 		}
 		else if(s instanceof Selection.Rect)
 		{
@@ -1162,7 +1240,7 @@ loop:		while(path != null)
 			returnValue = 0;
 			for(int j = s.getStartLine(); j <= s.getEndLine(); j++)
 			{
-				returnValue += _replace(view,buffer,matcher,
+				returnValue += _replace(view,buffer,matcher,replacement,
 					getColumnOnOtherLine(buffer,j,startCol),
 					getColumnOnOtherLine(buffer,j,endCol),
 					smartCaseReplace);
@@ -1179,17 +1257,26 @@ loop:		while(path != null)
 	//{{{ _replace() method
 	/**
 	 * Replaces all occurrences of the search string with the replacement
-	 * string.
+	 * string.<p>
+	 *
+	 * The range is searched in a single pass over the unmodified text,
+	 * collecting the replacements. A few of them are then applied one by
+	 * one, so that positions between them such as markers stay where they
+	 * are; beyond {@link #BULK_REPLACE_THRESHOLD}, the whole span from the
+	 * first to the last occurrence is replaced in one edit, since every
+	 * edit updates the line and position managers and notifies listeners.
+	 * Either way the replacements are undone in one step.
 	 * @param view The view
 	 * @param buffer The buffer
 	 * @param start The start offset
 	 * @param end The end offset
 	 * @param matcher The search matcher to use
+	 * @param replacement The replace settings, see {@link #initReplace()}
 	 * @param smartCaseReplace See user's guide
 	 * @return The number of occurrences replaced
 	 */
-	private static int _replace(View view, JEditBuffer buffer,
-		SearchMatcher matcher, int start, int end,
+	static int _replace(View view, JEditBuffer buffer,
+		SearchMatcher matcher, Replacement replacement, int start, int end,
 		boolean smartCaseReplace)
 		throws Exception
 	{
@@ -1198,53 +1285,111 @@ loop:		while(path != null)
 			String noWordSep = buffer.getStringProperty("noWordSep");
 			matcher.setNoWordSep(noWordSep);
 		}
-		int occurCount = 0;
 
 		boolean endOfLine = (buffer.getLineEndOffset(
 			buffer.getLineOfOffset(end)) - 1 == end);
 
-		int offset = start;
+		CharSequence text = buffer.getSegment(start,end - start);
+		IntegerArray starts = new IntegerArray();
+		IntegerArray ends = new IntegerArray();
+		List<String> substs = new ArrayList<>();
+		// the text replacing the span from the first occurrence on,
+		// as it will be after the replacements
+		StringBuilder replaced = new StringBuilder();
+
+		int offset = 0;
 loop:	for(int counter = 0; ; counter++)
 		{
-			boolean startOfLine = (buffer.getLineStartOffset(
-				buffer.getLineOfOffset(offset)) == offset);
+			// the search used to go on in the modified buffer, so
+			// right after a replacement, the text before the offset
+			// is the replaced text
+			int lastEnd = ends.getSize() == 0 ? -1
+				: ends.get(ends.getSize() - 1);
+			boolean startOfLine;
+			if(offset == lastEnd && replaced.length() != 0)
+				startOfLine = replaced.charAt(replaced.length() - 1) == '\n';
+			else
+			{
+				int pos = start + (offset == lastEnd
+					? starts.get(0) : offset);
+				startOfLine = (buffer.getLineStartOffset(
+					buffer.getLineOfOffset(pos)) == pos);
+			}
 
-			CharSequence text = buffer.getSegment(offset,end - offset);
+			CharSequence rest = text.subSequence(offset,text.length());
 			SearchMatcher.Match occur = matcher.nextMatch(
-				text,startOfLine,endOfLine,counter == 0,false);
+				rest,startOfLine,endOfLine,counter == 0,false);
 			if(occur == null)
 				break loop;
 
-			CharSequence found = text.subSequence(
+			CharSequence found = rest.subSequence(
 				occur.start, occur.end);
 
-			int length = replaceOne(view,buffer,occur,offset,
+			String subst = getReplacement(view,buffer,replacement,occur,
 				found,smartCaseReplace);
-			if(length == -1)
-				offset += occur.end;
+			if(subst != null)
+			{
+				if(lastEnd != -1)
+				{
+					replaced.append(text,lastEnd,
+						offset + occur.start);
+				}
+				starts.add(offset + occur.start);
+				ends.add(offset + occur.end);
+				substs.add(subst);
+				replaced.append(subst);
+			}
+			offset += occur.end;
+		}
+
+		int occurCount = substs.size();
+		if(occurCount == 0)
+			return 0;
+
+		try
+		{
+			buffer.beginCompoundEdit();
+			if(occurCount <= BULK_REPLACE_THRESHOLD)
+			{
+				// from the last, so that offsets stay valid
+				for(int i = occurCount - 1; i >= 0; i--)
+				{
+					String subst = substs.get(i);
+					int occurStart = start + starts.get(i);
+					int occurEnd = start + ends.get(i);
+					if(occurEnd - occurStart > 0)
+						buffer.remove(occurStart,occurEnd - occurStart);
+					buffer.insert(occurStart,subst);
+				}
+			}
 			else
 			{
-				offset += occur.start + length;
-				end += (length - found.length());
-				occurCount++;
+				int spanStart = start + starts.get(0);
+				int spanEnd = start + ends.get(ends.getSize() - 1);
+				buffer.remove(spanStart,spanEnd - spanStart);
+				buffer.insert(spanStart,replaced);
 			}
 		}
+		finally
+		{
+			buffer.endCompoundEdit();
+		}
 
 		return occurCount;
 	} //}}}
 
-	//{{{ replaceOne() method
+	//{{{ getReplacement() method
 	/**
-	 * Replace one occurrence of the search string with the
-	 * replacement string.
+	 * Returns the text replacing one occurrence of the search string,
+	 * or null if it must be left alone.
 	 */
-	private static int replaceOne(View view, JEditBuffer buffer,
-		SearchMatcher.Match occur, int offset, CharSequence found,
-		boolean smartCaseReplace)
+	private static String getReplacement(View view, JEditBuffer buffer,
+		Replacement replacement, SearchMatcher.Match occur,
+		CharSequence found, boolean smartCaseReplace)
 		throws Exception
 	{
-		String subst = replaceOne(view,buffer,occur,found);
-		if(smartCaseReplace && ignoreCase)
+		String subst = replaceOne(view,buffer,replacement,occur,found);
+		if(subst != null && smartCaseReplace && replacement.ignoreCase)
 		{
 			int strCase = TextUtilities.getStringCase(found);
 			if(strCase == TextUtilities.LOWER_CASE)
@@ -1254,45 +1399,37 @@ loop:	for(int counter = 0; ; counter++)
 			else if(strCase == TextUtilities.TITLE_CASE)
 				subst = TextUtilities.toTitleCase(subst);
 		}
-
-		if(subst != null)
-		{
-			int start = offset + occur.start;
-			int end = offset + occur.end;
-
-			if (end - start > 0)
-				buffer.remove(start,end - start);
-			buffer.insert(start,subst);
-			return subst.length();
-		}
-		else
-			return -1;
+		return subst;
 	} //}}}
 
 	//{{{ replaceOne() method
 	private static String replaceOne(View view, JEditBuffer buffer,
-		SearchMatcher.Match occur, CharSequence found)
+		Replacement replacement, SearchMatcher.Match occur,
+		CharSequence found)
 		throws Exception
 	{
-		if(regexp)
+		if(replacement.regexp)
 		{
-			if(replaceMethod != null)
-				return regexpBeanShellReplace(view,buffer,occur);
+			if(replacement.replaceMethod != null)
+				return regexpBeanShellReplace(view,buffer,
+					replacement.replaceMethod,occur);
 			else
-				return regexpReplace(occur,found);
+				return regexpReplace(replacement.replace,occur,found);
 		}
 		else
 		{
-			if(replaceMethod != null)
-				return literalBeanShellReplace(view,buffer,found);
+			if(replacement.replaceMethod != null)
+				return literalBeanShellReplace(view,buffer,
+					replacement.replaceMethod,found);
 			else
-				return replace;
+				return replacement.replace;
 		}
 	} //}}}
 
 	//{{{ regexpBeanShellReplace() method
 	private static String regexpBeanShellReplace(View view,
-		JEditBuffer buffer, SearchMatcher.Match occur) throws Exception
+		JEditBuffer buffer, BshMethod replaceMethod,
+		SearchMatcher.Match occur) throws Exception
 	{
 		replaceNS.setVariable("buffer", buffer, false);
 		for(int i = 0; i < occur.substitutions.length; i++)
@@ -1320,8 +1457,8 @@ loop:	for(int counter = 0; ; counter++)
 	} //}}}
 
 	//{{{ regexpReplace() method
-	private static String regexpReplace(SearchMatcher.Match occur,
-		CharSequence found) throws Exception
+	private static String regexpReplace(String replace,
+		SearchMatcher.Match occur, CharSequence found) throws Exception
 	{
 		StringBuilder buf = new StringBuilder();
 
@@ -1411,7 +1548,7 @@ loop:	for(int counter = 0; ; counter++)
 
 	//{{{ literalBeanShellReplace() method
 	private static String literalBeanShellReplace(View view,
-		JEditBuffer buffer, CharSequence found)
+		JEditBuffer buffer, BshMethod replaceMethod, CharSequence found)
 		throws Exception
 	{
 		replaceNS.setVariable("buffer",buffer);
@@ -30,6 +30,7 @@ import javax.swing.*;
 import org.gjt.sp.jedit.*;
 import org.gjt.sp.jedit.syntax.SyntaxStyle;
 import org.gjt.sp.jedit.gui.*;
+import org.gjt.sp.jedit.msg.PositionChanging;
 import org.gjt.sp.jedit.textarea.*;
 import org.gjt.sp.util.Log;
 import org.gjt.sp.util.SyntaxUtilities;
@@ -70,6 +71,20 @@ public class SearchBar extends JToolBar
 		find.addKeyListener(new KeyHandler());
 		find.addActionListener(e -> find(false));
 		find.getDocument().addDocumentListener(new DocumentHandler());
+		find.addFocusListener(new FocusAdapter()
+		{
+			@Override
+			public void focusGained(FocusEvent evt)
+			{
+				updateMatches();
+			}
+
+			@Override
+			public void focusLost(FocusEvent evt)
+			{
+				matches.clear();
+			}
+		});
 
 		Insets margin = new Insets(1,1,1,1);
 
@@ -77,7 +92,11 @@ public class SearchBar extends JToolBar
 		
 		add(ignoreCase = new JCheckBox(jEdit.getProperty(
 			"search.case")));
-		ignoreCase.addActionListener(e -> SearchAndReplace.setIgnoreCase(ignoreCase.isSelected()));
+		ignoreCase.addActionListener(e ->
+		{
+			SearchAndReplace.setIgnoreCase(ignoreCase.isSelected());
+			updateMatches();
+		});
 		ignoreCase.setMargin(margin);
 		ignoreCase.setOpaque(false);
 		ignoreCase.setRequestFocusEnabled(false);
@@ -85,7 +104,11 @@ public class SearchBar extends JToolBar
 		
 		add(regexp = new JCheckBox(jEdit.getProperty(
 			"search.regexp")));
-		regexp.addActionListener(e -> SearchAndReplace.setRegexp(regexp.isSelected()));
+		regexp.addActionListener(e ->
+		{
+			SearchAndReplace.setRegexp(regexp.isSelected());
+			updateMatches();
+		});
 		regexp.setMargin(margin);
 		regexp.setOpaque(false);
 		regexp.setRequestFocusEnabled(false);
@@ -97,6 +120,7 @@ public class SearchBar extends JToolBar
 		{
 			jEdit.setBooleanProperty("view.search.hypersearch.toggle", hyperSearch.isSelected());
 			update();
+			updateMatches();
 		});
 		hyperSearch.setMargin(margin);
 		hyperSearch.setOpaque(false);
@@ -104,7 +128,11 @@ public class SearchBar extends JToolBar
 
 		add(wholeWord = new JCheckBox(jEdit.getProperty(
 			"search.word.bar")));
-		wholeWord.addActionListener(e -> SearchAndReplace.setWholeWord(wholeWord.isSelected()));
+		wholeWord.addActionListener(e ->
+		{
+			SearchAndReplace.setWholeWord(wholeWord.isSelected());
+			updateMatches();
+		});
 		wholeWord.setMargin(margin);
 		wholeWord.setOpaque(false);
 		wholeWord.setRequestFocusEnabled(false);
@@ -173,6 +201,14 @@ public class SearchBar extends JToolBar
 		
 	} //}}}
 
+	//{{{ removeNotify() method
+	@Override
+	public void removeNotify()
+	{
+		super.removeNotify();
+		matches.clear();
+	} //}}}
+
 	//{{{ Private members
 
 	//{{{ Instance variables
@@ -183,6 +219,7 @@ public class SearchBar extends JToolBar
 	private final JCheckBox hyperSearch;
 	private final JCheckBox wholeWord;
 	private final Timer timer;
+	private final IncrementalMatches matches = new IncrementalMatches();
 	private boolean wasError;
 	private final Color defaultBackground;
 	private final Color defaultForeground;
@@ -280,19 +317,33 @@ public class SearchBar extends JToolBar
 		SearchAndReplace.setReverseSearch(reverse);
 
 		boolean ret = false;
-		try
+		int match = isLiteralSearch()
+			? matches.find(view.getTextArea(),view.getBuffer(),
+				find.getText(),SearchAndReplace.getIgnoreCase(),start,reverse)
+			: IncrementalMatches.UNKNOWN;
+		if(match >= 0)
 		{
-			if(SearchAndReplace.find(view,view.getBuffer(),start,false,reverse))
-				ret = true;
+			EditBus.send(new PositionChanging(view.getEditPane()));
+			SearchAndReplace.selectMatch(view,view.getBuffer(),match,
+				match + find.getText().length(),reverse);
+			ret = true;
 		}
-		catch(Exception e)
+		else if(match == IncrementalMatches.UNKNOWN)
 		{
-			Log.log(Log.DEBUG,this,e);
+			try
+			{
+				if(SearchAndReplace.find(view,view.getBuffer(),start,false,reverse))
+					ret = true;
+			}
+			catch(Exception e)
+			{
+				Log.log(Log.DEBUG,this,e);
 
-			// invalid regexp, ignore
-			// return true to avoid annoying beeping while
-			// typing a re
-			ret = true;
+				// invalid regexp, ignore
+				// return true to avoid annoying beeping while
+				// typing a re
+				ret = true;
+			}
 		}
 		if (ret)
 		{
@@ -317,6 +368,35 @@ public class SearchBar extends JToolBar
 		return ret;
 	} //}}}
 
+	//{{{ isLiteralSearch() method
+	/**
+	 * Returns whether the occurrences of the search string can be narrowed
+	 * as it is typed, which is not the case for regular expressions and
+	 * whole words.
+	 */
+	private boolean isLiteralSearch()
+	{
+		return !find.getText().isEmpty() && !hyperSearch.isSelected()
+			&& !SearchAndReplace.getRegexp()
+			&& !SearchAndReplace.getWholeWord();
+	} //}}}
+
+	//{{{ updateMatches() method
+	/**
+	 * Starts finding the occurrences of the search string, narrowing
+	 * those of the previous one if it is a prefix.
+	 */
+	private void updateMatches()
+	{
+		if(isLiteralSearch())
+		{
+			matches.setLiteral(view.getTextArea(),find.getText(),
+				SearchAndReplace.getIgnoreCase());
+		}
+		else
+			matches.clear();
+	} //}}}
+
 	//{{{ timerIncrementalSearch() method
 	private void timerIncrementalSearch(int start, boolean reverse)
 	{
@@ -366,6 +446,7 @@ public class SearchBar extends JToolBar
 			// on insert, start search from beginning of
 			// current match. This will continue to highlight
 			// the current match until another match is found
+			updateMatches();
 			if(!hyperSearch.isSelected())
 			{
 				int start;
@@ -386,6 +467,7 @@ public class SearchBar extends JToolBar
 		public void removeUpdate(DocumentEvent evt)
 		{
 			// on backspace, restart from beginning
+			updateMatches();
 			if(!hyperSearch.isSelected())
 			{
 				String text = find.getText();
@@ -302,6 +302,7 @@ public class SearchDialog extends EnhancedDialog
 		focusOrder.add(regexp);
 		focusOrder.add(hyperSearch);
 		focusOrder.add(wholeWord);
+		focusOrder.add(multipleLiterals);
 
 		// direction settings
 		focusOrder.add(searchBack);
@@ -340,7 +341,7 @@ public class SearchDialog extends EnhancedDialog
 	private JRadioButton stringReplace, beanShellReplace;
 
 	// search settings
-	private JCheckBox keepDialog, wholeWord, ignoreCase, regexp, hyperSearch,
+	private JCheckBox keepDialog, wholeWord, ignoreCase, regexp, multipleLiterals, hyperSearch,
 		wrap;
 	private JRadioButton searchBack, searchForward;
 	private JRadioButton searchSelection, searchCurrentBuffer,
@@ -596,6 +597,17 @@ public class SearchDialog extends EnhancedDialog
 		searchSettings.add(wholeWord);
 		wholeWord.addActionListener(actionHandler);
 
+		searchSettings.add(new JLabel(""));
+		searchSettings.add(new JLabel(""));
+
+		multipleLiterals = new JCheckBox(jEdit.getProperty("search.multipleLiterals"));
+		multipleLiterals.setMnemonic(jEdit.getProperty("search.multipleLiterals.mnemonic")
+			.charAt(0));
+		multipleLiterals.setToolTipText(jEdit.getProperty(
+			"search.multipleLiterals.tooltip"));
+		searchSettings.add(multipleLiterals);
+		multipleLiterals.addActionListener(actionHandler);
+
 		return searchSettings;
 	} //}}}
 
@@ -807,6 +819,7 @@ public class SearchDialog extends EnhancedDialog
 			SearchAndReplace.setWholeWord(wholeWord.isSelected());
 			SearchAndReplace.setIgnoreCase(ignoreCase.isSelected());
 			SearchAndReplace.setRegexp(regexp.isSelected());
+			SearchAndReplace.setMultipleLiterals(multipleLiterals.isSelected());
 			SearchAndReplace.setReverseSearch(searchBack.isSelected());
 			SearchAndReplace.setAutoWrapAround(wrap.isSelected());
 			jEdit.setBooleanProperty("search.subdirs.toggle", searchSubDirectories.isSelected());
@@ -935,6 +948,7 @@ public class SearchDialog extends EnhancedDialog
 		wholeWord.setSelected(SearchAndReplace.getWholeWord());
 		ignoreCase.setSelected(SearchAndReplace.getIgnoreCase());
 		regexp.setSelected(SearchAndReplace.getRegexp());
+		multipleLiterals.setSelected(SearchAndReplace.getMultipleLiterals());
 		wrap.setSelected(SearchAndReplace.getAutoWrapAround());
 
 		if(SearchAndReplace.getReverseSearch())
@@ -1026,6 +1040,11 @@ public class SearchDialog extends EnhancedDialog
 				|| source == searchAllBuffers
 				|| source == searchDirectory)
 				hyperSearch.setSelected(true);
+			// the lines are literals, not regular expressions
+			else if(source == regexp && regexp.isSelected())
+				multipleLiterals.setSelected(false);
+			else if(source == multipleLiterals && multipleLiterals.isSelected())
+				regexp.setSelected(false);
 
 			save(true);
 			updateEnabled();
@@ -1138,10 +1157,13 @@ public class SearchDialog extends EnhancedDialog
 				}
 				else
 				{
-					if(SearchAndReplace.replaceAll(view))
-						closeOrKeepDialog();
-					else
-						javax.swing.UIManager.getLookAndFeel().provideErrorFeedback(null);
+					SearchAndReplace.replaceAll(view,false,changed ->
+					{
+						if(changed)
+							closeOrKeepDialog();
+						else
+							javax.swing.UIManager.getLookAndFeel().provideErrorFeedback(null);
+					});
 				}
 
 				setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
@@ -29,7 +29,7 @@ import org.gjt.sp.jedit.TextUtilities;
  * @author Slava Pestov
  * @version $Id$
  */
-public abstract class SearchMatcher
+public abstract class SearchMatcher implements Cloneable
 {
 	protected SearchMatcher()
 	{
@@ -76,6 +76,28 @@ public abstract class SearchMatcher
 		return noWordSep;
 	}
 
+	/**
+	 * Returns a matcher for the same search that can be used from another
+	 * thread. A matcher keeps state between calls to
+	 * {@link #nextMatch(CharSequence,boolean,boolean,boolean,boolean)},
+	 * so one instance must not be shared by concurrent searches.
+	 * @return a copy of this matcher
+	 * @since jEdit 5.7pre1
+	 */
+	public SearchMatcher copy()
+	{
+		try
+		{
+			SearchMatcher copy = (SearchMatcher) clone();
+			copy.returnValue = new Match();
+			return copy;
+		}
+		catch (CloneNotSupportedException e)
+		{
+			throw new InternalError(e);
+		}
+	}
+
 	/**
 	 * Check if the result is a whole word
 	 * @param text the full text search
@@ -133,6 +155,12 @@ public abstract class SearchMatcher
 		public int start;
 		public int end;
 		public String[] substitutions;
+		/**
+		 * The index of the pattern that matched, for matchers searching
+		 * for several patterns at once, or -1.
+		 * @since jEdit 5.7pre1
+		 */
+		public int pattern = -1;
 
 		@Override
 		public String toString()
@@ -0,0 +1,462 @@
+/*
+ * TrigramIndex.java - On-disk index of the trigrams of a directory's files
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.search;
+
+//{{{ Imports
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.gjt.sp.jedit.Buffer;
+import org.gjt.sp.jedit.MiscUtilities;
+import org.gjt.sp.jedit.jEdit;
+import org.gjt.sp.jedit.io.VFSManager;
+import org.gjt.sp.util.Log;
+import org.gjt.sp.util.Task;
+import org.gjt.sp.util.ThreadUtilities;
+//}}}
+
+/**
+ * An index of the trigrams found in the files under a directory, used to
+ * narrow the files a {@link DirectoryListSet} HyperSearch has to read.<p>
+ *
+ * For each file, the trigrams of its text are hashed into a small bit
+ * set, of at most 2KB. A file is only searched if the bit of every trigram of the
+ * literals that any match must contain is set; a collision can only let
+ * a file through that does not match. Characters are folded to one case,
+ * so the same index serves searches that ignore case.<p>
+ *
+ * An entry is trusted as long as the file's modification time and size
+ * are those it was built from. Files without a valid entry are always
+ * searched, and are indexed afterwards by a background task, which then
+ * saves the index under the <code>trigrams</code> directory of the
+ * settings directory. Only the indexes of the last few directories
+ * searched are kept in memory. Indexing is enabled by the
+ * <code>search.trigramIndex</code> property.
+ *
+ * @since jEdit 5.7pre1
+ */
+class TrigramIndex
+{
+	//{{{ narrow() method
+	/**
+	 * Returns the files of the file set that may contain a match, or the
+	 * files unchanged if the index cannot tell.
+	 * @param fileset The file set being searched
+	 * @param files Its files
+	 * @param matcher The search matcher
+	 */
+	static String[] narrow(DirectoryListSet fileset, String[] files,
+		SearchMatcher matcher)
+	{
+		if (!jEdit.getBooleanProperty("search.trigramIndex")
+			|| jEdit.getSettingsDirectory() == null)
+			return files;
+		String root = fileset.getDirectory();
+		if (VFSManager.getVFSForPath(root) != VFSManager.getFileVFS())
+			return files;
+
+		List<String> literals = BytePrefilter.getRequiredLiterals(matcher);
+		int[] trigrams = literals == null ? null : getTrigrams(literals);
+
+		TrigramIndex index = getIndex(root);
+		long start = System.nanoTime();
+		List<String> candidates = new ArrayList<>();
+		List<String> stale = new ArrayList<>();
+		Set<String> open = getOpenPaths();
+		for (String path : files)
+		{
+			Entry entry = index.entries.get(path);
+			File file = new File(path);
+			if (entry == null || entry.modified != file.lastModified()
+				|| entry.size != file.length())
+			{
+				stale.add(path);
+				candidates.add(path);
+			}
+			// the text of an open buffer may not be the one on disk
+			else if (trigrams == null || open.contains(path)
+				|| entry.mayContainAll(trigrams))
+				candidates.add(path);
+		}
+		if (trigrams != null)
+		{
+			Log.log(Log.MESSAGE, TrigramIndex.class, "Trigram index narrowed "
+				+ files.length + " files to " + candidates.size()
+				+ " in " + (System.nanoTime() - start) / 1000000 + " ms");
+		}
+
+		if (!stale.isEmpty())
+			index.update(stale);
+		return trigrams == null ? files : candidates.toArray(new String[0]);
+	} //}}}
+
+	//{{{ Private members
+	private static final int MAGIC = 0x6a457469; // 'jEti'
+	private static final int VERSION = 2;
+
+	/** Bits per distinct trigram of a file, a trade-off between size and
+	 * false positives. */
+	private static final int BITS_PER_TRIGRAM = 8;
+	private static final int MIN_BITS = 512;
+	/** The bits of a file with more trigrams are shared by several of them,
+	 * so that the index does not grow as large as the files. */
+	private static final int MAX_BITS = 16384;
+	/** The number of indexes kept in memory. */
+	private static final int MAX_INDEXES = 3;
+
+	/** The indexes most recently used, which may still be collected if
+	 * memory runs low. */
+	private static final Map<String, SoftReference<TrigramIndex>> indexes
+		= new LinkedHashMap<String, SoftReference<TrigramIndex>>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(
+			Map.Entry<String, SoftReference<TrigramIndex>> eldest)
+		{
+			return size() > MAX_INDEXES;
+		}
+	};
+
+	private final String root;
+	private final File indexFile;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private UpdateTask pendingUpdate;
+
+	//{{{ TrigramIndex constructor
+	private TrigramIndex(String root)
+	{
+		this.root = root;
+		String settings = jEdit.getSettingsDirectory();
+		indexFile = new File(MiscUtilities.constructPath(settings, "trigrams",
+			Integer.toHexString(root.hashCode()) + ".idx"));
+	} //}}}
+
+	//{{{ getIndex() method
+	private static TrigramIndex getIndex(String root)
+	{
+		synchronized (indexes)
+		{
+			SoftReference<TrigramIndex> ref = indexes.get(root);
+			TrigramIndex index = ref == null ? null : ref.get();
+			if (index == null)
+			{
+				index = new TrigramIndex(root);
+				index.load();
+				indexes.put(root, new SoftReference<>(index));
+			}
+			return index;
+		}
+	} //}}}
+
+	//{{{ getOpenPaths() method
+	private static Set<String> getOpenPaths()
+	{
+		Set<String> paths = new HashSet<>();
+		for (Buffer buffer : jEdit.getBufferManager().getBuffers())
+		{
+			paths.add(buffer.getPath());
+			paths.add(buffer.getSymlinkPath());
+		}
+		return paths;
+	} //}}}
+
+	//{{{ update() method
+	/**
+	 * Indexes the given files in the background, unless an update is
+	 * already running; the files left out are picked up by the next search.
+	 */
+	private synchronized void update(List<String> paths)
+	{
+		if (pendingUpdate != null)
+			return;
+		pendingUpdate = new UpdateTask(paths);
+		ThreadUtilities.runInBackground(pendingUpdate);
+	} //}}}
+
+	//{{{ updateFinished() method
+	private synchronized void updateFinished()
+	{
+		pendingUpdate = null;
+	} //}}}
+
+	//{{{ load() method
+	private void load()
+	{
+		long start = System.nanoTime();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+			new FileInputStream(indexFile))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION
+				|| !root.equals(in.readUTF()))
+				return;
+			int count = in.readInt();
+			for (int i = 0; i < count; i++)
+			{
+				String path = in.readUTF();
+				long modified = in.readLong();
+				long size = in.readLong();
+				long[] bits = new long[in.readInt()];
+				for (int j = 0; j < bits.length; j++)
+					bits[j] = in.readLong();
+				entries.put(path, new Entry(modified, size, bits));
+			}
+			Log.log(Log.DEBUG, TrigramIndex.class, "Loaded trigram index of "
+				+ root + ", " + count + " files, in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+		}
+		catch (FileNotFoundException e)
+		{
+		}
+		catch (IOException e)
+		{
+			Log.log(Log.ERROR, TrigramIndex.class, "Error while loading "
+				+ indexFile);
+			Log.log(Log.ERROR, TrigramIndex.class, e);
+			entries.clear();
+		}
+	} //}}}
+
+	//{{{ save() method
+	private void save()
+	{
+		File dir = indexFile.getParentFile();
+		if (!dir.exists() && !dir.mkdirs())
+			return;
+		File tempFile = new File(dir, "#" + indexFile.getName() + "#save#");
+		try
+		{
+			try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tempFile))))
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(root);
+				Map<String, Entry> snapshot = new HashMap<>(entries);
+				out.writeInt(snapshot.size());
+				for (Map.Entry<String, Entry> e : snapshot.entrySet())
+				{
+					Entry entry = e.getValue();
+					out.writeUTF(e.getKey());
+					out.writeLong(entry.modified);
+					out.writeLong(entry.size);
+					out.writeInt(entry.bits.length);
+					for (long word : entry.bits)
+						out.writeLong(word);
+				}
+			}
+			indexFile.delete();
+			tempFile.renameTo(indexFile);
+		}
+		catch (IOException e)
+		{
+			Log.log(Log.ERROR, TrigramIndex.class, "Error while saving "
+				+ indexFile);
+			Log.log(Log.ERROR, TrigramIndex.class, e);
+		}
+	} //}}}
+
+	//{{{ fold() method
+	private static char fold(char ch)
+	{
+		return Character.toLowerCase(Character.toUpperCase(ch));
+	} //}}}
+
+	//{{{ trigram() method
+	private static int trigram(char a, char b, char c)
+	{
+		a = fold(a);
+		b = fold(b);
+		c = fold(c);
+		// exact for Latin-1 text, hashed otherwise
+		if ((a | b | c) < 0x100)
+			return a << 16 | b << 8 | c;
+		return ((a * 31 + b) * 31 + c) | 0x80000000;
+	} //}}}
+
+	//{{{ getTrigrams() method
+	/**
+	 * @return the trigrams of the literals, or null if there are none
+	 */
+	private static int[] getTrigrams(List<String> literals)
+	{
+		Set<Integer> trigrams = new HashSet<>();
+		for (String literal : literals)
+		{
+			for (int i = 0; i + 2 < literal.length(); i++)
+			{
+				trigrams.add(trigram(literal.charAt(i),
+					literal.charAt(i + 1), literal.charAt(i + 2)));
+			}
+		}
+		if (trigrams.isEmpty())
+			return null;
+		return trigrams.stream().mapToInt(Integer::intValue).toArray();
+	} //}}}
+
+	//{{{ bit() method
+	private static int bit(int trigram, int bitCount)
+	{
+		int h = trigram * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (bitCount - 1);
+	} //}}}
+
+	//{{{ createEntry() method
+	private static Entry createEntry(File file, DecodedFile text)
+	{
+		CharSequence seg = text.getSegment(0, text.getLength());
+		int count = Math.max(0, seg.length() - 2);
+		int[] trigrams = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			trigrams[i] = trigram(seg.charAt(i), seg.charAt(i + 1),
+				seg.charAt(i + 2));
+		}
+		Arrays.sort(trigrams);
+		int distinct = 0;
+		for (int i = 0; i < count; i++)
+		{
+			if (i == 0 || trigrams[i] != trigrams[i - 1])
+				distinct++;
+		}
+
+		int bitCount = MIN_BITS;
+		while (bitCount < MAX_BITS && bitCount < distinct * BITS_PER_TRIGRAM)
+			bitCount <<= 1;
+		long[] bits = new long[bitCount / 64];
+		for (int trigram : trigrams)
+		{
+			int bit = bit(trigram, bitCount);
+			bits[bit >> 6] |= 1L << bit;
+		}
+		return new Entry(file.lastModified(), file.length(), bits);
+	} //}}}
+
+	//{{{ Entry class
+	private static class Entry
+	{
+		final long modified;
+		final long size;
+		final long[] bits;
+
+		Entry(long modified, long size, long[] bits)
+		{
+			this.modified = modified;
+			this.size = size;
+			this.bits = bits;
+		}
+
+		boolean mayContainAll(int[] trigrams)
+		{
+			int bitCount = bits.length * 64;
+			for (int trigram : trigrams)
+			{
+				int bit = bit(trigram, bitCount);
+				if ((bits[bit >> 6] & 1L << bit) == 0)
+					return false;
+			}
+			return true;
+		}
+	} //}}}
+
+	//{{{ UpdateTask class
+	private class UpdateTask extends Task
+	{
+		private final List<String> paths;
+
+		UpdateTask(List<String> paths)
+		{
+			this.paths = paths;
+			setLabel("Indexing trigrams of " + root);
+			setMaximum(paths.size());
+		}
+
+		@Override
+		public void _run()
+		{
+			long start = System.nanoTime();
+			int indexed = 0;
+			try
+			{
+				for (String path : paths)
+				{
+					if (Thread.currentThread().isInterrupted())
+						break;
+					File file = new File(path);
+					try
+					{
+						// drop the entry if the file is modified
+						// while it is being read
+						long modified = file.lastModified();
+						Entry entry = createEntry(file, DecodedFile.read(path));
+						if (entry.modified == modified)
+							entries.put(path, entry);
+						indexed++;
+					}
+					catch (IOException e)
+					{
+						entries.remove(path);
+					}
+					setValue(indexed);
+				}
+				entries.keySet().removeIf(path -> !new File(path).exists());
+				save();
+				Log.log(Log.MESSAGE, TrigramIndex.class, "Indexed " + indexed
+					+ " files of " + root + " in "
+					+ (System.nanoTime() - start) / 1000000 + " ms, "
+					+ entries.size() + " files in the index, "
+					+ indexFile.length() + " bytes");
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			finally
+			{
+				updateFinished();
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return getLabel();
+		}
+	} //}}}
+
+	//}}}
+}
@@ -119,8 +119,9 @@ class BufferHandler implements BufferListener
 			delayUpdate(startLine,endLine);
 
 			//{{{ resize selections if necessary
-			
-			Iterator<Selection> iter = textArea.getSelectionIterator();
+			// selections ending before the insertion are not affected
+			Iterator<Selection> iter = textArea.selectionManager
+				.getSelectionsInRange(offset,Integer.MAX_VALUE).iterator();
 			while(iter.hasNext())
 			{
 				Selection s = iter.next();
@@ -279,7 +280,9 @@ class BufferHandler implements BufferListener
 
 			//{{{ resize selections if necessary
 			int nSel = textArea.getSelectionCount();
-			Iterator<Selection> iter = textArea.getSelectionIterator();
+			// selections ending before the removal are not affected
+			Iterator<Selection> iter = textArea.selectionManager
+				.getSelectionsInRange(start,Integer.MAX_VALUE).iterator();
 			while(iter.hasNext())
 			{
 				Selection s = iter.next();
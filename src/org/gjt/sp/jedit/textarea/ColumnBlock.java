@@ -21,6 +21,9 @@
  */
 package org.gjt.sp.jedit.textarea;
 
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.Vector;
 
 import org.gjt.sp.jedit.buffer.JEditBuffer;
@@ -33,6 +36,11 @@ public class ColumnBlock extends Rect implements Node
 	private Vector<ColumnBlockLine> lines = new Vector<>();
 	float columnBlockWidth;
 	private boolean tabSizesDirty = true;
+	// line lengths -> number of lines having that length, so that the
+	// width can be kept up to date when a single cell changes
+	private final TreeMap<Float, Integer> lineLengthCounts = new TreeMap<>();
+	// lines whose length must be measured again, relative to startLine
+	private final BitSet dirtyLines = new BitSet();
 	private JEditBuffer buffer;
 	private boolean isDirty;
 
@@ -396,6 +404,9 @@ public class ColumnBlock extends Rect implements Node
 	public void setTabSizeDirtyStatus(boolean dirty, boolean recursive)
 	{
 		tabSizesDirty = dirty;
+		dirtyLines.clear();
+		if (dirty)
+			lineLengthCounts.clear();
 		if (recursive && children != null && !children.isEmpty())
 		{
 			for (int i = 0; i < children.size(); i++)
@@ -411,4 +422,75 @@ public class ColumnBlock extends Rect implements Node
 	{
 		return tabSizesDirty;
 	}//}}}
+
+	//{{{ setLineLengthDirty() method
+	/*
+	 * the text of a single line of this column block has changed. Unlike
+	 * setTabSizeDirtyStatus(), only this line is measured again by the tab
+	 * expander, and the width of the block is updated from the other lines'
+	 * lengths that are still known
+	 */
+	public void setLineLengthDirty(int line)
+	{
+		if (!tabSizesDirty && line >= startLine && line <= endLine)
+			dirtyLines.set(line - startLine);
+	}//}}}
+
+	//{{{ getDirtyLines() method
+	BitSet getDirtyLines()
+	{
+		return dirtyLines;
+	}//}}}
+
+	//{{{ resetLineLengths() method
+	/*
+	 * called by the tab expander once the length of every line has been
+	 * measured
+	 */
+	void resetLineLengths()
+	{
+		lineLengthCounts.clear();
+		for (int i = 0; i < lines.size(); i++)
+			addLineLength(lines.elementAt(i).lineLength);
+		updateWidth();
+		setTabSizeDirtyStatus(false, false);
+	}//}}}
+
+	//{{{ setLineLength() method
+	/*
+	 * called by the tab expander after measuring a dirty line again
+	 */
+	void setLineLength(ColumnBlockLine blockLine, float lineLength)
+	{
+		removeLineLength(blockLine.lineLength);
+		blockLine.lineLength = lineLength;
+		addLineLength(lineLength);
+		dirtyLines.clear(blockLine.getLine() - startLine);
+		updateWidth();
+	}//}}}
+
+	//{{{ addLineLength() method
+	private void addLineLength(float lineLength)
+	{
+		lineLengthCounts.merge(lineLength, 1, Integer::sum);
+	}//}}}
+
+	//{{{ removeLineLength() method
+	private void removeLineLength(float lineLength)
+	{
+		Integer count = lineLengthCounts.get(lineLength);
+		if (count == null)
+			return;
+		if (count == 1)
+			lineLengthCounts.remove(lineLength);
+		else
+			lineLengthCounts.put(lineLength, count - 1);
+	}//}}}
+
+	//{{{ updateWidth() method
+	private void updateWidth()
+	{
+		Map.Entry<Float, Integer> widest = lineLengthCounts.lastEntry();
+		columnBlockWidth = widest == null ? -1 : widest.getKey();
+	}//}}}
 }
@@ -137,7 +137,7 @@ public class ElasticTabStopBufferListener extends BufferAdapter
 					{	
 						innerContainingBlock.updateColumnBlockLineOffset(startLine, length, false);
 						startingLine = innerContainingBlock.startLine;
-						innerContainingBlock.setTabSizeDirtyStatus(true,false);
+						innerContainingBlock.setLineLengthDirty(startLine);
 						endLine = innerContainingBlock.endLine;
 					}
 					else
@@ -453,7 +453,7 @@ public class ElasticTabStopBufferListener extends BufferAdapter
 					innerContainingBlock.updateColumnBlockLineOffset(startLine, -1*length, false);
 					startingLine = innerContainingBlock.startLine;
 					endLine = innerContainingBlock.endLine;
-					innerContainingBlock.setTabSizeDirtyStatus(true,false);
+					innerContainingBlock.setLineLengthDirty(startLine);
 				}
 				else
 				{
@@ -23,6 +23,7 @@ package org.gjt.sp.jedit.textarea;
 import org.gjt.sp.jedit.buffer.JEditBuffer;
 
 import java.awt.font.TextLayout;
+import java.util.BitSet;
 import java.util.Vector;
 
 import javax.swing.text.TabExpander;
@@ -70,31 +71,38 @@ public class ElasticTabstopsTabExpander implements TabExpander
 			Vector<ColumnBlockLine> lines = columnBlock.getLines();
 			if(columnBlock.areTabSizesDirty())
 			{
-				float colBlockWidth = -1;
-				JEditBuffer buffer = textArea.getBuffer();
 				for(int i= 0;i<lines.size();i++)
 				{
 					ColumnBlockLine colBlockLine = lines.elementAt(i);
-					int startOffset = colBlockLine.getColumnStartIndex()+ buffer.getLineStartOffset(colBlockLine.getLine());
-					String str = buffer.getText(startOffset,colBlockLine.getColumnEndIndex()-colBlockLine.getColumnStartIndex());
-					float width = 0;
-					if(!str.isEmpty())
-					{	
-						TextLayout layout = new TextLayout(str, painter.getFont(), painter.getFontRenderContext());
-						width = layout.getAdvance();
-					}
-					colBlockLine.lineLength = width;
-					//colBlockLine.lineLength = textArea.painter.getFontMetrics().stringWidth(str);
-					if((colBlockWidth<0)||(colBlockLine.lineLength>colBlockWidth))
-					{
-						colBlockWidth = colBlockLine.lineLength;
-					}
+					colBlockLine.lineLength = measure(colBlockLine);
+				}
+				columnBlock.resetLineLengths();
+			}
+			else
+			{
+				// only re-measure the cells that were edited
+				BitSet dirtyLines = columnBlock.getDirtyLines();
+				for(int i = dirtyLines.nextSetBit(0); i >= 0; i = dirtyLines.nextSetBit(i + 1))
+				{
+					ColumnBlockLine colBlockLine = lines.elementAt(i);
+					columnBlock.setLineLength(colBlockLine, measure(colBlockLine));
 				}
-				columnBlock.columnBlockWidth = colBlockWidth;
-				columnBlock.setTabSizeDirtyStatus(false, false);
 			}
 			ret = columnBlock.columnBlockWidth- lines.get(line-columnBlock.startLine).lineLength;
 		}	
 		return ret;
 	}//}}}
+
+	//{{{ measure() method
+	private float measure(ColumnBlockLine colBlockLine)
+	{
+		JEditBuffer buffer = textArea.getBuffer();
+		int startOffset = colBlockLine.getColumnStartIndex()+ buffer.getLineStartOffset(colBlockLine.getLine());
+		String str = buffer.getText(startOffset,colBlockLine.getColumnEndIndex()-colBlockLine.getColumnStartIndex());
+		if(str.isEmpty())
+			return 0;
+		TextLayout layout = new TextLayout(str, painter.getFont(), painter.getFontRenderContext());
+		//return textArea.painter.getFontMetrics().stringWidth(str);
+		return layout.getAdvance();
+	}//}}}
 }
@@ -330,6 +330,18 @@ public class Gutter extends JComponent implements SwingConstants
 		revalidate();
 	} //}}}
 
+	//{{{ invalidateLine() method
+	/**
+	 * Repaints the gutter area of a single line. Extensions whose
+	 * decorations change for a few lines only, like markers, should call
+	 * this instead of repainting the whole gutter.
+	 * @param line The physical line to invalidate
+	 */
+	public void invalidateLine(int line)
+	{
+		textArea.invalidateGutterLine(line);
+	} //}}}
+
 	//{{{ setMinLineNumberDigitCount() method
 	public void setMinLineNumberDigitCount(int min)
 	{
@@ -401,6 +413,7 @@ public class Gutter extends JComponent implements SwingConstants
 		super.setFont(font);
 
 		fm = getFontMetrics(font);
+		lineNumberCache.setFont(font, fm);
 
 		Border border = getBorder();
 		if(border != null)
@@ -702,6 +715,7 @@ public class Gutter extends JComponent implements SwingConstants
 	private Color selectionAreaBgColor;
 
 	private FontMetrics fm;
+	private final LineNumberCache lineNumberCache = new LineNumberCache();
 
 	private int alignment;
 
@@ -872,17 +886,23 @@ public class Gutter extends JComponent implements SwingConstants
 				break;
 			}
 
+			Color color;
 			if (physicalLine == textArea.getCaretLine() && currentLineHighlightEnabled)
 			{
-				gfx.setColor(currentLineHighlight);
+				color = currentLineHighlight;
 			}
 			else if (interval > 1 && (physicalLine + 1) % interval == 0)
-				gfx.setColor(intervalHighlight);
+				color = intervalHighlight;
 			else
-				gfx.setColor(getForeground());
+				color = getForeground();
 
-			gfx.drawString(number, FOLD_MARKER_SIZE + offset,
-				baseline + y);
+			if (!lineNumberCache.paint(gfx, number, color,
+				FOLD_MARKER_SIZE + offset, baseline + y))
+			{
+				gfx.setColor(color);
+				gfx.drawString(number, FOLD_MARKER_SIZE + offset,
+					baseline + y);
+			}
 		} //}}}
 	} //}}}
 
@@ -0,0 +1,190 @@
+/*
+ * LineNumberCache.java - Pre-rendered digits for the gutter
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.textarea;
+
+//{{{ Imports
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+//}}}
+
+/**
+ * Draws gutter line numbers by compositing pre-rendered digit strips
+ * instead of laying out a string for every visible line on every repaint.<p>
+ *
+ * One strip holding the ten digits is rendered per colour, for the font
+ * given to {@link #setFont(Font, FontMetrics)}. The strips can only stand in
+ * for <code>drawString()</code> when the glyphs land on whole pixels, so
+ * {@link #paint(Graphics2D, String, Color, int, int)} declines to paint
+ * with fractional metrics, subpixel antialiasing or a scaling transform, and
+ * the caller is expected to fall back to drawing the string.
+ */
+class LineNumberCache
+{
+	//{{{ setFont() method
+	/**
+	 * Sets the font line numbers are drawn with, discarding any strip
+	 * rendered for the previous font.
+	 */
+	void setFont(Font font, FontMetrics fm)
+	{
+		this.font = font;
+		strips.clear();
+
+		ascent = fm.getAscent();
+		height = ascent + fm.getDescent();
+		int x = 0;
+		for (int i = 0; i < 10; i++)
+		{
+			digitX[i] = x;
+			digitWidth[i] = fm.charWidth((char) ('0' + i));
+			x += digitWidth[i];
+		}
+		stripWidth = x;
+	} //}}}
+
+	//{{{ paint() method
+	/**
+	 * Draws a line number whose baseline starts at <code>x, y</code>.
+	 * @return false if nothing was drawn because the graphics context
+	 * cannot be served from the cache
+	 */
+	boolean paint(Graphics2D gfx, String number, Color color, int x, int y)
+	{
+		if (font == null || color == null || stripWidth == 0 || height == 0
+			|| !isCacheable(gfx))
+			return false;
+
+		Object textAntiAlias = gfx.getRenderingHint(
+			RenderingHints.KEY_TEXT_ANTIALIASING);
+		BufferedImage strip = getStrip(color, textAntiAlias);
+
+		int top = y - ascent;
+		for (int i = 0; i < number.length(); i++)
+		{
+			int digit = number.charAt(i) - '0';
+			int sx = digitX[digit];
+			int w = digitWidth[digit];
+			gfx.drawImage(strip, x, top, x + w, top + height,
+				sx, 0, sx + w, height, null);
+			x += w;
+		}
+		return true;
+	} //}}}
+
+	//{{{ Private members
+	private Font font;
+	private int ascent;
+	private int height;
+	private int stripWidth;
+	private final int[] digitX = new int[10];
+	private final int[] digitWidth = new int[10];
+
+	private static final int MAX_STRIPS = 8;
+
+	/** Keyed by colour and text antialiasing hint. */
+	private final Map<StripKey, BufferedImage> strips = new HashMap<>();
+
+	//{{{ isCacheable() method
+	private static boolean isCacheable(Graphics2D gfx)
+	{
+		if (gfx.getRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS)
+			== RenderingHints.VALUE_FRACTIONALMETRICS_ON)
+			return false;
+
+		Object textAntiAlias = gfx.getRenderingHint(
+			RenderingHints.KEY_TEXT_ANTIALIASING);
+		if (textAntiAlias != RenderingHints.VALUE_TEXT_ANTIALIAS_ON
+			&& textAntiAlias != RenderingHints.VALUE_TEXT_ANTIALIAS_OFF
+			&& textAntiAlias != RenderingHints.VALUE_TEXT_ANTIALIAS_DEFAULT)
+			return false;
+
+		int type = gfx.getTransform().getType();
+		return (type & ~AffineTransform.TYPE_TRANSLATION) == 0;
+	} //}}}
+
+	//{{{ getStrip() method
+	private BufferedImage getStrip(Color color, Object textAntiAlias)
+	{
+		StripKey key = new StripKey(color, textAntiAlias);
+		BufferedImage strip = strips.get(key);
+		if (strip == null)
+		{
+			// only a handful of colours are in use at any time
+			if (strips.size() >= MAX_STRIPS)
+				strips.clear();
+			strip = new BufferedImage(stripWidth, height,
+				BufferedImage.TYPE_INT_ARGB_PRE);
+			Graphics2D g = strip.createGraphics();
+			try
+			{
+				g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+					textAntiAlias);
+				g.setFont(font);
+				g.setColor(color);
+				for (int i = 0; i < 10; i++)
+				{
+					g.drawString(String.valueOf((char) ('0' + i)),
+						digitX[i], ascent);
+				}
+			}
+			finally
+			{
+				g.dispose();
+			}
+			strips.put(key, strip);
+		}
+		return strip;
+	} //}}}
+
+	//{{{ StripKey class
+	private static class StripKey
+	{
+		private final Color color;
+		private final Object textAntiAlias;
+
+		StripKey(Color color, Object textAntiAlias)
+		{
+			this.color = color;
+			this.textAntiAlias = textAntiAlias;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof StripKey))
+				return false;
+			StripKey other = (StripKey) o;
+			return color.equals(other.color)
+				&& textAntiAlias == other.textAntiAlias;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return color.hashCode() * 31 + System.identityHashCode(textAntiAlias);
+		}
+	} //}}}
+
+	//}}}
+}
@@ -27,6 +27,7 @@ import java.util.*;
 import javax.annotation.Nonnull;
 
 import org.gjt.sp.jedit.buffer.*;
+import org.gjt.sp.util.IntegerArray;
 //}}}
 
 class SelectionManager
@@ -112,38 +113,25 @@ class SelectionManager
 			}
 		}
 
-		Iterator<Selection> iter = selection.iterator();
-		while(iter.hasNext())
+		// selections are kept sorted and disjoint, so the ones to merge
+		// with the new selection form a contiguous run
+		int first = firstEndingAtOrAfter(addMe.start);
+		int last = first;
+		while(last < selection.size()
+			&& selection.get(last).start <= addMe.end)
 		{
-			// try and merge existing selections one by
-			// one with the new selection
-			Selection s = iter.next();
-			if(s.overlaps(addMe))
-			{
-				addMe.start = Math.min(s.start,addMe.start);
-				addMe.end = Math.max(s.end,addMe.end);
-				iter.remove();
-			}
+			Selection s = selection.get(last);
+			addMe.start = Math.min(s.start,addMe.start);
+			addMe.end = Math.max(s.end,addMe.end);
+			last++;
 		}
+		if(last > first)
+			selection.subList(first,last).clear();
 
 		addMe.startLine = textArea.getLineOfOffset(addMe.start);
 		addMe.endLine = textArea.getLineOfOffset(addMe.end);
 
-		boolean added = false;
-
-		for(int i = 0; i < selection.size(); i++)
-		{
-			Selection s = selection.get(i);
-			if(addMe.start < s.start)
-			{
-				selection.add(i,addMe);
-				added = true;
-				break;
-			}
-		}
-
-		if(!added)
-			selection.add(addMe);
+		selection.add(first,addMe);
 
 		textArea.invalidateLineRange(addMe.startLine,addMe.endLine);
 	} //}}}
@@ -179,18 +167,45 @@ class SelectionManager
 	 */
 	Selection getSelectionAtOffset(int offset)
 	{
-		if(selection != null)
+		int index = firstEndingAtOrAfter(offset);
+		if(index < selection.size())
 		{
-			for (Selection s : selection)
-			{
-				if(offset >= s.start && offset <= s.end)
-					return s;
-			}
+			Selection s = selection.get(index);
+			if(offset >= s.start)
+				return s;
 		}
 
 		return null;
 	} //}}}
 
+	//{{{ getSelectionsInRange() method
+	/**
+	 * Returns the selections that intersect the given offset range,
+	 * both ends included, as a view of the selection list.
+	 * @param start The start offset
+	 * @param end The end offset
+	 */
+	List<Selection> getSelectionsInRange(int start, int end)
+	{
+		int first = firstEndingAtOrAfter(start);
+		int last = first;
+		int low = first;
+		int high = selection.size() - 1;
+		// last selection starting at or before end
+		while(low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			if(selection.get(mid).start <= end)
+			{
+				last = mid + 1;
+				low = mid + 1;
+			}
+			else
+				high = mid - 1;
+		}
+		return selection.subList(first,last);
+	} //}}}
+
 	//{{{ removeFromSelection() method
 	/**
 	 * Deactivates the specified selection.
@@ -254,7 +269,9 @@ class SelectionManager
 	 */
 	int[] getSelectedLines()
 	{
-		Collection<Integer> set = new TreeSet<>();
+		// selections are sorted, so the lines come in ascending order
+		IntegerArray lines = new IntegerArray();
+		int lastLine = -1;
 		for (Selection s : selection)
 		{
 			int endLine =
@@ -262,19 +279,14 @@ class SelectionManager
 				? s.endLine - 1
 				: s.endLine;
 
-			for(int j = s.startLine; j <= endLine; j++)
+			for(int j = Math.max(s.startLine,lastLine + 1); j <= endLine; j++)
 			{
-				set.add(j);
+				lines.add(j);
+				lastLine = j;
 			}
 		}
 
-
-		int[] returnValue = new int[set.size()];
-		int i = 0;
-		for (Integer line : set)
-			returnValue[i++] = line;
-
-		return returnValue;
+		return Arrays.copyOf(lines.getArray(),lines.getSize());
 	} //}}}
 
 	//{{{ invertSelection() method
@@ -432,4 +444,25 @@ class SelectionManager
 	} //}}}
 
 	private final TextArea textArea;
+
+	//{{{ firstEndingAtOrAfter() method
+	/**
+	 * Returns the index of the first selection whose end is at or after
+	 * the given offset, or the selection count if there is none. As
+	 * selections never overlap, their ends are sorted like their starts.
+	 */
+	private int firstEndingAtOrAfter(int offset)
+	{
+		int low = 0;
+		int high = selection.size() - 1;
+		while(low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			if(selection.get(mid).end < offset)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+		return low;
+	} //}}}
 }
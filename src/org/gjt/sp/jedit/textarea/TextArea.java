@@ -1147,6 +1147,23 @@ public abstract class TextArea extends JPanel
 	 * @param line The physical line to invalidate
 	 */
 	public void invalidateLine(int line)
+	{
+		invalidateLine(line,false);
+	} //}}}
+
+	//{{{ invalidateGutterLine() method
+	/**
+	 * Marks the gutter area of a line as needing a repaint, leaving the
+	 * text itself alone.
+	 * @param line The physical line to invalidate
+	 */
+	void invalidateGutterLine(int line)
+	{
+		invalidateLine(line,true);
+	} //}}}
+
+	//{{{ invalidateLine() method
+	private void invalidateLine(int line, boolean gutterOnly)
 	{
 		if(!isShowing()
 			|| buffer.isLoading()
@@ -1179,7 +1196,14 @@ public abstract class TextArea extends JPanel
 		if(chunkCache.needFullRepaint() || endLine == -1)
 			endLine = visibleLines;
 
-		invalidateScreenLineRange(startLine,endLine);
+		if(gutterOnly)
+		{
+			int lineHeight = painter.getLineHeight();
+			gutter.repaint(0,startLine * lineHeight,gutter.getWidth(),
+				(endLine - startLine + 1) * lineHeight);
+		}
+		else
+			invalidateScreenLineRange(startLine,endLine);
 	} //}}}
 
 	//{{{ invalidateLineRange() method
@@ -2093,11 +2117,14 @@ forward_scan:	do
 		}
 		else
 		{
+			Selection[] selection = getSelection();
+			if(selection.length > 1 && allRanges(selection))
+				return replaceRanges(selection, selectedText);
+
 			try
 			{
 				buffer.beginCompoundEdit();
 
-				Selection[] selection = getSelection();
 				for (Selection aSelection : selection)
 					newCaret = aSelection.setText(buffer, selectedText);
 			}
@@ -2110,6 +2137,55 @@ forward_scan:	do
 		return newCaret;
 	} //}}}
 
+	//{{{ allRanges() method
+	private static boolean allRanges(Selection[] selection)
+	{
+		for (Selection s : selection)
+		{
+			if(!(s instanceof Selection.Range))
+				return false;
+		}
+		return true;
+	} //}}}
+
+	//{{{ replaceRanges() method
+	/**
+	 * Replaces many range selections at once through
+	 * {@link JEditBuffer#replace(int[],int[],CharSequence)}. The
+	 * selections are set aside during the edit, so that the buffer
+	 * handler does not have to shift all of them after every single
+	 * replacement, and are then left as they would have been by
+	 * {@link Selection#setText(JEditBuffer,String)}: empty, at the end
+	 * of their replacement text.
+	 * @return The new caret position
+	 */
+	private int replaceRanges(Selection[] selection, String selectedText)
+	{
+		int count = selection.length;
+		int[] starts = new int[count];
+		int[] ends = new int[count];
+		for(int i = 0; i < count; i++)
+		{
+			starts[i] = selection[i].start;
+			ends[i] = selection[i].end;
+		}
+
+		int length = selectedText == null ? 0 : selectedText.length();
+		selectionManager.clearSelection();
+		buffer.replace(starts,ends,selectedText == null ? "" : selectedText);
+
+		int shift = 0;
+		for(int i = 0; i < count; i++)
+		{
+			Selection s = selection[i];
+			s.start = s.end = starts[i] + shift + length;
+			s.startLine = s.endLine = buffer.getLineOfOffset(s.start);
+			selectionManager.selection.add(s);
+			shift += length - (ends[i] - starts[i]);
+		}
+		return selection[count - 1].end;
+	} //}}}
+
 	//{{{ getSelectedLines() method
 	/**
 	 * Returns a sorted array of line numbers on which a selection or
@@ -1179,10 +1179,10 @@ public class TextAreaPainter extends JComponent implements TabExpander
 				? getMultipleSelectionColor()
 				: getSelectionColor());
 
-			Iterator<Selection> iter = textArea.getSelectionIterator();
-			while(iter.hasNext())
+			// only the selections touching this screen line
+			for(Selection s : textArea.selectionManager
+				.getSelectionsInRange(start,end))
 			{
-				Selection s = iter.next();
 				paintSelection(gfx,screenLine,physicalLine,y,s);
 			}
 		} //}}}
@@ -1222,10 +1222,11 @@ public class TextAreaPainter extends JComponent implements TabExpander
 			if ((! isSelectionFgColorEnabled()) || (getSelectionFgColor() == null))
 				return;
 
-			Iterator<Selection> iter = textArea.getSelectionIterator();
-			while(iter.hasNext())
+			JEditBuffer buffer = textArea.getBuffer();
+			for(Selection s : textArea.selectionManager.getSelectionsInRange(
+				buffer.getLineStartOffset(physicalLine),
+				buffer.getLineEndOffset(physicalLine) - 1))
 			{
-				Selection s = iter.next();
 				paintSelection(gfx,screenLine,physicalLine,y,s);
 			}
 		} //}}}
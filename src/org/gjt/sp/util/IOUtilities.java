@@ -25,6 +25,7 @@ package org.gjt.sp.util;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.WatchService;
 import javax.annotation.Nullable;
 
 /**
@@ -246,6 +247,23 @@ public class IOUtilities
 		return length;
 	} // }}}
 
+	//{{{ isPolling() method
+	/**
+	 * Returns true if a watch service is not backed by the notifications
+	 * of the operating system, but polls the directories it watches every
+	 * few seconds, as the JDK does on macOS, so that changes are reported
+	 * late.
+	 *
+	 * @param watchService the watch service
+	 * @return true if the watch service polls
+	 * @since jEdit 5.7pre1
+	 */
+	public static boolean isPolling(WatchService watchService)
+	{
+		return watchService.getClass().getName().equals(
+			"sun.nio.fs.PollingWatchService");
+	} //}}}
+
 	//{{{ closeQuietly() methods
 	/**
 	 * Method that will close a {@link java.io.Closeable} ignoring it if it is null and ignoring exceptions.
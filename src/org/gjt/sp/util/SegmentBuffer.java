@@ -33,6 +33,17 @@ public class SegmentBuffer extends Segment
 	public SegmentBuffer(int capacity)
 	{
 		ensureCapacity(capacity);
+	}
+
+	/**
+	 * Wraps an array, without copying it.
+	 * @param array The array
+	 * @param count The number of chars of text at its start
+	 * @since jEdit 5.7pre1
+	 */
+	public SegmentBuffer(char[] array, int count)
+	{
+		super(array,0,count);
 	} //}}}
 
 	//{{{ append() methods
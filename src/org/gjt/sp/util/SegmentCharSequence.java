@@ -29,7 +29,7 @@ import javax.swing.text.Segment;
  *
  * @author Marcelo Vanzin
  */
-public class SegmentCharSequence implements CharSequence, Serializable
+public class SegmentCharSequence implements SegmentedCharSequence, Serializable
 {
 	public SegmentCharSequence(Segment seg)
 	{
@@ -61,6 +61,12 @@ public class SegmentCharSequence implements CharSequence, Serializable
 		return new SegmentCharSequence(seg, offset + start, end - start);
 	}
 
+	@Override
+	public Segment[] getSegments()
+	{
+		return new Segment[] { new Segment(seg.array, seg.offset + offset, length) };
+	}
+
 	@Nonnull
 	public String toString()
 	{
@@ -0,0 +1,40 @@
+/*
+ * SegmentedCharSequence.java - A CharSequence backed by char arrays
+ * :tabSize=4:indentSize=4:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.util;
+
+import javax.swing.text.Segment;
+
+/**
+ * A character sequence made of ranges of char arrays, such as the text of
+ * a buffer on both sides of its gap. Code going through a lot of text, like
+ * searches, can read the arrays directly instead of calling
+ * {@link #charAt(int)} for every character.
+ *
+ * @since jEdit 5.7pre1
+ */
+public interface SegmentedCharSequence extends CharSequence
+{
+	/**
+	 * Returns the ranges of arrays the sequence is made of, in order.
+	 * The arrays are shared, and must not be modified.
+	 */
+	Segment[] getSegments();
+}